@@ -0,0 +1,83 @@
+package sokoban;
+
+import java.util.concurrent.TimeUnit;
+
+import javalib.worldimages.WorldImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times drawing boards: from scratch one cell after another or as balanced trees, again with a
+// renderer that only redraws what a move changed, and as a whole scene of a game
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBench {
+  Level[] moves; // a 200x200 level before and after a move
+  BoardRenderer renderer;
+  int step; // how many boards have been drawn, which picks the next one
+  Sokoban game;
+
+  @Setup
+  public void setup() {
+    Level big = BenchLevels.openLevel(200, 200);
+    this.moves = new Level[]{big, big.movePlayer(Direction.RIGHT)};
+    this.renderer = new BoardRenderer();
+    ExamplesSokoban examples = new ExamplesSokoban();
+    examples.init();
+    this.game = new Sokoban(examples.gameLevel);
+  }
+
+  // An open level of one of the sizes the draws are compared on
+  @State(Scope.Thread)
+  public static class Board {
+    @Param({"10", "50", "100", "200", "500"})
+    public int size;
+    Level level;
+
+    @Setup
+    public void setup() {
+      this.level = BenchLevels.openLevel(this.size, this.size);
+    }
+  }
+
+  // draws the board and measures it as javalib does before showing it
+  @Benchmark
+  public double draw(Board board) {
+    WorldImage image = board.level.draw(false);
+    return image.getWidth() + image.getHeight();
+  }
+
+  @Benchmark
+  public double balancedDraw(Board board) {
+    WorldImage image = board.level.draw(true);
+    return image.getWidth() + image.getHeight();
+  }
+
+  @Benchmark
+  public Object fullDraw() {
+    return this.moves[this.step++ & 1].draw();
+  }
+
+  @Benchmark
+  public Object incrementalDraw() {
+    return this.renderer.draw(this.moves[this.step++ & 1]);
+  }
+
+  @Benchmark
+  public Object gameLevelFrame() {
+    return this.game.makeScene();
+  }
+}
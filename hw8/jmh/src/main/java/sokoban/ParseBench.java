@@ -0,0 +1,58 @@
+package sokoban;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times parsing a 1000x1000 level with every kind of ground, with the parser and as levels were
+// made before there was one, by reading a grid of cells and packing it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParseBench {
+  String groundStr;
+  String contentStr;
+
+  @Setup
+  public void setup() {
+    StringBuilder ground = new StringBuilder();
+    StringBuilder content = new StringBuilder();
+    // EFFECT: makes the descriptions of a 1000x1000 level with a wall around it
+    for (int row = 0; row < 1000; row++) {
+      for (int col = 0; col < 1000; col++) {
+        boolean edge = row == 0 || col == 0 || row == 999 || col == 999;
+        ground.append(row % 7 == 3 && col % 5 == 2 ? 'R' : col % 3 == 0 ? 'I' : '_');
+        content.append(row == 500 && col == 500 ? '>' : edge ? 'W' : col % 11 == 4 ? 'r' : '_');
+      }
+      ground.append(row < 999 ? "\n" : "");
+      content.append(row < 999 ? "\n" : "");
+    }
+    this.groundStr = ground.toString();
+    this.contentStr = content.toString();
+  }
+
+  @Benchmark
+  public int parse() {
+    return new LevelParser(this.groundStr, this.contentStr).unsatisfied;
+  }
+
+  @Benchmark
+  public int cellGrid() {
+    ArrayList<ArrayList<Cell>> grid = Utils.makeGrid(this.groundStr, this.contentStr);
+    return Utils.packGrounds(grid).length + Utils.packContents(grid).length
+            + Utils.findPlayer(this.contentStr).col;
+  }
+}
@@ -0,0 +1,97 @@
+package sokoban;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times finding the walks that clicks ask for on 200x200 boards, and planning the pushes that
+// drags ask for on gameLevel. The walks go back and forth between a level and the same level after
+// a move, which differ only in where the player is, so the region is found once and every walk
+// after that is a search from a new origin
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBench {
+  Pathfinder paths;
+  Level big; // an open 200x200 level
+  Level[] moves; // the open level before and after a move
+  Level[] pushMoves; // the open level with a box beside the player, before and after pushing it
+  Level[] holedMoves; // a 200x200 level with holes and boxes before and after a move
+  Level[] icedMoves; // a 200x200 level of ice before and after a move
+  PushPlanner planner;
+  Level gameLevel;
+  int step; // how many walks or plans have been found, which picks the next one
+
+  @Setup
+  public void setup() {
+    this.paths = new Pathfinder();
+    this.big = BenchLevels.openLevel(200, 200);
+    this.moves = new Level[]{this.big, this.big.movePlayer(Direction.RIGHT)};
+    String[] open = BenchLevels.layout(200, 200, "open");
+    Level boxed = new Level(open[0], open[1].replace(">_", ">B"));
+    this.pushMoves = new Level[]{boxed, boxed.movePlayer(Direction.RIGHT)};
+    String[] holes = BenchLevels.layout(200, 200, "holes");
+    Level holed = new Level(holes[0], holes[1]);
+    this.holedMoves = new Level[]{holed, holed.movePlayer(Direction.UP)};
+    String[] icy = BenchLevels.layout(200, 200, "ice");
+    Level iced = new Level(icy[0], icy[1]);
+    this.icedMoves = new Level[]{iced, iced.movePlayer(Direction.LEFT)};
+    ExamplesSokoban examples = new ExamplesSokoban();
+    examples.init();
+    this.gameLevel = examples.gameLevel;
+    this.planner = new PushPlanner(this.gameLevel);
+  }
+
+  @Benchmark
+  public int region() {
+    this.paths.findRegion(this.big, 0);
+    return this.paths.regionMark;
+  }
+
+  @Benchmark
+  public int pathSearch() {
+    return this.paths.path(this.moves[this.step++ & 1], Posn.of(0, 0)).length;
+  }
+
+  // every walk is on a board that a push changed, so the region is found again each time
+  @Benchmark
+  public int pathAfterPush() {
+    return this.paths.path(this.pushMoves[this.step++ & 1], Posn.of(0, 0)).length;
+  }
+
+  // asks for the same walk again, which is remembered
+  @Benchmark
+  public int pathSameOrigin() {
+    return this.paths.path(this.big, Posn.of(0, 0)).length;
+  }
+
+  @Benchmark
+  public int pathHoles() {
+    return this.paths.path(this.holedMoves[this.step++ & 1], Posn.of(199, 199)).length;
+  }
+
+  @Benchmark
+  public int pathIce() {
+    return this.paths.path(this.icedMoves[this.step++ & 1], Posn.of(199, 0)).length;
+  }
+
+  // plans the pushes of the trophy at (3, 2) of gameLevel to the next cell
+  @Benchmark
+  public int pushPlan() {
+    Posn to = this.gameLevel.posnOf((this.step++ * 7) % this.gameLevel.grounds.size);
+    Direction[] plan = this.planner.plan(this.gameLevel, Posn.of(3, 2), to);
+    return plan == null ? -1 : plan.length;
+  }
+}
@@ -0,0 +1,90 @@
+package sokoban;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times replaying a long session of keys, and playing a game with and without metrics, where each
+// key is followed by the scene that shows it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBench {
+  static final int KEYS = 200000;
+  static final String[] SQUARE = {"up", "right", "down", "left"};
+
+  KeyLog session; // a long session of random keys on an open 64x64 level
+  Replay replay; // the session, fast forwarded to its end
+  Sokoban game; // a game on an open 64x64 level
+  int step; // how many keys or seeks have been done, which picks the next one
+
+  @Setup
+  public void setup() {
+    this.session = new KeyLog(BenchLevels.openLevel(64, 64));
+    String[] keys = {"up", "down", "left", "right", "up", "down", "left", "right", "u", "r"};
+    Random rand = new Random(19);
+    // EFFECT: records the session
+    for (int press = 0; press < KEYS; press++) {
+      this.session.record(keys[rand.nextInt(keys.length)]);
+    }
+    this.replay = new Replay(this.session, 1000);
+    this.replay.fastForward();
+    this.game = new Sokoban(BenchLevels.openLevel(64, 64));
+  }
+
+  // The metrics of a game, which are kept in histograms while a benchmark that uses this runs
+  @State(Scope.Thread)
+  public static class Histograms {
+    HistogramSink sink;
+
+    @Setup
+    public void install() {
+      this.sink = new HistogramSink();
+      Metrics.install(this.sink);
+    }
+
+    @TearDown
+    public void uninstall() {
+      Metrics.install(null);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(KEYS)
+  public int replayKeys() {
+    return new Replay(this.session, 1000).fastForward().steps;
+  }
+
+  // seeks to keys all over the log
+  @Benchmark
+  public int replaySeek() {
+    return this.replay.seek((int) ((this.step++ * 7919L) % (this.replay.log.size + 1))).steps;
+  }
+
+  // walks the player around in a square
+  @Benchmark
+  public int keyAndFrame() {
+    this.game.onKeyEvent(SQUARE[this.step++ & 3]);
+    return System.identityHashCode(this.game.makeScene());
+  }
+
+  @Benchmark
+  public int keyAndFrameWithHistograms(Histograms histograms) {
+    return this.keyAndFrame();
+  }
+}
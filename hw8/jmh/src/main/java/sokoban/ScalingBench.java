@@ -0,0 +1,85 @@
+package sokoban;
+
+import java.util.concurrent.TimeUnit;
+
+import javalib.worldimages.WorldImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times the level's basic operations on boards of every size and layout. The moves keep the level
+// they made for the next call, so the player walks around in a square, and each move only copies
+// the chunks of the board that it changed
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBench {
+  @Param({"8", "32", "128", "512"})
+  public int size;
+  @Param({"open", "ice", "holes"})
+  public String layout;
+
+  String[] description;
+  Level start;
+  Level level; // the level the last move made
+  int step; // how many moves have been made, which picks the direction of the next one
+
+  @Setup
+  public void setup() {
+    this.description = BenchLevels.layout(this.size, this.size, this.layout);
+    this.start = new Level(this.description[0], this.description[1]);
+    this.level = this.start;
+  }
+
+  @Benchmark
+  public Object movePlayer() {
+    this.level = this.level.movePlayer(Direction.ALL[this.step++ & 3]);
+    return this.level;
+  }
+
+  // moves as a game does, updating the level after every move
+  @Benchmark
+  public Object updateLevel() {
+    this.level = this.level.movePlayer(Direction.ALL[this.step++ & 3]).updateLevel();
+    return this.level;
+  }
+
+  // switches the player back and forth with the cell to its left
+  @Benchmark
+  public Object switchContents() {
+    Posn player = this.start.playerPos;
+    Posn left = player.movePosn(Direction.LEFT);
+    this.level = this.level.switchContents(player, left, (this.step & 1) == 0 ? left : player,
+            this.step++);
+    return this.level;
+  }
+
+  @Benchmark
+  public boolean levelWon() {
+    return this.start.levelWon() || this.start.levelLost();
+  }
+
+  // draws the level as javalib does before showing it, measuring the image
+  @Benchmark
+  public double draw() {
+    WorldImage image = this.start.draw(false);
+    return image.getWidth() + image.getHeight();
+  }
+
+  @Benchmark
+  public int parse() {
+    return new LevelParser(this.description[0], this.description[1]).unsatisfied;
+  }
+}
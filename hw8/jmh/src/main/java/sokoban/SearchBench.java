@@ -0,0 +1,105 @@
+package sokoban;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times the steps the solver takes for every state it explores: hashing a move into the board,
+// probing the transposition table, working out where a move goes, checking for deadlocks, and
+// sliding across ice
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBench {
+  static final int TABLE_BITS = 20;
+
+  Level open; // a 100x100 level with nothing but the player in it
+  int playerIdx;
+  TranspositionTable table; // holds every other hash that the probes go through
+  DeadlockAnalysis deadlocks;
+  Level[] pushes; // levels just after a trophy was pushed, which the deadlock checks go through
+  int[][] pushed; // the cells the trophies were pushed into in each of the pushes
+  Level corridor; // a corridor of 1000 ice cells with a box at the start of it
+  int step; // how many operations have been done, which picks the next input
+
+  @Setup
+  public void setup() {
+    this.open = BenchLevels.openLevel(100, 100);
+    this.playerIdx = this.open.indexOf(this.open.playerPos);
+
+    this.table = new TranspositionTable(TABLE_BITS);
+    // EFFECT: stores every other hash of the sequence that the probes go through
+    for (int entry = 0; entry < 1 << TABLE_BITS; entry += 2) {
+      this.table.store(SearchBench.probeHash(entry), entry, entry & 63);
+    }
+
+    Level start = new Level("R____\n_____\n_____", "_____\n_>r__\n_____");
+    this.deadlocks = new DeadlockAnalysis(start);
+    this.pushes = new Level[]{start.movePlayer("right"),
+        start.movePlayer("right").movePlayer("right"),
+        start.movePlayer("down").movePlayer("right").movePlayer("up")};
+    this.pushed = new int[][]{{8}, {9}, {8}};
+
+    StringBuilder ice = new StringBuilder();
+    StringBuilder blank = new StringBuilder();
+    // EFFECT: makes a corridor of 1000 ice cells
+    for (int cell = 0; cell < 1000; cell++) {
+      ice.append("I");
+      blank.append("_");
+    }
+    this.corridor = new Level("_" + ice + "_", ">B" + blank.substring(1) + "W");
+  }
+
+  // returns the hash that the probes look for at the given step
+  static long probeHash(int step) {
+    return Zobrist.key(Zobrist.CONTENT, step & ((1 << TABLE_BITS) - 1), (byte) 1);
+  }
+
+  // swaps the player with the cell to its right, keeping the board's hash up to date. Every other
+  // swap puts it back
+  @Benchmark
+  public long zobristSwap() {
+    this.open.swap(this.playerIdx, this.playerIdx + 1);
+    return this.open.hash;
+  }
+
+  // half of the probes find their hash and half miss
+  @Benchmark
+  public int transpositionProbe() {
+    return this.table.probe(SearchBench.probeHash(this.step++));
+  }
+
+  @Benchmark
+  public boolean deadlockCheck() {
+    int which = this.step++ % this.pushes.length;
+    return this.deadlocks.deadlockedAfter(this.pushes[which], this.pushed[which]);
+  }
+
+  // works out where the player would move to and push to in the next direction, without moving
+  @Benchmark
+  public int moveKernel() {
+    Direction direction = Direction.ALL[this.step++ & 3];
+    int moveToIdx = this.open.neighbor(this.playerIdx, direction);
+    int pushToIdx = this.open.neighbor(moveToIdx, direction);
+    return this.open.canMoveTo(moveToIdx, pushToIdx)
+            || this.open.canMoveTo(this.playerIdx, moveToIdx) ? moveToIdx : 0;
+  }
+
+  // pushes the box at the start of the corridor all the way across its ice
+  @Benchmark
+  public int iceSlide() {
+    return this.corridor.movePlayer(Direction.RIGHT).playerPos.col;
+  }
+}
@@ -0,0 +1,48 @@
+package sokoban;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times solving the example levels with each of the solver's searches. The tests check how many
+// nodes each search explores, so these only need to say how long the nodes take
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBench {
+  @Param({"gameLevel", "iceTest"})
+  public String example;
+
+  SokobanSolver solver;
+
+  @Setup
+  public void setup() {
+    ExamplesSokoban examples = new ExamplesSokoban();
+    examples.init();
+    this.solver = new SokobanSolver(this.example.equals("iceTest") ? examples.iceTest
+            : examples.gameLevel);
+  }
+
+  @Benchmark
+  public long aStar() {
+    return this.solver.solveAStar(1000000).nodes;
+  }
+
+  @Benchmark
+  public long idaStar() {
+    return this.solver.solveIdaStar(10000000).nodes;
+  }
+}
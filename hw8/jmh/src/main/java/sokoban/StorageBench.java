@@ -0,0 +1,131 @@
+package sokoban;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times reading and writing levels and games: opening and validating a pack of 5000 levels,
+// rasterizing levels into images, and saving and loading games
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBench {
+  static final int PACK_SIZE = 5000;
+  static final int BATCH_SIZE = 200;
+  static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+  File packFile;
+  LevelPack pack;
+  LevelValidator validator;
+  Level[] batch; // random 20x20 levels
+  LevelRasterizer rasterizer;
+  File pngs; // where the batches of images are written
+  SavedGame save;
+  ByteBuffer saved; // the save, written
+  File saves; // a directory of 100 saves
+  int step; // how many levels have been read or rasterized, which picks the next one
+
+  @Setup
+  public void setup() throws IOException {
+    StringBuilder packText = new StringBuilder();
+    // EFFECT: writes a pack of small XSB levels
+    for (int index = 0; index < PACK_SIZE; index++) {
+      packText.append("; ").append(index).append("\n    #####\n    #   #\n    #$  #\n"
+              + "  ###  $##\n  #  $ $ #\n### # ## #   ######\n#   # ## #####  ..#\n"
+              + "# $  $          ..#\n##### ### #@##  ..#\n    #     #########\n"
+              + "    #######\n\n");
+    }
+    File temp = new File(System.getProperty("java.io.tmpdir"));
+    this.packFile = new File(temp, "sokoban-bench.xsb");
+    Files.write(this.packFile.toPath(),
+            packText.toString().getBytes(StandardCharsets.ISO_8859_1));
+    this.pack = new LevelPack(this.packFile);
+    this.validator = new LevelValidator(this.packFile, 0);
+
+    ExamplesSokoban examples = new ExamplesSokoban();
+    examples.init();
+    Random rand = new Random(13);
+    this.batch = new Level[BATCH_SIZE];
+    // EFFECT: makes the batch of random levels
+    for (int index = 0; index < BATCH_SIZE; index++) {
+      this.batch[index] = examples.randomLevel(rand, 20, 20);
+    }
+    this.rasterizer = new LevelRasterizer(32);
+    this.pngs = new File(temp, "sokoban-bench");
+    this.pngs.mkdirs();
+
+    this.save = new SavedGame(examples.gameLevel, new Direction[0]);
+    this.saved = ByteBuffer.wrap(SaveFormat.write(this.save));
+    this.saves = new File(temp, "sokoban-bench-saves");
+    this.saves.mkdirs();
+    // EFFECT: writes the directory of saves
+    for (int index = 0; index < 100; index++) {
+      SaveFormat.writeFile(new SavedGame(this.batch[index], new Direction[0]),
+              new File(this.saves, index + SaveFormat.EXTENSION));
+    }
+  }
+
+  @Benchmark
+  public int openPack() {
+    return new LevelPack(this.packFile).size();
+  }
+
+  // reads levels from all over the pack
+  @Benchmark
+  public int packLevel() {
+    return this.pack.level((this.step++ * 7919) % this.pack.size()).unsatisfied;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PACK_SIZE)
+  public Object validatePack() {
+    return this.validator.validateAll(THREADS);
+  }
+
+  @Benchmark
+  public int rasterize() {
+    return this.rasterizer.rasterize(this.batch[this.step++ % BATCH_SIZE]).getRGB(0, 0);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int pngBatch() {
+    return this.rasterizer.writeAll(this.batch, this.pngs, THREADS);
+  }
+
+  @Benchmark
+  public int saveGame() {
+    return SaveFormat.write(this.save).length;
+  }
+
+  @Benchmark
+  public int loadGame() {
+    this.saved.rewind();
+    return SaveFormat.read(this.saved).level.steps;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(100)
+  public int loadDirectory() {
+    return SaveFormat.readDirectory(this.saves).size();
+  }
+}
@@ -0,0 +1,83 @@
+package sokoban;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares asking the tile rules of every cell of a 64x64 board with every kind of tile on it
+// through the methods of the tile objects, whose calls go to many classes from the same place,
+// with asking the same rules of the cells' codes from the tables in BoardCodes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileRuleBench {
+  static final int CELLS = 66 * 66; // the cells of the board, with the walls around it
+
+  byte[] groundCodes;
+  byte[] contentCodes;
+  IGround[] grounds;
+  IContent[] contents;
+
+  @Setup
+  public void setup() {
+    ExamplesSokoban examples = new ExamplesSokoban();
+    examples.init();
+    Level mixed = examples.randomLevel(new Random(13), 64, 64);
+    this.groundCodes = new byte[CELLS];
+    this.contentCodes = new byte[CELLS];
+    this.grounds = new IGround[CELLS];
+    this.contents = new IContent[CELLS];
+    // EFFECT: unpacks every cell of the board into codes and objects
+    for (int idx = 0; idx < CELLS; idx++) {
+      this.groundCodes[idx] = mixed.grounds.get(idx);
+      this.contentCodes[idx] = mixed.contents.get(idx);
+      this.grounds[idx] = BoardCodes.toGround(this.groundCodes[idx]);
+      this.contents[idx] = BoardCodes.toContent(this.contentCodes[idx]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CELLS)
+  public long interfaceCalls() {
+    long found = 0;
+    // EFFECT: asks the rules of one cell at a time
+    for (int idx = 0; idx < CELLS; idx++) {
+      IGround ground = this.grounds[idx];
+      IContent content = this.contents[idx];
+      found += (ground.groundSlide(content) ? 1 : 0) + (ground.groundFall(content) ? 2 : 0)
+              + (ground.groundWon(content) ? 4 : 0) + (content.isVacant() ? 8 : 0)
+              + (content.isFixed() ? 16 : 0);
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CELLS)
+  public long codeTables() {
+    long found = 0;
+    // EFFECT: asks the rules of one cell at a time
+    for (int idx = 0; idx < CELLS; idx++) {
+      byte ground = this.groundCodes[idx];
+      byte content = this.contentCodes[idx];
+      found += (BoardCodes.slides(ground, content) ? 1 : 0)
+              + (BoardCodes.falls(ground, content) ? 2 : 0)
+              + (BoardCodes.won(ground, content) ? 4 : 0) + (BoardCodes.isVacant(content) ? 8 : 0)
+              + (BoardCodes.isFixed(content) ? 16 : 0);
+    }
+    return found;
+  }
+}
@@ -0,0 +1,58 @@
+package sokoban;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Times undoing and redoing the longest chain of moves a game remembers
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UndoBench {
+  MoveJournal journal;
+  Level end; // the level after every move in the journal
+
+  @Setup
+  public void setup() {
+    this.journal = new MoveJournal(Constants.UNDO_LIMIT);
+    Level level = BenchLevels.openLevel(64, 64);
+    Random rand = new Random(19);
+    // EFFECT: records a long chain of random moves
+    for (int move = 0; move < Constants.UNDO_LIMIT; move++) {
+      Level moved = level.movePlayer(Direction.ALL[rand.nextInt(4)]).updateLevel();
+      this.journal.record(MoveDelta.between(level, moved));
+      level = moved;
+    }
+    this.end = level;
+  }
+
+  // undoes every move in the journal, then redoes them
+  @Benchmark
+  @OperationsPerInvocation(2 * Constants.UNDO_LIMIT)
+  public int undoChain() {
+    Level level = this.end;
+    // EFFECT: undoes the moves
+    for (int op = 0; op < Constants.UNDO_LIMIT; op++) {
+      level = this.journal.undo(level);
+    }
+    // EFFECT: redoes the moves
+    for (int op = 0; op < Constants.UNDO_LIMIT; op++) {
+      level = this.journal.redo(level);
+    }
+    return level.steps;
+  }
+}
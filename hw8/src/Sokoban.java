@@ -1,11 +1,50 @@
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.lang.management.ManagementFactory;
 
 import javalib.impworld.*;
 import javalib.worldimages.*;
 import jdk.jshell.execution.Util;
 import tester.Tester;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 // represents universal constants in our code
 class Constants {
@@ -14,14 +53,18 @@ class Constants {
   static final double SCALE_FACTOR = 0.5;
   static final int CELL_WIDTH = 120;
   static final int CELL_HEIGHT = 120;
+  static final int UNDO_LIMIT = 100000; // the most moves a game remembers for undoing
+
+  // the colors of trophies and targets in our library, in the order of their board codes
+  static final String[] COLORS = {"red", "green", "blue", "yellow"};
 
   static WorldImage NORMAL_SPRITE = new RectangleImage(CELL_WIDTH, CELL_HEIGHT, OutlineMode.OUTLINE,
           Color.BLACK);
-  static WorldImage PLAYER_SPRITE = new FromFileImage("./src/assets/player.png");
-  static WorldImage WALL_SPRITE = new FromFileImage("./src/assets/wall.png");
-  static WorldImage BOX_SPRITE = new FromFileImage("./src/assets/box.png");
-  static WorldImage HOLE_SPRITE = new FromFileImage("./src/assets/hole.png");
-  static WorldImage ICE_SPRITE = new FromFileImage("./src/assets/ice.png");
+  static WorldImage PLAYER_SPRITE = Sprites.file("player");
+  static WorldImage WALL_SPRITE = Sprites.file("wall");
+  static WorldImage BOX_SPRITE = Sprites.file("box");
+  static WorldImage HOLE_SPRITE = Sprites.file("hole");
+  static WorldImage ICE_SPRITE = Sprites.file("ice");
 
   static WorldImage TARGET_RED_SPRITE = new OverlayImage(
           new CircleImage(25, OutlineMode.SOLID, Color.RED),
@@ -45,13 +88,179 @@ class Constants {
 
 }
 
+// The colors that targets and trophies can have, each with a small id that is its index here.
+// The four colors in Constants.COLORS always have ids 0 to 3, and more colors can be registered
+// while a program runs, up to MAX_COLORS in all so that every target and trophy code still fits in
+// a board code (see BoardCodes) and in a nibble of a save (see SaveFormat)
+class Palette {
+  static final int MAX_COLORS = 8;
+  static final ArrayList<String> NAMES = new ArrayList<String>(Arrays.asList(Constants.COLORS));
+  static final ArrayList<Color> COLORS = new ArrayList<Color>(
+          Arrays.asList(Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW));
+
+  // EFFECT: adds a color with the given name and look to the palette, unless a color with that
+  // name is already in it
+  // returns the id of the color with the given name
+  static synchronized int register(String name, Color color) {
+    int id = Palette.find(name);
+    if (id >= 0) {
+      return id;
+    }
+    if (NAMES.size() == MAX_COLORS) {
+      throw new IllegalArgumentException("The palette already has " + MAX_COLORS
+              + " colors, so it can not take " + name);
+    }
+    NAMES.add(name.toLowerCase());
+    COLORS.add(color);
+    return NAMES.size() - 1;
+  }
+
+  // returns the id of the color with the given name, ignoring case
+  static synchronized int id(String name) {
+    int id = Palette.find(name);
+    if (id < 0) {
+      throw new IllegalArgumentException("Color is not in our library: " + name);
+    }
+    return id;
+  }
+
+  // returns the id of the color with the given name, ignoring case, or -1 if it is not in the
+  // palette
+  static synchronized int find(String name) {
+    // EFFECT: looks through every color in the palette for the given name
+    for (int id = 0; id < NAMES.size(); id++) {
+      if (NAMES.get(id).equalsIgnoreCase(name)) {
+        return id;
+      }
+    }
+    return -1;
+  }
+
+  // returns the name of the color with the given id
+  static synchronized String name(int id) {
+    return NAMES.get(id);
+  }
+
+  // returns the look of the color with the given id
+  static synchronized Color color(int id) {
+    return COLORS.get(id);
+  }
+
+  // returns how many colors are in the palette
+  static synchronized int size() {
+    return NAMES.size();
+  }
+
+  // determines if the color with the given id is one of the four that have sprites in the assets
+  static boolean builtIn(int id) {
+    return id < Constants.COLORS.length;
+  }
+
+  // EFFECT: takes every registered color back out of the palette, leaving the four built in
+  // ones, and forgets the images of the cells drawn with them
+  static synchronized void reset() {
+    NAMES.subList(Constants.COLORS.length, NAMES.size()).clear();
+    COLORS.subList(Constants.COLORS.length, COLORS.size()).clear();
+    Sprites.forgetRegistered();
+  }
+
+  /* Fields
+   * this.MAX_COLORS - int
+   * this.NAMES - ArrayList<String>
+   * this.COLORS - ArrayList<Color>
+   * Methods
+   * this.register(String name, Color color) - int
+   * this.id(String name) - int
+   * this.find(String name) - int
+   * this.name(int id) - String
+   * this.color(int id) - Color
+   * this.size() - int
+   * this.builtIn(int id) - boolean
+   * this.reset() - void
+   * Methods on Fields
+   */
+}
+
+// Loads every image in src/assets once and keeps it, and keeps the image of every combination of
+// ground and content once it has been drawn, so drawing a board never loads a file or puts
+// together a cell image that it has already made before
+class Sprites {
+  static final String ASSETS = "./src/assets/"; // where the image files are
+  // the names of every image file in the assets, without the .png
+  static final String[] FILES = {"player", "wall", "box", "hole", "ice", "trophy_red",
+      "trophy_green", "trophy_blue", "trophy_yellow"};
+  static final int CODES = BoardCodes.CODES;
+
+  static final HashMap<String, WorldImage> LOADED = new HashMap<String, WorldImage>();
+  // the image of each cell, at index ground code * CODES + content code, once it has been made
+  static final WorldImage[] CELLS = new WorldImage[CODES * CODES];
+
+  // returns the image in the assets file with the given name, loading it the first time
+  static synchronized WorldImage file(String name) {
+    WorldImage image = LOADED.get(name);
+    if (image == null) {
+      image = new FromFileImage(ASSETS + name + ".png");
+      LOADED.put(name, image);
+    }
+    return image;
+  }
+
+  // returns the image of a cell with the given ground and content codes, putting it together the
+  // first time. Like Cell.cellToImage, the content is drawn over the ground
+  static WorldImage cell(byte ground, byte content) {
+    int key = ground * CODES + content;
+    WorldImage image = CELLS[key];
+    if (image == null) {
+      image = new OverlayImage(BoardCodes.toContent(content).contentToImage(),
+              BoardCodes.toGround(ground).groundToImage());
+      CELLS[key] = image;
+    }
+    return image;
+  }
+
+  // EFFECT: forgets the image of every cell with a target or trophy of a registered color, so that
+  // a color registered later with the same id is not drawn with the old one's look
+  static void forgetRegistered() {
+    byte target = BoardCodes.target(Constants.COLORS.length);
+    byte trophy = BoardCodes.trophy(Constants.COLORS.length);
+    // EFFECT: forgets every image whose ground or content code is one of a registered color
+    for (int key = 0; key < CELLS.length; key++) {
+      if (key / CODES >= target || key % CODES >= trophy) {
+        CELLS[key] = null;
+      }
+    }
+  }
+
+  // EFFECT: loads every file in the assets and puts together the image of every cell that can
+  // be on a board, so that the first frames drawn do not have to
+  static void preload() {
+    // EFFECT: loads every file
+    for (String name : FILES) {
+      Sprites.file(name);
+    }
+    byte[] grounds = {BoardCodes.NORMAL, BoardCodes.ICE, BoardCodes.HOLE, BoardCodes.target(0),
+        BoardCodes.target(1), BoardCodes.target(2), BoardCodes.target(3)};
+    // EFFECT: puts together every ground with every content
+    for (byte ground : grounds) {
+      for (byte content = 0; content < BoardCodes.TROPHY + Palette.size(); content++) {
+        Sprites.cell(ground, content);
+      }
+    }
+  }
+}
+
 // convenient computations and methods that don't fit into other classes
 class Utils {
 
-  // Converts the given color to an image of a trophy with the corresponding color
+  // Converts the given color to an image of a trophy with the corresponding color. Colors that
+  // were registered in the Palette have no sprite file, so their trophy is a disc of that color
   static WorldImage colorToTrophySprite(String color) {
-    if ("red, green, blue, yellow".contains(color)) {
-      return new FromFileImage("./src/assets/trophy_" + color + ".png");
+    int id = Palette.find(color);
+    if (id >= 0 && Palette.builtIn(id)) {
+      return Sprites.file("trophy_" + Palette.name(id));
+    }
+    if (id >= 0) {
+      return new CircleImage(40, OutlineMode.SOLID, Palette.color(id));
     }
     throw new RuntimeException("Trophy of the given color is not in our library. sorry :(");
   }
@@ -68,10 +277,140 @@ class Utils {
       case "yellow":
         return Constants.TARGET_YELLOW_SPRITE;
       default:
+        int id = Palette.find(color);
+        if (id >= 0) {
+          Color look = Palette.color(id);
+          return new OverlayImage(new CircleImage(25, OutlineMode.SOLID, look),
+                  new OverlayImage(new CircleImage(45, OutlineMode.SOLID, Color.WHITE),
+                          new CircleImage(60, OutlineMode.SOLID, look)));
+        }
         throw new RuntimeException("Target of the given color is not in our library. sorry :(");
     }
   }
 
+  // Returns the id of the given color, which is its index in the Palette
+  static int colorId(String color) {
+    return Palette.id(color);
+  }
+
+  // Returns the id of the given direction, which is its index in Direction.ALL
+  static int directionId(String direction) {
+    return Direction.of(direction).ordinal();
+  }
+
+  // Returns the ground codes of every cell in the given grid, row by row
+  static byte[] packGrounds(ArrayList<ArrayList<Cell>> grid) {
+    int width = gridWidth(grid);
+    byte[] grounds = new byte[width * grid.size()];
+
+    // EFFECT: stores the code of the ground of every cell at that cell's index
+    for (int row = 0; row < grid.size(); row++) {
+      for (int col = 0; col < width; col++) {
+        grounds[row * width + col] = grid.get(row).get(col).ground.groundCode();
+      }
+    }
+    return grounds;
+  }
+
+  // Returns the content codes of every cell in the given grid, row by row
+  static byte[] packContents(ArrayList<ArrayList<Cell>> grid) {
+    int width = gridWidth(grid);
+    byte[] contents = new byte[width * grid.size()];
+
+    // EFFECT: stores the code of the content of every cell at that cell's index
+    for (int row = 0; row < grid.size(); row++) {
+      for (int col = 0; col < width; col++) {
+        contents[row * width + col] = grid.get(row).get(col).content.contentCode();
+      }
+    }
+    return contents;
+  }
+
+  // Returns the index of every hole in the given ground codes
+  static int[] holeIndices(byte[] grounds) {
+    int count = 0;
+    // EFFECT: counts the holes in the ground codes
+    for (byte ground : grounds) {
+      if (ground == BoardCodes.HOLE) {
+        count++;
+      }
+    }
+    int[] holes = new int[count];
+    int next = 0;
+    // EFFECT: adds the index of every hole to the array of holes
+    for (int idx = 0; idx < grounds.length; idx++) {
+      if (grounds[idx] == BoardCodes.HOLE) {
+        holes[next] = idx;
+        next++;
+      }
+    }
+    return holes;
+  }
+
+  // Returns, for each direction (in the order of Direction.ALL) and each cell of a board of the
+  // given width with the given ground and content codes, the index where something sliding from
+  // that cell in that direction would stop if nothing but walls and the edges of the board were in
+  // its way. Sliding stops on the first cell that is not Ice, or before a wall or the edge. Walls
+  // on Holes do not count, since they fall in and are gone after the first move
+  static int[][] slideStops(int width, byte[] grounds, byte[] contents) {
+    int[][] stops = new int[Direction.ALL.length][grounds.length];
+    // EFFECT: fills in the stops of every direction
+    for (Direction direction : Direction.ALL) {
+      int[] directionStops = stops[direction.ordinal()];
+      int delta = direction.delta(width);
+      // EFFECT: fills in the stop of every cell, starting from the far side of the board in the
+      //         direction, so the stop of the next cell is always filled in first
+      for (int step = 0; step < grounds.length; step++) {
+        int idx = delta > 0 ? grounds.length - 1 - step : step;
+        int col = idx % width + direction.dCol;
+        int next = idx + delta;
+        boolean blocked = col < 0 || col >= width || next < 0 || next >= grounds.length
+                || (contents[next] == BoardCodes.WALL && grounds[next] != BoardCodes.HOLE);
+        directionStops[idx] = grounds[idx] != BoardCodes.ICE || blocked ? idx
+                : directionStops[next];
+      }
+    }
+    return stops;
+  }
+
+  // Returns the number of Targets without their trophy on a board with the given ground and
+  // content codes
+  static int countUnsatisfied(byte[] grounds, byte[] contents) {
+    int unsatisfied = 0;
+    // EFFECT: counts every cell that is a Target without its trophy
+    for (int idx = 0; idx < grounds.length; idx++) {
+      unsatisfied += BoardCodes.unsatisfied(grounds[idx], contents[idx]);
+    }
+    return unsatisfied;
+  }
+
+  // Returns the given images from the start index up to but not including the end index above
+  // each other, split in half at every level so the tree is only log n deep
+  static WorldImage aboveAll(WorldImage[] images, int start, int end) {
+    if (end - start == 0) {
+      return new EmptyImage();
+    } else if (end - start == 1) {
+      return images[start];
+    } else {
+      int middle = (start + end) >>> 1;
+      return new AboveImage(Utils.aboveAll(images, start, middle),
+              Utils.aboveAll(images, middle, end));
+    }
+  }
+
+  // Returns the number of columns in the given grid, which must have rows of the same length
+  static int gridWidth(ArrayList<ArrayList<Cell>> grid) {
+    int width = grid.get(0).size();
+    // EFFECT: checks that every row in the grid is as long as the first one
+    for (ArrayList<Cell> row : grid) {
+      if (row.size() != width) {
+        throw new IllegalArgumentException("Invalid Ground/Content descriptions: "
+                + "every row of the board must have the same length");
+      }
+    }
+    return width;
+  }
+
   // Returns the list of lists of cells represented by the given strings of grounds and contents
   static ArrayList<ArrayList<Cell>> makeGrid(String groundStr, String contentStr) {
     ArrayList<ArrayList<Cell>> grid = new ArrayList<ArrayList<Cell>>();
@@ -106,56 +445,24 @@ class Utils {
     return row;
   }
 
-  // Returns the ground represented by the given string ground
+  // Returns the ground represented by the given string ground. Every ground is one of the shared
+  // instances in BoardCodes, so no cell of a board gets a ground of its own
   static IGround makeGround(String groundStr) {
-    switch (groundStr) {
-      case "Y":
-        return new Target("yellow");
-      case "G":
-        return new Target("green");
-      case "B":
-        return new Target("blue");
-      case "R":
-        return new Target("red");
-      case "H":
-        return new Hole();
-      case "I":
-        return new Ice();
-      case "_":
-        return new Normal();
-      default:
-        throw new IllegalArgumentException("invalid ground cell description: " + groundStr);
+    int code = groundStr.length() == 1 ? LevelParser.GROUND_CHARS.indexOf(groundStr) : -1;
+    if (code < 0) {
+      throw new IllegalArgumentException("invalid ground cell description: " + groundStr);
     }
+    return BoardCodes.toGround((byte) code);
   }
 
-  // Returns the content represented by the given string
+  // Returns the content represented by the given string. Like makeGround, every content is one of
+  // the shared instances in BoardCodes
   static IContent makeContent(String contentStr) {
-    switch (contentStr) {
-      case "y":
-        return new Trophy("yellow");
-      case "g":
-        return new Trophy("green");
-      case "b":
-        return new Trophy("blue");
-      case "r":
-        return new Trophy("red");
-      case "W":
-        return new Wall();
-      case "B":
-        return new Box();
-      case ">":
-        return new Player("right");
-      case "<":
-        return new Player("left");
-      case "^":
-        return new Player("up");
-      case "v":
-        return new Player("down");
-      case "_":
-        return new Blank();
-      default:
-        throw new IllegalArgumentException("invalid content cell description: " + contentStr);
+    int code = contentStr.length() == 1 ? LevelParser.CONTENT_CHARS.indexOf(contentStr) : -1;
+    if (code < 0) {
+      throw new IllegalArgumentException("invalid content cell description: " + contentStr);
     }
+    return BoardCodes.toContent((byte) code);
   }
 
   // locates the player's index in the given a content string representing the row of a board
@@ -225,6 +532,15 @@ class Utils {
    * this.findPlayerIndex(String contentStr) - int
    * this.findPlayer(String contentStr) - Posn
    * this.split(String input, String regex) - ArrayList<String>
+   * this.colorId(String color) - int
+   * this.directionId(String direction) - int
+   * this.packGrounds(ArrayList<ArrayList<Cell>> grid) - byte[]
+   * this.packContents(ArrayList<ArrayList<Cell>> grid) - byte[]
+   * this.gridWidth(ArrayList<ArrayList<Cell>> grid) - int
+   * this.holeIndices(byte[] grounds) - int[]
+   * this.slideStops(int width, byte[] grounds, byte[] contents) - int[][]
+   * this.countUnsatisfied(byte[] grounds, byte[] contents) - int
+   * this.aboveAll(WorldImage[] images, int start, int end) - WorldImage
    * this.keyToDirection(String key) - String
    * Methods on Fields
    */
@@ -234,28 +550,42 @@ class Utils {
 // bottom right is size(), size(). In other words, rows increase as we go down and cols increase
 // as we go to the right
 class Posn {
-  int col; // the col index
-  int row; // the row index
+  final int col; // the col index
+  final int row; // the row index
+
+  // every position with a col and row less than CACHED_SIZE, made the first time it is needed
+  static final int CACHED_SIZE = 256;
+  static final Posn[] CACHE = new Posn[CACHED_SIZE * CACHED_SIZE];
 
   public Posn(int col, int row) {
     this.col = col;
     this.row = row;
   }
 
+  // returns a position with the given col and row, which is the same object every time for
+  // positions on any board up to CACHED_SIZE wide and tall. Positions never change, so sharing
+  // them is safe, and it means moving around a board does not keep making new ones
+  static Posn of(int col, int row) {
+    if (col < 0 || row < 0 || col >= CACHED_SIZE || row >= CACHED_SIZE) {
+      return new Posn(col, row);
+    }
+    int key = row * CACHED_SIZE + col;
+    Posn cached = CACHE[key];
+    if (cached == null) {
+      cached = new Posn(col, row);
+      CACHE[key] = cached;
+    }
+    return cached;
+  }
+
   // Calculates a new posn based on the given direction
   Posn movePosn(String direction) {
-    switch (direction) {
-      case "up":
-        return new Posn(this.col, this.row - 1);
-      case "right":
-        return new Posn(this.col + 1, this.row);
-      case "down":
-        return new Posn(this.col, this.row + 1);
-      case "left":
-        return new Posn(this.col - 1, this.row);
-      default:
-        throw new IllegalArgumentException("Invalid direction: " + direction);
-    }
+    return this.movePosn(Direction.of(direction));
+  }
+
+  // Calculates a new posn one step in the given direction from this one
+  Posn movePosn(Direction direction) {
+    return Posn.of(this.col + direction.dCol, this.row + direction.dRow);
   }
 
   // determines if this position is within the boundary box
@@ -292,11 +622,66 @@ class Posn {
    * this.row - int
    * Methods
    * this.movePosn(String direction) - Posn
+   * this.movePosn(Direction direction) - Posn
    * this.withinBounds(Posn topLeft, Posn bottomRight) - boolean
    * Methods on Fields
    */
 }
 
+// Represents one of the four directions the player can move in, along with how far one step in
+// that direction goes
+enum Direction {
+  UP("up", 0, -1),
+  RIGHT("right", 1, 0),
+  DOWN("down", 0, 1),
+  LEFT("left", -1, 0);
+
+  // every direction in order of id, kept so that looping over them does not copy values()
+  static final Direction[] ALL = Direction.values();
+
+  final String label; // the name of the direction, which is also its key
+  final int dCol; // how many columns one step in this direction goes
+  final int dRow; // how many rows one step in this direction goes
+
+  Direction(String label, int dCol, int dRow) {
+    this.label = label;
+    this.dCol = dCol;
+    this.dRow = dRow;
+  }
+
+  // returns the direction with the given name
+  static Direction of(String label) {
+    // EFFECT: looks for the direction with the given name
+    for (Direction direction : ALL) {
+      if (direction.label.equals(label)) {
+        return direction;
+      }
+    }
+    throw new IllegalArgumentException("Invalid direction: " + label);
+  }
+
+  // returns how far apart two cells one step apart in this direction are in a flat board of the
+  // given width
+  int delta(int width) {
+    return this.dRow * width + this.dCol;
+  }
+
+  // returns the direction opposite to this one
+  Direction opposite() {
+    return ALL[(this.ordinal() + 2) % ALL.length];
+  }
+
+  /* Fields
+   * this.label - String
+   * this.dCol - int
+   * this.dRow - int
+   * Methods
+   * this.delta(int width) - int
+   * this.opposite() - Direction
+   * Methods on Fields
+   */
+}
+
 // represents a single cell in the Sokoban board
 class Cell {
   IGround ground;
@@ -310,7 +695,7 @@ class Cell {
 
   // converts this cell to an image
   WorldImage cellToImage() {
-    return new OverlayImage(this.content.contentToImage(), this.ground.groundToImage());
+    return Sprites.cell(this.ground.groundCode(), this.content.contentCode());
   }
 
   // todo test/temp
@@ -386,17 +771,23 @@ interface IGround {
   // todo tests, templates
   // determines if this ground allows a given content to slide on it
   boolean groundSlide(IContent other);
+
+  // returns the board code that this ground is packed into
+  byte groundCode();
 }
 
-// a ground object
+// a ground object. How a ground behaves is looked up from its board code in BoardCodes, so every
+// kind of ground shares these methods
 abstract class AGround implements IGround {
   // Draws this ground as its WorldImage representation
   public abstract WorldImage groundToImage();
 
+  // returns the board code that this ground is packed into
+  public abstract byte groundCode();
+
   // determines if this ground object won given a content object
   public boolean groundWon(IContent other) {
-    // vacuously true
-    return true;
+    return BoardCodes.won(this.groundCode(), other.contentCode());
     /* Fields of Parameters
      * Methods on Parameters
      * other.contentToImage() - WorldImage
@@ -409,7 +800,7 @@ abstract class AGround implements IGround {
 
   // determines if the given IContent will fall into this ground
   public boolean groundFall(IContent other) {
-    return false;
+    return BoardCodes.falls(this.groundCode(), other.contentCode());
     /* Fields of Parameters
      * Methods on Parameters
      * other.contentToImage() - WorldImage
@@ -422,8 +813,7 @@ abstract class AGround implements IGround {
 
   // determines if this ground allows a given content to slide on it
   public boolean groundSlide(IContent other) {
-    // todo temp
-    return false;
+    return BoardCodes.slides(this.groundCode(), other.contentCode());
   }
 
   /* Fields
@@ -461,6 +851,9 @@ interface IContent {
   // determine if this content can move to the given position
   boolean canMoveTo(Posn moveToPos, Level level);
 
+  // returns the board code that this content is packed into
+  byte contentCode();
+
   /* Fields
    * Methods
    * this.contentToImage() - WorldImage
@@ -470,20 +863,24 @@ interface IContent {
    * this.isFixed() - boolean
    * this.contentFall() - boolean
    * this.canMoveTo(Posn moveToPos, Level level) - boolean
+   * this.contentCode() - byte
    * Methods on Fields
    */
 }
 
-// a content object
+// a content object. Like AGround, how a content behaves is looked up from its board code
 abstract class AContent implements IContent {
   // Draws this content as its WorldImage representation
   public abstract WorldImage contentToImage();
 
+  // returns the board code that this content is packed into
+  public abstract byte contentCode();
+
   // determines if this content object won given a Target object
   public boolean contentWon(Target other) {
-    return false;
+    return BoardCodes.won(other.groundCode(), this.contentCode());
     /* Fields of Parameters
-     * other.color - String
+     * other.colorId - int
      * Methods on Parameters
      * other.groundToImage() - WorldImage
      * other.groundWon(IContent other) - boolean
@@ -494,22 +891,22 @@ abstract class AContent implements IContent {
   // Determines if the cell that this content is in is counted as a loss;
   // cell is lost if the player is not its content
   public boolean contentLost() {
-    return true;
+    return !BoardCodes.isPlayer(this.contentCode());
   }
 
   // determines if this content is vacant
   public boolean isVacant() {
-    return false;
+    return BoardCodes.isVacant(this.contentCode());
   }
 
   // determines if this content is fixed
   public boolean isFixed() {
-    return false;
+    return BoardCodes.isFixed(this.contentCode());
   }
 
   // Determines if this content will fall into the given Ground
   public boolean contentFall(IGround other) {
-    return true;
+    return BoardCodes.falls(other.groundCode(), this.contentCode());
     /* Fields of Parameters
      * Methods on Parameters
      * this.groundToImage() - WorldImage
@@ -518,27 +915,21 @@ abstract class AContent implements IContent {
      */
   }
 
-  // determine if this content can move to the given position
+  // determine if this content can move to the given position, which is on the level's board or
+  // one step off of it, where the walls of the ring around the board are
   public boolean canMoveTo(Posn moveToPos, Level level) {
-    Posn topLeft = new Posn(0, 0);
-    Posn bottomRight = new Posn(level.board.get(0).size() - 1, level.board.size() - 1);
-
-    if (!moveToPos.withinBounds(topLeft, bottomRight)) {
-      return false; // return false if move position is out of bounds
-    }
     if (this.isFixed()) {
       return false; // return false if this content is fixed
     }
 
-    IContent moveToContent = level.findCell(moveToPos).content;
-
-    return moveToContent.isVacant();
+    return BoardCodes.isVacant(level.contents.get(level.indexOf(moveToPos)));
 
     /*
      * moveToPos.movePosn(String dir) - Posn
      * moveToPos.withinBounds(Posn topLeft, Posn bottomRight) - boolean
      * moveToPos.samePosn(Posn pos) - boolean
-     * level.board
+     * level.grounds - ByteVector
+     * level.contents - ByteVector
      * level.getCell(Posn posn) - Cell
      * level.draw() - WorldImage
      * level.levelWon() - boolean
@@ -546,7 +937,6 @@ abstract class AContent implements IContent {
      * level.movePlayer(String direction) - Level
      * level.switchContents(Posn pos1, Posn pos2, Posn playerPos) - Level
      * level.updateLevel() - Level
-     * level.undoMove() - Level
      * level.updateScore() - Level
      */
   }
@@ -573,6 +963,11 @@ class Normal extends AGround {
   public WorldImage groundToImage() {
     return Constants.NORMAL_SPRITE;
   }
+
+  // returns the board code that this normal ground is packed into
+  public byte groundCode() {
+    return BoardCodes.NORMAL;
+  }
   /* Fields
    * Methods
    * this.groundToImage() - WorldImage
@@ -584,32 +979,29 @@ class Normal extends AGround {
 
 // Represents a Target as the ground in the game Sokoban
 class Target extends AGround {
-  String color;
+  final int colorId; // the id of this Target's color in the Palette
 
   // Constructor
   Target(String color) {
-    this.color = color;
+    this(Palette.id(color));
+  }
+
+  Target(int colorId) {
+    this.colorId = colorId;
   }
 
   // Draws this Target as its WorldImage equivalent
   public WorldImage groundToImage() {
-    return Utils.colorToTargetSprite(this.color);
+    return Utils.colorToTargetSprite(Palette.name(this.colorId));
   }
 
-  // determines if this target ground object won given a content object
-  public boolean groundWon(IContent other) {
-    return other.contentWon(this);
-    /* Fields of Parameters
-     * Methods on Parameters
-     * other.contentToImage() - WorldImage
-     * other.contentWon(Target other) - boolean
-     * other.contentLost() - boolean
-     * other.isVacant() - boolean
-     * other.contentFall(IGround other) - boolean
-     */
+  // returns the board code that this Target is packed into, which depends on its color
+  public byte groundCode() {
+    return BoardCodes.target(this.colorId);
   }
+
   /* Fields
-   * this.color - String
+   * this.colorId - int
    * Methods
    * this.groundToImage() - WorldImage
    * this.groundWon(IContent other) - boolean
@@ -627,20 +1019,11 @@ class Hole extends AGround {
     return Constants.HOLE_SPRITE;
   }
 
-  // Determines if the given IContent will fall into this hole
-  public boolean groundFall(IContent other) {
-    return other.contentFall(this);
-    /* Fields of Parameters
-     * Methods on Parameters
-     * other.contentToImage() - WorldImage
-     * other.contentWon(Target other) - boolean
-     * other.contentLost() - boolean
-     * other.isVacant() - boolean
-     * other.isFixed() - boolean
-     * other.contentFall(IGround other) - boolean
-     * other.canMoveTo(Posn moveToPos, Level level) - boolean
-     */
+  // returns the board code that this Hole is packed into
+  public byte groundCode() {
+    return BoardCodes.HOLE;
   }
+
   /* Fields
    * this.color - String
    * Methods
@@ -659,9 +1042,9 @@ class Ice extends AGround {
     return Constants.ICE_SPRITE;
   }
 
-  // determines if this ice allows a given content to slide on it
-  public boolean groundSlide(IContent other) {
-    return !other.isFixed();
+  // returns the board code that this Ice is packed into
+  public byte groundCode() {
+    return BoardCodes.ICE;
   }
 }
 
@@ -674,25 +1057,9 @@ class Blank extends AContent {
     return new EmptyImage();
   }
 
-  // determines if this blank object is vacant
-  public boolean isVacant() {
-    return true;
-  }
-
-  // Determines if this content will fall into the given ground
-  public boolean contentFall(IGround other) {
-    return false;
-    /* Fields of Parameters
-     * Methods on Parameters
-     * other.groundToImage() - WorldImage
-     * other.groundWon(IContent other) - boolean
-     * other.groundFall(IContent other) - boolean
-     */
-  }
-
-  // determines if this blank is fixed
-  public boolean isFixed() {
-    return true;
+  // returns the board code that this blank object is packed into
+  public byte contentCode() {
+    return BoardCodes.BLANK;
   }
 
   /* Fields
@@ -714,9 +1081,9 @@ class Wall extends AContent {
     return Constants.WALL_SPRITE;
   }
 
-  // determines if this wall is fixed
-  public boolean isFixed() {
-    return true;
+  // returns the board code that this Wall is packed into
+  public byte contentCode() {
+    return BoardCodes.WALL;
   }
 
   /* Fields
@@ -737,6 +1104,11 @@ class Box extends AContent {
   public WorldImage contentToImage() {
     return Constants.BOX_SPRITE;
   }
+
+  // returns the board code that this Box is packed into
+  public byte contentCode() {
+    return BoardCodes.BOX;
+  }
   /* Fields
    * Methods
    * this.contentToImage() - WorldImage
@@ -750,29 +1122,28 @@ class Box extends AContent {
 
 // Represents a colored trophy in Sokoban
 class Trophy extends AContent {
-  String color;
+  final int colorId; // the id of this Trophy's color in the Palette
 
   Trophy(String color) {
-    this.color = color;
+    this(Palette.id(color));
+  }
+
+  Trophy(int colorId) {
+    this.colorId = colorId;
   }
 
   // Draws this Trophy as its WorldImage equivalent
   public WorldImage contentToImage() {
-    return Utils.colorToTrophySprite(this.color);
+    return Utils.colorToTrophySprite(Palette.name(this.colorId));
   }
 
-  // Determines if this trophy content is won given the Target that it is on
-  public boolean contentWon(Target other) {
-    return other.color.equalsIgnoreCase(this.color);
-    /* Fields of Parameters
-     * other.color - String
-     * Methods on Parameters
-     * other.groundToImage() - WorldImage
-     * other.groundWon(IContent other) - boolean
-     * other.groundFall(IContent other) - boolean
-     */
+  // returns the board code that this Trophy is packed into, which depends on its color
+  public byte contentCode() {
+    return BoardCodes.trophy(this.colorId);
   }
+
   /* Fields
+   * this.colorId - int
    * Methods
    * this.contentToImage() - WorldImage
    * this.contentWon(IContent other) - boolean
@@ -785,9 +1156,13 @@ class Trophy extends AContent {
 
 // Represents the player in Sokoban
 class Player extends AContent {
-  String direction;
+  final Direction direction;
 
   Player(String direction) {
+    this(Direction.of(direction));
+  }
+
+  Player(Direction direction) {
     this.direction = direction;
   }
 
@@ -796,10 +1171,9 @@ class Player extends AContent {
     return Constants.PLAYER_SPRITE;
   }
 
-  // Determines if the cell that this player is in is counted as a loss;
-  // cell is lost if the player is not its content
-  public boolean contentLost() {
-    return false;
+  // returns the board code that this Player is packed into, which depends on its direction
+  public byte contentCode() {
+    return BoardCodes.player(this.direction.ordinal());
   }
 
 
@@ -814,319 +1188,4362 @@ class Player extends AContent {
    */
 }
 
-// --------------- LEVEL -----------------------
-
-// Represents a Level in Sokoban
-class Level {
-  // the board is represented with (0,0) being the top left of the game.
-  // (size of board, size of an array in board) is the bottom right cell in the game
-  // as well as the last item in the last array of the arrayList.
+// --------------- BOARD CODES -----------------------
+
+// The byte codes that a Level packs its board into. Grounds and contents each get their own
+// code, and are only turned back into IGround and IContent objects when a cell is drawn.
+// How each kind of tile behaves is data too: every code has a set of rules in GROUND_RULES or
+// CONTENT_RULES, and what happens to every pair of a ground and a content is worked out from
+// those once, into PAIRS. A new kind of tile is a new code and its rules, not a new class
+class BoardCodes {
+  static final int CODES = 16; // one more than the biggest ground or content code
+
+  // ground codes
+  static final byte NORMAL = 0;
+  static final byte ICE = 1;
+  static final byte HOLE = 2;
+  static final byte TARGET = 3; // a target's code is TARGET + the id of its color
+
+  // content codes
+  static final byte BLANK = 0;
+  static final byte WALL = 1;
+  static final byte BOX = 2;
+  static final byte PLAYER = 3; // a player's code is PLAYER + the id of its direction
+  static final byte TROPHY = 7; // a trophy's code is TROPHY + the id of its color
+
+  // the rules of a ground, as bits of its entry in GROUND_RULES
+  static final int SLIPPERY = 1; // contents that are not fixed slide over it
+  static final int SWALLOWS = 2; // contents that are not vacant fall into it
+  static final int GOAL = 4; // it is only won with a trophy of its own color on it
+
+  // the rules of a content, as bits of its entry in CONTENT_RULES
+  static final int VACANT = 1; // other contents can move into its cell
+  static final int FIXED = 2; // it never moves out of its cell
+  static final int CONTROLLED = 4; // it is the player
+  static final int SCORES = 8; // it wins a goal of its own color
+
+  // what happens to a pair of a ground and a content, as bits of its entry in PAIRS
+  static final int SLIDES = 1;
+  static final int FALLS = 2;
+  static final int UNSATISFIED = 4;
+
+  // the rules of every ground code and every content code. Targets and trophies have one code
+  // for each color that the palette can hold, and players one for each direction
+  static final int[] GROUND_RULES = BoardCodes.rules(new int[]{0, SLIPPERY, SWALLOWS},
+          TARGET, Palette.MAX_COLORS, GOAL);
+  static final int[] CONTENT_RULES = BoardCodes.rules(
+          BoardCodes.rules(new int[]{VACANT | FIXED, FIXED, 0}, PLAYER, 4, CONTROLLED),
+          TROPHY, Palette.MAX_COLORS, SCORES);
+  // the bits of what happens to every pair of codes, at index ground code * CODES + content code
+  static final byte[] PAIRS = BoardCodes.pairs();
+
+  // every ground and content keeps no state besides its code, so each code is only ever turned
+  // into one object, made the first time it is asked for and shared by every cell after that
+  static final IGround[] GROUNDS = new IGround[TARGET + Palette.MAX_COLORS];
+  static final IContent[] CONTENTS = new IContent[TROPHY + Palette.MAX_COLORS];
+
+  // returns the code of a target of the color with the given id
+  static byte target(int colorId) {
+    return (byte) (TARGET + colorId);
+  }
 
-  ArrayList<ArrayList<Cell>> board; // a sokoban board
-  Posn playerPos; // the player position
-  Level prevLevel; // the previous sokoban board
-  int steps; // number of steps a player has made
+  // returns the code of a trophy of the color with the given id
+  static byte trophy(int colorId) {
+    return (byte) (TROPHY + colorId);
+  }
 
+  // returns the code of a player facing the direction with the given id
+  static byte player(int directionId) {
+    return (byte) (PLAYER + directionId);
+  }
 
-  // configures this level given a board: list of lists of cells, and the player position
-  Level(ArrayList<ArrayList<Cell>> board, Posn playerPos, Level prev_level, int steps) {
-    this.board = board;
-    this.playerPos = playerPos;
-    this.prevLevel = prev_level;
-    this.steps = steps;
+  // returns the rules of the given kinds of tile, at the index of their codes, followed by the
+  // given number of codes from the given first one that all have the given rules
+  static int[] rules(int[] kinds, int first, int count, int rules) {
+    int[] table = Arrays.copyOf(kinds, CODES);
+    Arrays.fill(table, first, first + count, rules);
+    return table;
   }
 
-  // configures this level given the ground and content level description strings
-  public Level(String groundStr, String contentsStr) {
-    if (groundStr.length() != contentsStr.length()) {
-      throw new IllegalArgumentException("Invalid Ground/Content descriptions: "
-              + "Given ground and content strings cannot be of different sizes");
+  // returns what happens to every pair of a ground and a content code, worked out from the rules
+  // of each
+  static byte[] pairs() {
+    byte[] pairs = new byte[CODES * CODES];
+    // EFFECT: works out every ground with every content
+    for (int ground = 0; ground < CODES; ground++) {
+      for (int content = 0; content < CODES; content++) {
+        int groundRules = GROUND_RULES[ground];
+        int contentRules = CONTENT_RULES[content];
+        boolean slides = (groundRules & SLIPPERY) != 0 && (contentRules & FIXED) == 0;
+        boolean falls = (groundRules & SWALLOWS) != 0 && (contentRules & VACANT) == 0;
+        boolean won = (groundRules & GOAL) == 0
+                || ((contentRules & SCORES) != 0 && content - TROPHY == ground - TARGET);
+        pairs[ground * CODES + content] = (byte) ((slides ? SLIDES : 0) | (falls ? FALLS : 0)
+                | (won ? 0 : UNSATISFIED));
+      }
     }
-    this.board = Utils.makeGrid(groundStr, contentsStr);
-    this.playerPos = Utils.findPlayer(contentsStr);
-    this.prevLevel = this;
-    this.steps = 0;
+    return pairs;
   }
 
-  // returns the cell at the given position in this sokoban board
-  Cell findCell(Posn posn) {
-    Posn topLeft = new Posn(0, 0);
-    Posn bottomRight = new Posn(this.board.get(0).size() - 1, this.board.size() - 1);
-    if (!posn.withinBounds(topLeft, bottomRight)) {
-      throw new RuntimeException("Tried to access a cell that is out of bounds");
-    }
-    return this.board.get(posn.row).get(posn.col);
-    /* Fields of Parameters
-     * posn.col - int
-     * posn.row - int
-     * Methods on Parameter
-     * posn.movePosn(String direction) - Posn
-     * posn.withinBounds(Posn topLeft, Posn bottomRight) - boolean
-     */
+  // determines if the given ground code is a target
+  static boolean isTarget(byte ground) {
+    return (GROUND_RULES[ground] & GOAL) != 0;
   }
 
-  // Converts this level's board into a WorldImage to be shown
-  WorldImage draw() {
-    WorldImage boardImage = new EmptyImage();
-    // EFFECT: Draws every row in this board and puts each row below one another
-    for (ArrayList<Cell> row : this.board) {
-      WorldImage rowImage = new EmptyImage();
-      // EFFECT: Draws every cell in the given row and places each drawing beside one another
-      for (Cell cell : row) {
-        rowImage = new BesideImage(rowImage, cell.cellToImage());
-      }
-      boardImage = new AboveImage(boardImage, rowImage);
-    }
+  // determines if the given content code is a trophy
+  static boolean isTrophy(byte content) {
+    return (CONTENT_RULES[content] & SCORES) != 0;
+  }
 
-    return boardImage;
+  // determines if the given content code is a player
+  static boolean isPlayer(byte content) {
+    return (CONTENT_RULES[content] & CONTROLLED) != 0;
   }
 
-  // draws this level's stats
-  WorldImage drawStats() {
+  // determines if the given content code is vacant (see IContent.isVacant)
+  static boolean isVacant(byte content) {
+    return (CONTENT_RULES[content] & VACANT) != 0;
+  }
 
-    WorldImage scoreImage = new TextImage("Steps: " + this.steps, Color.BLACK);
-    WorldImage playerPosImage = new TextImage("Player Position: " + this.playerPos.toString(),
-            Color.BLACK);
-    IContent player = this.findCell(this.playerPos).content;
+  // determines if the given content code is fixed (see IContent.isFixed)
+  static boolean isFixed(byte content) {
+    return (CONTENT_RULES[content] & FIXED) != 0;
+  }
 
-    // TODO (for debugging) delete this later or test if kept
-    Posn moveUp = this.playerPos.movePosn("up");
-    Posn pushUp = moveUp.movePosn("up");
-    Posn moveDown = this.playerPos.movePosn("down");
-    Posn pushDown = moveDown.movePosn("down");
-    Posn moveLeft = this.playerPos.movePosn("left");
-    Posn pushLeft = moveLeft.movePosn("left");
-    Posn moveRight = this.playerPos.movePosn("right");
-    Posn pushRight = moveRight.movePosn("right");
+  // determines if the given content slides on the given ground (see IGround.groundSlide)
+  static boolean slides(byte ground, byte content) {
+    return (PAIRS[ground * CODES + content] & SLIDES) != 0;
+  }
 
-    IContent up = this.findCell(moveUp).content;
-    IContent down = this.findCell(moveDown).content;
-    IContent left = this.findCell(moveLeft).content;
-    IContent right = this.findCell(moveRight).content;
+  // determines if the given content falls into the given ground (see IGround.groundFall)
+  static boolean falls(byte ground, byte content) {
+    return (PAIRS[ground * CODES + content] & FALLS) != 0;
+  }
 
-    WorldImage moveTo = new TextImage(
-            "move up? " + player.canMoveTo(moveUp, this)
-                    + "\n move down? " + player.canMoveTo(moveDown, this)
-                    + "\n move left? " + player.canMoveTo(moveLeft, this)
-                    + "\n move right? " + player.canMoveTo(moveRight, this), Color.red);
-    WorldImage pushTo = new TextImage(
+  // determines if a cell with the given ground and content is won (see IGround.groundWon)
+  static boolean won(byte ground, byte content) {
+    return (PAIRS[ground * CODES + content] & UNSATISFIED) == 0;
+  }
+
+  // returns 1 if a cell with the given ground and content is a Target without its trophy, and 0
+  // if not, for keeping count of those Targets
+  static int unsatisfied(byte ground, byte content) {
+    return (PAIRS[ground * CODES + content] & UNSATISFIED) >>> 2;
+  }
+
+  // returns the shared ground that the given ground code represents
+  static IGround toGround(byte ground) {
+    IGround shared = GROUNDS[ground];
+    if (shared == null) {
+      shared = BoardCodes.makeGround(ground);
+      GROUNDS[ground] = shared;
+    }
+    return shared;
+  }
+
+  // returns the shared content that the given content code represents
+  static IContent toContent(byte content) {
+    IContent shared = CONTENTS[content];
+    if (shared == null) {
+      shared = BoardCodes.makeContent(content);
+      CONTENTS[content] = shared;
+    }
+    return shared;
+  }
+
+  // returns a new ground that the given ground code represents
+  static IGround makeGround(byte ground) {
+    switch (ground) {
+      case NORMAL:
+        return new Normal();
+      case ICE:
+        return new Ice();
+      case HOLE:
+        return new Hole();
+      default:
+        return new Target(ground - TARGET);
+    }
+  }
+
+  // returns a new content that the given content code represents
+  static IContent makeContent(byte content) {
+    switch (content) {
+      case BLANK:
+        return new Blank();
+      case WALL:
+        return new Wall();
+      case BOX:
+        return new Box();
+      default:
+        if (isPlayer(content)) {
+          return new Player(Direction.ALL[content - PLAYER]);
+        }
+        return new Trophy(content - TROPHY);
+    }
+  }
+
+  /* Fields
+   * this.GROUND_RULES - int[]
+   * this.CONTENT_RULES - int[]
+   * this.PAIRS - byte[]
+   * this.GROUNDS - IGround[]
+   * this.CONTENTS - IContent[]
+   * Methods
+   * this.target(int colorId) - byte
+   * this.trophy(int colorId) - byte
+   * this.player(int directionId) - byte
+   * this.rules(int[] kinds, int first, int count, int rules) - int[]
+   * this.pairs() - byte[]
+   * this.isTarget(byte ground) - boolean
+   * this.isTrophy(byte content) - boolean
+   * this.isPlayer(byte content) - boolean
+   * this.isVacant(byte content) - boolean
+   * this.isFixed(byte content) - boolean
+   * this.slides(byte ground, byte content) - boolean
+   * this.falls(byte ground, byte content) - boolean
+   * this.won(byte ground, byte content) - boolean
+   * this.unsatisfied(byte ground, byte content) - int
+   * this.toGround(byte ground) - IGround
+   * this.toContent(byte content) - IContent
+   * this.makeGround(byte ground) - IGround
+   * this.makeContent(byte content) - IContent
+   * Methods on Fields
+   */
+}
+
+// An immutable vector of bytes, stored as a trie whose leaves are chunks of WIDTH bytes. Setting
+// a byte only copies the chunk it is in and the nodes on the path down to that chunk; every other
+// chunk is shared with the vector it was set in. Levels use these for their boards so that the
+// levels kept around for undoing moves only hold on to the cells each move changed.
+class ByteVector {
+  static final int BITS = 5; // the number of index bits that each node of the trie splits on
+  static final int WIDTH = 1 << BITS; // the number of children of each node, and bytes in a chunk
+  static final int MASK = WIDTH - 1;
+
+  int size; // the number of bytes in this vector
+  int shift; // how far an index is shifted to pick its child in the root, 0 if the root is a chunk
+  Object root; // a byte[] chunk if shift is 0, and otherwise an Object[] of child nodes
+
+  // configures this vector to hold a copy of the given bytes
+  ByteVector(byte[] bytes) {
+    this.size = bytes.length;
+    this.shift = 0;
+    // EFFECT: adds levels to the trie until it is big enough to hold every byte
+    while ((long) WIDTH << this.shift < this.size) {
+      this.shift += BITS;
+    }
+    this.root = ByteVector.build(bytes, 0, this.shift);
+  }
+
+  // configures this vector given its size and the trie holding its bytes
+  ByteVector(int size, int shift, Object root) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+  }
+
+  // returns a node of the given shift holding the given bytes starting at the given index
+  static Object build(byte[] bytes, int start, int shift) {
+    if (shift == 0) {
+      byte[] chunk = new byte[WIDTH];
+      System.arraycopy(bytes, start, chunk, 0, Math.max(0, Math.min(WIDTH, bytes.length - start)));
+      return chunk;
+    }
+    Object[] node = new Object[WIDTH];
+    int childSpan = 1 << shift; // the number of bytes under each child
+    // EFFECT: builds a child for every span of bytes this node covers that has bytes in it
+    for (int child = 0; child < WIDTH && start + child * childSpan < bytes.length; child++) {
+      node[child] = ByteVector.build(bytes, start + child * childSpan, shift - BITS);
+    }
+    return node;
+  }
+
+  // returns the byte at the given index, which must be within this vector's size
+  byte get(int idx) {
+    Object node = this.root;
+    // EFFECT: walks down the trie to the chunk that holds the given index
+    for (int level = this.shift; level > 0; level -= BITS) {
+      node = ((Object[]) node)[(idx >>> level) & MASK];
+    }
+    return ((byte[]) node)[idx & MASK];
+  }
+
+  // returns a vector like this one, but with the given value at the given index
+  ByteVector set(int idx, byte value) {
+    if (this.get(idx) == value) {
+      return this;
+    }
+    return new ByteVector(this.size, this.shift,
+            ByteVector.setIn(this.root, this.shift, idx, value));
+  }
+
+  // returns a copy of the given node of the given shift with the given value at the given index
+  static Object setIn(Object node, int shift, int idx, byte value) {
+    if (shift == 0) {
+      byte[] chunk = ((byte[]) node).clone();
+      chunk[idx & MASK] = value;
+      return chunk;
+    }
+    Object[] copy = ((Object[]) node).clone();
+    int child = (idx >>> shift) & MASK;
+    copy[child] = ByteVector.setIn(copy[child], shift - BITS, idx, value);
+    return copy;
+  }
+
+  // returns a vector like this one, but with the bytes at the two given indices swapped. Two
+  // indices in the same chunk only copy the path down to that chunk once
+  ByteVector swap(int idx1, int idx2) {
+    byte value1 = this.get(idx1);
+    byte value2 = this.get(idx2);
+    if (value1 == value2) {
+      return this;
+    }
+    if (idx1 >>> BITS != idx2 >>> BITS) {
+      return this.set(idx1, value2).set(idx2, value1);
+    }
+    return new ByteVector(this.size, this.shift,
+            ByteVector.swapIn(this.root, this.shift, idx1, idx2));
+  }
+
+  // returns a copy of the given node of the given shift with the bytes at the two given indices,
+  // which are in the same chunk, swapped
+  static Object swapIn(Object node, int shift, int idx1, int idx2) {
+    if (shift == 0) {
+      byte[] chunk = ((byte[]) node).clone();
+      byte value1 = chunk[idx1 & MASK];
+      chunk[idx1 & MASK] = chunk[idx2 & MASK];
+      chunk[idx2 & MASK] = value1;
+      return chunk;
+    }
+    Object[] copy = ((Object[]) node).clone();
+    int child = (idx1 >>> shift) & MASK;
+    copy[child] = ByteVector.swapIn(copy[child], shift - BITS, idx1, idx2);
+    return copy;
+  }
+
+  // returns, in order and once each, every index at which the first given vector differs from
+  // the second or the third from the fourth. All four must be the same size, and chunks that both
+  // pairs share are skipped without being looked at. The tries are walked twice, once to count the
+  // indices and once to fill them in, so only the array that is returned is allocated
+  static int[] differences(ByteVector first, ByteVector firstOther, ByteVector second,
+                           ByteVector secondOther) {
+    int count = ByteVector.differences(first.root, firstOther.root, second.root,
+            secondOther.root, first.shift, 0, null, 0);
+    int[] indices = new int[count];
+    ByteVector.differences(first.root, firstOther.root, second.root, secondOther.root,
+            first.shift, 0, indices, 0);
+    return indices;
+  }
+
+  // returns the given count plus the number of indices at which the first two given nodes of the
+  // given shift differ or the last two do, where the first byte of each node is at the given start.
+  // EFFECT: puts each of those indices into the given array after the given count of them, unless
+  // the array is null
+  static int differences(Object node, Object other, Object second, Object secondOther, int shift,
+                         int start, int[] indices, int count) {
+    if (node == other && second == secondOther) {
+      return count;
+    }
+    if (shift == 0) {
+      byte[] chunk = (byte[]) node;
+      byte[] otherChunk = (byte[]) other;
+      byte[] secondChunk = (byte[]) second;
+      byte[] secondOtherChunk = (byte[]) secondOther;
+      // EFFECT: counts every index where either pair of chunks differs
+      for (int idx = 0; idx < WIDTH; idx++) {
+        if (chunk[idx] != otherChunk[idx] || secondChunk[idx] != secondOtherChunk[idx]) {
+          if (indices != null) {
+            indices[count] = start + idx;
+          }
+          count++;
+        }
+      }
+      return count;
+    }
+    Object[] children = (Object[]) node;
+    Object[] otherChildren = (Object[]) other;
+    Object[] secondChildren = (Object[]) second;
+    Object[] secondOtherChildren = (Object[]) secondOther;
+    // EFFECT: counts the differences under every child
+    for (int child = 0; child < WIDTH; child++) {
+      count = ByteVector.differences(children[child], otherChildren[child],
+              secondChildren[child], secondOtherChildren[child], shift - BITS,
+              start + (child << shift), indices, count);
+    }
+    return count;
+  }
+
+  // returns the bytes in this vector as an array
+  byte[] toArray() {
+    byte[] bytes = new byte[this.size];
+    ByteVector.copyInto(this.root, this.shift, bytes, 0);
+    return bytes;
+  }
+
+  // EFFECT: copies the bytes of the given node of the given shift, which starts at the given
+  // index, into the given array, one chunk at a time
+  static void copyInto(Object node, int shift, byte[] bytes, int start) {
+    if (shift == 0) {
+      System.arraycopy(node, 0, bytes, start, Math.min(WIDTH, bytes.length - start));
+      return;
+    }
+    int childSpan = 1 << shift; // the number of bytes under each child
+    // EFFECT: copies every child that has bytes in it
+    for (int child = 0; child < WIDTH && start + child * childSpan < bytes.length; child++) {
+      ByteVector.copyInto(((Object[]) node)[child], shift - BITS, bytes, start + child * childSpan);
+    }
+  }
+
+  // returns roughly how many bytes of memory this vector's trie takes up on top of the given
+  // older vector's trie, counting only the nodes that the two do not share
+  long bytesNotSharedWith(ByteVector older) {
+    if (older.shift != this.shift) {
+      return ByteVector.bytesNotShared(this.root, null, this.shift);
+    }
+    return ByteVector.bytesNotShared(this.root, older.root, this.shift);
+  }
+
+  // returns roughly how many bytes of memory the given node of the given shift takes up, not
+  // counting the nodes it shares with the given older node (which may be null)
+  static long bytesNotShared(Object node, Object older, int shift) {
+    long arrayHeader = 16;
+    if (node == null || node == older) {
+      return 0;
+    }
+    if (shift == 0) {
+      return arrayHeader + WIDTH;
+    }
+    Object[] children = (Object[]) node;
+    Object[] olderChildren = (Object[]) older;
+    long bytes = arrayHeader + 4L * WIDTH;
+    // EFFECT: adds on the memory of every child that is not shared
+    for (int child = 0; child < WIDTH; child++) {
+      bytes += ByteVector.bytesNotShared(children[child],
+              olderChildren == null ? null : olderChildren[child], shift - BITS);
+    }
+    return bytes;
+  }
+
+  /* Fields
+   * this.size - int
+   * this.shift - int
+   * this.root - Object
+   * Methods
+   * this.build(byte[] bytes, int start, int shift) - Object
+   * this.get(int idx) - byte
+   * this.set(int idx, byte value) - ByteVector
+   * this.setIn(Object node, int shift, int idx, byte value) - Object
+   * this.swap(int idx1, int idx2) - ByteVector
+   * this.swapIn(Object node, int shift, int idx1, int idx2) - Object
+   * this.differences(ByteVector first, ByteVector firstOther, ByteVector second,
+   *                  ByteVector secondOther) - int[]
+   * this.differences(Object node, Object other, Object second, Object secondOther, int shift,
+   *                  int start, int[] indices, int count) - int
+   * this.toArray() - byte[]
+   * this.copyInto(Object node, int shift, byte[] bytes, int start) - void
+   * this.bytesNotSharedWith(ByteVector older) - long
+   * this.bytesNotShared(Object node, Object older, int shift) - long
+   * Methods on Fields
+   */
+}
+
+// Computes Zobrist hashes of boards: every (cell, ground code) and (cell, content code) pair gets
+// its own random 64 bit key, and a board's hash is the xor of the keys of everything on it. So
+// changing one cell only takes xoring out its old key and xoring in its new one
+class Zobrist {
+  static final long SEED = 0x2545F4914F6CDD1DL;
+  static final int GROUND = 0; // the plane of ground codes
+  static final int CONTENT = 1; // the plane of content codes
+
+  // returns the key for the given code on the given plane at the given index. Blank content and
+  // Normal ground have the key 0, so they never have to be hashed
+  static long key(int plane, int idx, byte code) {
+    if (code == 0) {
+      return 0;
+    }
+    // the splitmix64 finalizer, applied to the cell, plane and code packed into one number
+    long z = SEED + (((long) idx << 9 | (long) plane << 8 | (code & 0xFF)) * 0x9E3779B97F4A7C15L);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // returns the hash of a board with the given grounds and contents
+  static long hashOf(ByteVector grounds, ByteVector contents) {
+    long hash = 0;
+    // EFFECT: xors in the keys of the ground and content of every cell
+    for (int idx = 0; idx < grounds.size; idx++) {
+      hash ^= Zobrist.key(GROUND, idx, grounds.get(idx)) ^ Zobrist.key(CONTENT, idx,
+              contents.get(idx));
+    }
+    return hash;
+  }
+}
+
+// Represents a fixed-size table from 64 bit position hashes to int values, for caching what has
+// already been worked out about a position. The table never grows: every hash maps to a bucket of
+// two slots, the first kept for the entry searched to the greatest depth and the second for the
+// entry stored most recently, so a full table drops the least useful entries first
+class TranspositionTable {
+  static final int MISSING = Integer.MIN_VALUE; // what a probe returns when the hash is not here
+
+  int mask; // the number of buckets, minus one
+  long[] keys; // the hash stored in each slot
+  int[] values; // the value stored in each slot
+  byte[] depths; // one more than the depth stored in each slot, or 0 if the slot is empty
+  long probes; // the number of probes made
+  long hits; // the number of probes that found their hash
+
+  // configures an empty table with 2 to the given power buckets
+  TranspositionTable(int bucketBits) {
+    if (bucketBits < 1 || bucketBits > 28) {
+      throw new IllegalArgumentException("A transposition table must have between 2^1 and 2^28 "
+              + "buckets, given 2^" + bucketBits);
+    }
+    this.mask = (1 << bucketBits) - 1;
+    this.keys = new long[2 << bucketBits];
+    this.values = new int[2 << bucketBits];
+    this.depths = new byte[2 << bucketBits];
+    this.probes = 0;
+    this.hits = 0;
+  }
+
+  // returns the first slot of the bucket the given hash maps to
+  int bucket(long hash) {
+    return ((int) (hash ^ (hash >>> 32)) & this.mask) << 1;
+  }
+
+  // returns the value stored for the given hash, or MISSING if there is none
+  int probe(long hash) {
+    this.probes++;
+    int slot = this.bucket(hash);
+    if (this.depths[slot] != 0 && this.keys[slot] == hash) {
+      this.hits++;
+      return this.values[slot];
+    }
+    if (this.depths[slot + 1] != 0 && this.keys[slot + 1] == hash) {
+      this.hits++;
+      return this.values[slot + 1];
+    }
+    return MISSING;
+  }
+
+  // EFFECT: stores the given value for the given hash, which was searched to the given depth
+  // (clamped to between 0 and 126). An entry for the same hash is overwritten. Otherwise the new
+  // entry takes the first slot if it is searched at least as deep as what is there, which moves
+  // down to the second slot, and takes the second slot if not
+  void store(long hash, int value, int depth) {
+    int slot = this.bucket(hash);
+    byte stored = (byte) (Math.max(0, Math.min(126, depth)) + 1);
+    if (this.depths[slot + 1] != 0 && this.keys[slot + 1] == hash) {
+      slot++;
+    } else if (this.depths[slot] == 0 || this.keys[slot] != hash) {
+      if (stored >= this.depths[slot]) {
+        this.keys[slot + 1] = this.keys[slot];
+        this.values[slot + 1] = this.values[slot];
+        this.depths[slot + 1] = this.depths[slot];
+      } else {
+        slot++;
+      }
+    }
+    this.keys[slot] = hash;
+    this.values[slot] = value;
+    this.depths[slot] = stored;
+  }
+
+  // EFFECT: empties this table
+  void clear() {
+    Arrays.fill(this.depths, (byte) 0);
+  }
+
+  /* Fields
+   * this.mask - int
+   * this.keys - long[]
+   * this.values - int[]
+   * this.depths - byte[]
+   * this.probes - long
+   * this.hits - long
+   * Methods
+   * this.bucket(long hash) - int
+   * this.probe(long hash) - int
+   * this.store(long hash, int value, int depth) - void
+   * this.clear() - void
+   * Methods on Fields
+   */
+}
+
+// --------------- PARSING -----------------------
+
+// Reads a level's ground and content descriptions in one pass over their characters, looking every
+// character up in a table of board codes, and finding the player and counting the unsatisfied
+// Targets along the way. Bad characters and rows of different lengths are reported with the row
+// and column they are at, counted from 0 like a Posn
+class LevelParser {
+  // the characters of every ground and content, each at the index of its board code
+  static final String GROUND_CHARS = "_IHRGBY";
+  static final String CONTENT_CHARS = "_WB^>v<rgby";
+  // the board code of every ASCII character, or -1 if it is not a ground or content
+  static final byte[] GROUND_CODES = LevelParser.table(GROUND_CHARS);
+  static final byte[] CONTENT_CODES = LevelParser.table(CONTENT_CHARS);
+
+  int width;
+  int height;
+  byte[] grounds; // the ground code of every cell, row by row
+  byte[] contents; // the content code of every cell, row by row
+  int player; // the index of the first player on the board
+  int unsatisfied; // the number of Targets without their trophy
+
+  // parses the given ground and content descriptions, which have one character per cell and a
+  // newline after every row but the last
+  LevelParser(String groundStr, String contentStr) {
+    if (groundStr.length() != contentStr.length()) {
+      throw new IllegalArgumentException("Invalid Ground/Content descriptions: "
+              + "Given ground and content strings cannot be of different sizes");
+    }
+    int length = groundStr.length();
+    byte[] groundCodes = new byte[length];
+    byte[] contentCodes = new byte[length];
+    int cells = 0;
+    int row = 0;
+    int col = 0;
+    this.width = -1;
+    this.player = -1;
+    this.unsatisfied = 0;
+
+    // EFFECT: looks up every character, ending a row at every newline
+    for (int charIdx = 0; charIdx < length; charIdx++) {
+      char groundChar = groundStr.charAt(charIdx);
+      char contentChar = contentStr.charAt(charIdx);
+      if (groundChar == '\n' || contentChar == '\n') {
+        if (groundChar != contentChar) {
+          throw this.error("the ground and content rows end at different places", row, col);
+        }
+        this.endRow(row, col);
+        row++;
+        col = 0;
+        continue;
+      }
+
+      byte ground = LevelParser.code(GROUND_CODES, groundChar);
+      if (ground < 0) {
+        throw this.error("invalid ground cell description '" + groundChar + "'", row, col);
+      }
+      byte content = LevelParser.code(CONTENT_CODES, contentChar);
+      if (content < 0) {
+        throw this.error("invalid content cell description '" + contentChar + "'", row, col);
+      }
+      groundCodes[cells] = ground;
+      contentCodes[cells] = content;
+      if (this.player < 0 && BoardCodes.isPlayer(content)) {
+        this.player = cells;
+      }
+      this.unsatisfied += BoardCodes.unsatisfied(ground, content);
+      cells++;
+      col++;
+    }
+    this.endRow(row, col);
+
+    if (this.player < 0) {
+      throw new IllegalArgumentException("No player found in: " + contentStr);
+    }
+    this.height = row + 1;
+    this.grounds = Arrays.copyOf(groundCodes, cells);
+    this.contents = Arrays.copyOf(contentCodes, cells);
+  }
+
+  // EFFECT: ends the given row, which has the given number of cells, checking that it is as long
+  // as the rows before it
+  void endRow(int row, int cells) {
+    if (this.width < 0) {
+      this.width = cells;
+    } else if (cells != this.width) {
+      throw this.error("every row of the board must have the same length, but it has " + cells
+              + " cells instead of " + this.width, row, cells);
+    }
+  }
+
+  // returns the error for the given problem at the given row and column
+  IllegalArgumentException error(String problem, int row, int col) {
+    return new IllegalArgumentException("Invalid Ground/Content descriptions: " + problem
+            + " at row " + row + ", column " + col);
+  }
+
+  // returns the board code of the given character in the given table, or -1 if it has none
+  static byte code(byte[] table, char character) {
+    return character < table.length ? table[character] : -1;
+  }
+
+  // returns a table of the board code of every ASCII character, where the code of a character in
+  // the given string is its index in it, and every other character's code is -1
+  static byte[] table(String chars) {
+    byte[] table = new byte[128];
+    Arrays.fill(table, (byte) -1);
+    // EFFECT: stores the code of every character in the string
+    for (int code = 0; code < chars.length(); code++) {
+      table[chars.charAt(code)] = (byte) code;
+    }
+    return table;
+  }
+
+  /* Fields
+   * this.width - int
+   * this.height - int
+   * this.grounds - byte[]
+   * this.contents - byte[]
+   * this.player - int
+   * this.unsatisfied - int
+   * Methods
+   * this.endRow(int row, int cells) - void
+   * this.error(String problem, int row, int col) - IllegalArgumentException
+   * this.code(byte[] table, char character) - byte
+   * this.table(String chars) - byte[]
+   * Methods on Fields
+   */
+}
+
+// --------------- LEVEL -----------------------
+
+// Represents a Level in Sokoban
+class Level {
+  // the board is represented with (0,0) being the top left of the game and (width - 1,
+  // height - 1) being the bottom right. The board is stored with a ring of walls on Normal ground
+  // around it, which is never drawn or saved, so every cell on the board has a cell on each side
+  // of it and nothing that moves one step at a time ever has to check for the edge. Each stored
+  // row is stride() = width + 2 cells long, and the cell at (col, row) is stored at index
+  // (row + 1) * stride() + col + 1 of both the grounds and the contents arrays.
+
+  int width; // the number of columns in the board
+  int height; // the number of rows in the board
+  ByteVector grounds; // the ground code of every cell in the board (see BoardCodes)
+  ByteVector contents; // the content code of every cell in the board (see BoardCodes)
+  int[] holes; // the index of every cell that started out as a Hole
+  // for each direction and cell, where something sliding from that cell in that direction would
+  // stop if nothing but the board's walls and edges were in the way (see Utils.slideStops)
+  int[][] slideStops;
+  long hash; // the Zobrist hash of the board, kept up to date as cells change
+  int unsatisfied; // the number of Targets without their trophy, kept up to date as cells change
+  Posn playerPos; // the player position
+  int steps; // number of steps a player has made
+
+  // configures this level given its board's dimensions and the ground and content codes of its
+  // cells, row by row, putting the ring of walls around them
+  Level(int width, int height, byte[] grounds, byte[] contents, Posn playerPos, int steps) {
+    byte[] paddedGrounds = Level.pad(width, height, grounds, BoardCodes.NORMAL);
+    byte[] paddedContents = Level.pad(width, height, contents, BoardCodes.WALL);
+    this.width = width;
+    this.height = height;
+    this.grounds = new ByteVector(paddedGrounds);
+    this.contents = new ByteVector(paddedContents);
+    this.holes = Utils.holeIndices(paddedGrounds);
+    this.slideStops = Utils.slideStops(width + 2, paddedGrounds, paddedContents);
+    this.hash = Zobrist.hashOf(this.grounds, this.contents);
+    this.unsatisfied = Utils.countUnsatisfied(grounds, contents);
+    this.playerPos = playerPos;
+    this.steps = steps;
+  }
+
+  // configures this level given its board's dimensions, packed ground and content codes with the
+  // ring around them, the slide stops of the board, the Zobrist hash of those codes, and how many
+  // Targets do not have their trophy
+  Level(int width, int height, ByteVector grounds, ByteVector contents, int[] holes,
+        int[][] slideStops, long hash, int unsatisfied, Posn playerPos, int steps) {
+    this.width = width;
+    this.height = height;
+    this.grounds = grounds;
+    this.contents = contents;
+    this.holes = holes;
+    this.slideStops = slideStops;
+    this.hash = hash;
+    this.unsatisfied = unsatisfied;
+    this.playerPos = playerPos;
+    this.steps = steps;
+  }
+
+  // configures this level given a board: list of lists of cells, and the player position
+  Level(ArrayList<ArrayList<Cell>> board, Posn playerPos, int steps) {
+    this(Utils.gridWidth(board), board.size(), Utils.packGrounds(board),
+            Utils.packContents(board), playerPos, steps);
+  }
+
+  // configures this level given the ground and content level description strings
+  public Level(String groundStr, String contentsStr) {
+    this(new LevelParser(groundStr, contentsStr));
+  }
+
+  // configures this level given the parsed ground and content level description strings
+  Level(LevelParser parsed) {
+    this(parsed.width, parsed.height, parsed.grounds, parsed.contents,
+            Posn.of(parsed.player % parsed.width, parsed.player / parsed.width), 0);
+  }
+
+  // returns the given codes of a board of the given size, row by row, with a ring of the given
+  // code around them
+  static byte[] pad(int width, int height, byte[] codes, byte ring) {
+    byte[] padded = new byte[(width + 2) * (height + 2)];
+    Arrays.fill(padded, ring);
+    // EFFECT: copies every row into its place inside the ring
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(codes, row * width, padded, (row + 1) * (width + 2) + 1, width);
+    }
+    return padded;
+  }
+
+  // returns the codes of every cell on this level's board in the given codes, row by row, without
+  // the ring around them
+  byte[] cellCodes(ByteVector codes) {
+    byte[] cells = new byte[this.width * this.height];
+    // EFFECT: copies every cell of every row out of the ring
+    for (int row = 0; row < this.height; row++) {
+      int first = (row + 1) * this.stride() + 1;
+      for (int col = 0; col < this.width; col++) {
+        cells[row * this.width + col] = codes.get(first + col);
+      }
+    }
+    return cells;
+  }
+
+  // returns the number of cells in each stored row of this level's board, counting the ring
+  int stride() {
+    return this.width + 2;
+  }
+
+  // returns a new level that shares this level's board, with the given player position and
+  // steps. Changing the new level's board leaves this level's board as it was
+  Level derive(Posn playerPos, int steps) {
+    return new Level(this.width, this.height, this.grounds, this.contents, this.holes,
+            this.slideStops, this.hash, this.unsatisfied, playerPos, steps);
+  }
+
+  // determines if the given position is on this level's board
+  boolean onBoard(Posn posn) {
+    return posn.col >= 0 && posn.col < this.width && posn.row >= 0 && posn.row < this.height;
+  }
+
+  // returns the index of the given position in this level's ground and content codes
+  int indexOf(Posn posn) {
+    return (posn.row + 1) * this.stride() + posn.col + 1;
+  }
+
+  // returns the position of the given index in this level's ground and content codes
+  Posn posnOf(int idx) {
+    return Posn.of(idx % this.stride() - 1, idx / this.stride() - 1);
+  }
+
+  // returns the index of the cell that is the given number of columns and rows away from the
+  // given index of a cell on the board. One step off the edge of the board, that is a wall of the
+  // ring around it
+  int neighbor(int idx, int dCol, int dRow) {
+    return idx + dCol + dRow * this.stride();
+  }
+
+  // determines if the cell at the given index is a wall that can never go away, which is every
+  // wall but those on Holes, since they fall in on the first move. The ring is such walls
+  boolean isStaticWall(int idx) {
+    return this.contents.get(idx) == BoardCodes.WALL
+            && !BoardCodes.falls(this.grounds.get(idx), BoardCodes.WALL);
+  }
+
+  // returns the index of the cell one step in the given direction from the given index of a cell
+  // on the board. Off the edge of the board, that is a wall of the ring around it
+  int neighbor(int idx, Direction direction) {
+    return idx + direction.delta(this.stride());
+  }
+
+  // returns the cell at the given position in this sokoban board, or in the ring of walls one step
+  // off of it
+  Cell findCell(Posn posn) {
+    return this.cellAt(this.indexOf(posn));
+    /* Fields of Parameters
+     * posn.col - int
+     * posn.row - int
+     * Methods on Parameter
+     * posn.movePosn(String direction) - Posn
+     * posn.withinBounds(Posn topLeft, Posn bottomRight) - boolean
+     */
+  }
+
+  // returns the cell at the given index in this sokoban board
+  Cell cellAt(int idx) {
+    return new Cell(BoardCodes.toGround(this.grounds.get(idx)),
+            BoardCodes.toContent(this.contents.get(idx)));
+  }
+
+  // Converts this level's board into a WorldImage to be shown
+  WorldImage draw() {
+    WorldImage boardImage = new EmptyImage();
+    // EFFECT: Draws every row in this board and puts each row below one another
+    for (int row = 0; row < this.height; row++) {
+      WorldImage rowImage = new EmptyImage();
+      // EFFECT: Draws every cell in the given row and places each drawing beside one another
+      for (int col = 0; col < this.width; col++) {
+        int idx = (row + 1) * this.stride() + col + 1;
+        rowImage = new BesideImage(rowImage,
+                Sprites.cell(this.grounds.get(idx), this.contents.get(idx)));
+      }
+      boardImage = new AboveImage(boardImage, rowImage);
+    }
+
+    return boardImage;
+  }
+
+  // draws this level, putting its cells and rows together in balanced trees if balanced is set,
+  // or one after another as in draw() otherwise
+  WorldImage draw(boolean balanced) {
+    if (!balanced) {
+      return this.draw();
+    }
+    WorldImage[] rowImages = new WorldImage[this.height];
+    // EFFECT: draws every row in this board as a balanced tree of its cells
+    for (int row = 0; row < this.height; row++) {
+      int first = (row + 1) * this.stride() + 1;
+      rowImages[row] = this.drawCells(first, first + this.width);
+    }
+    return Utils.aboveAll(rowImages, 0, this.height);
+  }
+
+  // draws the cells of this level from the start index up to but not including the end index
+  // beside each other, split in half at every level so the tree is only log n deep
+  WorldImage drawCells(int start, int end) {
+    if (end - start == 0) {
+      return new EmptyImage();
+    } else if (end - start == 1) {
+      return Sprites.cell(this.grounds.get(start), this.contents.get(start));
+    } else {
+      int middle = (start + end) >>> 1;
+      return new BesideImage(this.drawCells(start, middle), this.drawCells(middle, end));
+    }
+  }
+
+  // draws this level's stats
+  WorldImage drawStats() {
+
+    WorldImage scoreImage = new TextImage("Steps: " + this.steps, Color.BLACK);
+    WorldImage playerPosImage = new TextImage("Player Position: " + this.playerPos.toString(),
+            Color.BLACK);
+    IContent player = this.findCell(this.playerPos).content;
+
+    // TODO (for debugging) delete this later or test if kept
+    Posn moveUp = this.playerPos.movePosn(Direction.UP);
+    Posn pushUp = moveUp.movePosn(Direction.UP);
+    Posn moveDown = this.playerPos.movePosn(Direction.DOWN);
+    Posn pushDown = moveDown.movePosn(Direction.DOWN);
+    Posn moveLeft = this.playerPos.movePosn(Direction.LEFT);
+    Posn pushLeft = moveLeft.movePosn(Direction.LEFT);
+    Posn moveRight = this.playerPos.movePosn(Direction.RIGHT);
+    Posn pushRight = moveRight.movePosn(Direction.RIGHT);
+
+    IContent up = this.findCell(moveUp).content;
+    IContent down = this.findCell(moveDown).content;
+    IContent left = this.findCell(moveLeft).content;
+    IContent right = this.findCell(moveRight).content;
+
+    WorldImage moveTo = new TextImage(
+            "move up? " + player.canMoveTo(moveUp, this)
+                    + "\n move down? " + player.canMoveTo(moveDown, this)
+                    + "\n move left? " + player.canMoveTo(moveLeft, this)
+                    + "\n move right? " + player.canMoveTo(moveRight, this), Color.red);
+    WorldImage pushTo = new TextImage(
             "push up? " + up.canMoveTo(pushUp, this)
                     + "\n push down? " + down.canMoveTo(pushDown, this)
                     + "\n push left? " + left.canMoveTo(pushLeft, this)
                     + "\n push right? " + right.canMoveTo(pushRight, this), Color.red);
-    WorldImage prev = new TextImage("previous position: " + prevLevel.playerPos.toString(), Color.BLUE);
 
-    WorldImage above = new AboveAlignImage(
-            AlignModeX.LEFT,
-            scoreImage,
-            playerPosImage,
-            moveTo,
-            pushTo,
-            prev
-    );
-    return above.movePinhole(-above.getWidth() / 2, -above.getHeight() / 2);
+    WorldImage above = new AboveAlignImage(
+            AlignModeX.LEFT,
+            scoreImage,
+            playerPosImage,
+            moveTo,
+            pushTo
+    );
+    return above.movePinhole(-above.getWidth() / 2, -above.getHeight() / 2);
+  }
+
+  // Determines if this level is won. A level is won when all the Targets have
+  // their corresponding trophy on them.
+  boolean levelWon() {
+    return this.unsatisfied == 0;
+  }
+
+  // Determines if this level has been lost. The player is only ever where playerPos says, so the
+  // level is lost once it is not there any more
+  boolean levelLost() {
+    return !this.onBoard(this.playerPos)
+            || !BoardCodes.isPlayer(this.contents.get(this.indexOf(this.playerPos)));
+  }
+
+  // creates a new level with the player and pushable moved in a given direction if possible
+  Level movePlayer(String direction) {
+    return this.movePlayer(Direction.of(direction));
+  }
+
+  // creates a new level with the player and pushable moved in a given direction if possible
+  Level movePlayer(Direction direction) {
+    int playerIdx = this.indexOf(this.playerPos);
+    int moveToIdx = this.neighbor(playerIdx, direction); // where player is moving to
+    int pushToIdx = this.neighbor(moveToIdx, direction); // where pushable is moving to
+
+    boolean canPush = this.canMoveTo(moveToIdx, pushToIdx); // can push implies can move
+    if (!canPush && !this.canMoveTo(playerIdx, moveToIdx)) {
+      return this; // cannot push, cannot move
+    }
+
+    Level moved = this.derive(this.playerPos, this.steps + 1);
+    if (canPush) {
+      moved.swap(pushToIdx, moveToIdx);
+    }
+    moved.swap(moveToIdx, playerIdx);
+    moved.slideFrom(pushToIdx, direction);
+    moved.playerPos = moved.posnOf(moved.slidePlayerFrom(moveToIdx, direction));
+    return moved;
+  }
+
+  // creates a new level with the player walked to the given position by the given moves, which
+  // must be a walk a Pathfinder found. The level it makes is the same as making each of the moves
+  // with movePlayer and updateLevel, as a game does with keys. A walk moves nothing but the player,
+  // so it is made in one go, unless something on the board is still to fall into a Hole; then the
+  // first update would change the board under the later moves, so they are made one at a time
+  Level walk(Posn to, Direction[] moves) {
+    if (!this.settled()) {
+      Level walked = this;
+      // EFFECT: makes each move of the walk, updating the level after each one
+      for (Direction move : moves) {
+        walked = walked.movePlayer(move).updateLevel();
+      }
+      return walked;
+    }
+    Level walked = this.derive(to, this.steps + moves.length);
+    walked.swap(this.indexOf(this.playerPos), this.indexOf(to));
+    return walked.updateLevel();
+  }
+
+  // determines if nothing on this level's board is on a Hole that it would fall into, so that
+  // updateLevel would not change it
+  boolean settled() {
+    // EFFECT: looks for something that would fall into each of the holes
+    for (int idx : this.holes) {
+      if (BoardCodes.falls(this.grounds.get(idx), this.contents.get(idx))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // determines if the content at the first index can move to the second index. Only a content
+  // that is not fixed has its destination looked at, so the first index can be a wall of the ring
+  // and the second one step past it
+  boolean canMoveTo(int fromIdx, int toIdx) {
+    return !BoardCodes.isFixed(this.contents.get(fromIdx))
+            && BoardCodes.isVacant(this.contents.get(toIdx));
+  }
+
+  // EFFECT: sets the ground and content of each of the given cells to the ground and content at
+  // the same index of the given codes
+  void setCells(int[] cells, byte[] groundCodes, byte[] contentCodes) {
+    // EFFECT: sets the ground and content of each cell
+    for (int cell = 0; cell < cells.length; cell++) {
+      this.setGround(cells[cell], groundCodes[cell]);
+      this.setContent(cells[cell], contentCodes[cell]);
+    }
+  }
+
+  // EFFECT: sets the ground at the given index of this level's board to the given code, updating
+  // the hash and the count of unsatisfied Targets
+  void setGround(int idx, byte code) {
+    byte ground = this.grounds.get(idx);
+    byte content = this.contents.get(idx);
+    this.hash ^= Zobrist.key(Zobrist.GROUND, idx, ground) ^ Zobrist.key(Zobrist.GROUND, idx, code);
+    this.unsatisfied += BoardCodes.unsatisfied(code, content)
+            - BoardCodes.unsatisfied(ground, content);
+    this.grounds = this.grounds.set(idx, code);
+  }
+
+  // EFFECT: sets the content at the given index of this level's board to the given code,
+  // updating the hash and the count of unsatisfied Targets
+  void setContent(int idx, byte code) {
+    byte ground = this.grounds.get(idx);
+    byte content = this.contents.get(idx);
+    this.hash ^= Zobrist.key(Zobrist.CONTENT, idx, content)
+            ^ Zobrist.key(Zobrist.CONTENT, idx, code);
+    this.unsatisfied += BoardCodes.unsatisfied(ground, code)
+            - BoardCodes.unsatisfied(ground, content);
+    this.contents = this.contents.set(idx, code);
+  }
+
+  // EFFECT: swaps the contents at the two given indices of this level's board, sharing every
+  // other chunk of the board with the contents it had before, and updating the hash and the count
+  // of unsatisfied Targets
+  void swap(int idx1, int idx2) {
+    byte content1 = this.contents.get(idx1);
+    byte content2 = this.contents.get(idx2);
+    byte ground1 = this.grounds.get(idx1);
+    byte ground2 = this.grounds.get(idx2);
+    this.hash ^= Zobrist.key(Zobrist.CONTENT, idx1, content1)
+            ^ Zobrist.key(Zobrist.CONTENT, idx1, content2)
+            ^ Zobrist.key(Zobrist.CONTENT, idx2, content2)
+            ^ Zobrist.key(Zobrist.CONTENT, idx2, content1);
+    this.unsatisfied += BoardCodes.unsatisfied(ground1, content2)
+            + BoardCodes.unsatisfied(ground2, content1)
+            - BoardCodes.unsatisfied(ground1, content1) - BoardCodes.unsatisfied(ground2, content2);
+    this.contents = this.contents.swap(idx1, idx2);
+  }
+
+  // EFFECT: slides the content at the given index across the ice in this level's board in the
+  // given direction. The cell it stops at is found in one pass along the ice, using the slide
+  // stops to know how far the ice goes, and then it is moved there in one swap
+  void slideFrom(int idx, Direction direction) {
+    if (!BoardCodes.slides(this.grounds.get(idx), this.contents.get(idx))) {
+      return;
+    }
+    int stop = this.slideStops[direction.ordinal()][idx];
+    int delta = direction.delta(this.stride());
+    int end = idx;
+    // EFFECT: moves the end one step further until it gets to the stop or runs into something
+    while (end != stop && BoardCodes.isVacant(this.contents.get(end + delta))) {
+      end += delta;
+    }
+    this.swap(idx, end);
+  }
+
+  // EFFECT: slides the player at the given index across the ice in this level's board in the
+  // given direction, pushing anything in its way one step ahead of it if possible. Returns the
+  // index the player ends up at. Like slideFrom, the cells the player and whatever it pushed end
+  // up in are found in one pass, and then each of them is moved there in one swap
+  int slidePlayerFrom(int playerIdx, Direction direction) {
+    if (!BoardCodes.slides(this.grounds.get(playerIdx), this.contents.get(playerIdx))) {
+      return playerIdx;
+    }
+    int stop = this.slideStops[direction.ordinal()][playerIdx];
+    int delta = direction.delta(this.stride());
+    int end = playerIdx;
+    int pushed = -1; // where the content the player is pushing started, or -1 if there is none
+
+    // EFFECT: moves the player one step further until it gets to the stop, or runs into something
+    //         it cannot push. Once it pushes something, that is always the next thing it runs into
+    while (end != stop) {
+      int slideToIdx = end + delta;
+      int pushToIdx = slideToIdx + delta;
+      boolean canPush = BoardCodes.isVacant(this.contents.get(pushToIdx))
+              && (pushed != -1 || !BoardCodes.isFixed(this.contents.get(slideToIdx)));
+      if (canPush && pushed == -1) {
+        pushed = slideToIdx;
+      } else if (!canPush
+              && (pushed != -1 || !BoardCodes.isVacant(this.contents.get(slideToIdx)))) {
+        break;
+      }
+      end = slideToIdx;
+    }
+
+    if (pushed != -1) {
+      this.swap(pushed, end + delta);
+    }
+    this.swap(playerIdx, end);
+    return end;
+  }
+
+  // creates a new Level with the contents at the two given positions switched
+  Level switchContents(Posn pos1, Posn pos2, Posn playerPos, int steps) {
+    if (!this.onBoard(pos1) || !this.onBoard(pos2)) {
+      throw new RuntimeException("Tried to access a cell that is out of bounds");
+    }
+    Level switched = this.derive(playerPos, steps);
+    switched.swap(this.indexOf(pos1), this.indexOf(pos2));
+    return switched;
+
+    /*
+     * pos1.movePosn(String direction) - Posn
+     * pos1.withinBounds(Posn topLeft, Posn bottomRight) - boolean
+     * pos1.samePosn(Posn pos) - boolean
+     * pos2.movePosn(String direction) - Posn
+     * pos2.withinBounds(Posn topLeft, Posn bottomRight) - boolean
+     * pos2.samePosn(Posn pos) - boolean
+     */
+  }
+
+  // creates a new level with all of its cells updated
+  Level updateLevel() {
+    Level updated = this.derive(this.playerPos, this.steps);
+
+    // EFFECT: empties out and fills in every hole that has something on it, copying only the
+    //         chunks of the board that those holes are in
+    for (int idx : this.holes) {
+      if (BoardCodes.falls(this.grounds.get(idx), this.contents.get(idx))) {
+        updated.setGround(idx, BoardCodes.NORMAL);
+        updated.setContent(idx, BoardCodes.BLANK);
+      }
+    }
+
+    return updated;
+  }
+
+  // updates this level's score to the given score
+  Level updateScore(int score) {
+    return this.derive(this.playerPos, score);
+  }
+
+  // slides a moveable content at the given pos in the given direction if possible
+  Level slideContent(Posn pos, String direction) {
+    Level slid = this.derive(this.playerPos, this.steps);
+    if (this.onBoard(pos)) {
+      slid.slideFrom(this.indexOf(pos), Direction.of(direction));
+    }
+    return slid;
+  }
+
+  // slides a player content at the given pos in the given direction if possible
+  Level slidePlayer(Posn playerPos, String direction) {
+    Level slid = this.derive(this.playerPos, this.steps);
+    slid.playerPos = slid.posnOf(slid.slidePlayerFrom(this.indexOf(playerPos),
+            Direction.of(direction)));
+    return slid;
+  }
+
+  /* Fields
+   * this.width - int
+   * this.height - int
+   * this.grounds - ByteVector
+   * this.contents - ByteVector
+   * this.holes - int[]
+   * this.slideStops - int[][]
+   * this.hash - long
+   * this.unsatisfied - int
+   * this.playerPos - Posn
+   * this.steps - int
+   *
+   * Methods
+   * this.pad(int width, int height, byte[] codes, byte ring) - byte[]
+   * this.cellCodes(ByteVector codes) - byte[]
+   * this.stride() - int
+   * this.derive(Posn playerPos, int steps) - Level
+   * this.onBoard(Posn posn) - boolean
+   * this.indexOf(Posn posn) - int
+   * this.posnOf(int idx) - Posn
+   * this.neighbor(int idx, int dCol, int dRow) - int
+   * this.neighbor(int idx, Direction direction) - int
+   * this.isStaticWall(int idx) - boolean
+   * this.findCell(Posn posn) - Cell
+   * this.cellAt(int idx) - Cell
+   * this.draw() - WorldImage
+   * this.draw(boolean balanced) - WorldImage
+   * this.drawCells(int start, int end) - WorldImage
+   * this.levelWon() - boolean
+   * this.levelLost() - boolean
+   * this.movePlayer(String direction) - Level
+   * this.movePlayer(Direction direction) - Level
+   * this.walk(Posn to, Direction[] moves) - Level
+   * this.settled() - boolean
+   * this.switchContents(Posn pos1, Posn pos2, Posn playerPos, int steps) - Level
+   * this.updateLevel() - Level
+   * this.updateScore() - Level
+   * this.canMoveTo(int fromIdx, int toIdx) - boolean
+   * this.setCells(int[] cells, byte[] groundCodes, byte[] contentCodes) - void
+   * this.setGround(int idx, byte code) - void
+   * this.setContent(int idx, byte code) - void
+   * this.swap(int idx1, int idx2) - void
+   * this.slideFrom(int idx, Direction direction) - void
+   * this.slidePlayerFrom(int playerIdx, Direction direction) - int
+   * this.slideContent(Posn pos, String direction) - Level
+   * this.slidePlayer(Posn playerPos, String direction) - Level
+   *
+   * Methods on Fields
+   * this.playerPos.movePosn(String direction) - Posn
+   * this.playerPos.withinBounds(Posn topLeft, Posn bottomRight) - boolean
+   * this.playerPos.samePosn(Posn pos) - boolean
+   *
+   */
+}
+
+// --------------- LEVEL PACKS -----------------------
+
+// A file of many levels in the XSB notation most Sokoban collections use, read straight from the
+// file as each level is asked for, so a pack of thousands of levels is never held in memory.
+// Opening the pack only finds where each level starts and ends, so level N is read without
+// reading any level before it.
+//
+// A level is a run of board rows, and anything else, like a title or a ';' comment, separates
+// levels. Rows are written in standard XSB, where '#' is a wall, ' ', '-' and '_' are floor, '$' is
+// a trophy, '.' is a target, '*' is a trophy on a target, '@' is the player and '+' is the player
+// on a target, and XSB's boxes and goals are all given the color DEFAULT_COLOR. A row can instead
+// be written as its grounds and contents in this game's own notation, split by a '|', as in
+// "_IH|>B_", for ice, holes, boxes and trophies of every color. Rows shorter than the longest row
+// of their level are filled out with floor
+class LevelPack {
+  static final int DEFAULT_COLOR = 0; // the color of XSB's boxes and goals, red
+
+  MappedByteBuffer file; // the pack, mapped into memory rather than read into it
+  int[] starts; // the byte each level starts at
+  int[] lengths; // the number of bytes in each level
+  int size; // the number of levels in the pack
+
+  // opens the pack in the given file, finding where every level in it is
+  LevelPack(File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("A level pack must be smaller than 2GB, given "
+                + channel.size() + " bytes");
+      }
+      this.file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open the level pack " + file, e);
+    }
+    this.starts = new int[16];
+    this.lengths = new int[16];
+    this.size = 0;
+    this.index();
+  }
+
+  // EFFECT: finds the start and length of every level in the file, one line at a time, without
+  // reading any of the levels
+  void index() {
+    int limit = this.file.limit();
+    int levelStart = -1; // the start of the level being read, or -1 between levels
+    int levelEnd = -1;
+    int lineStart = 0;
+    // EFFECT: sorts every line into a row of a level or something between levels
+    while (lineStart < limit) {
+      int lineEnd = lineStart;
+      while (lineEnd < limit && this.file.get(lineEnd) != '\n') {
+        lineEnd++;
+      }
+      if (this.isRow(lineStart, lineEnd)) {
+        levelStart = levelStart < 0 ? lineStart : levelStart;
+        levelEnd = lineEnd;
+      } else if (levelStart >= 0) {
+        this.addLevel(levelStart, levelEnd);
+        levelStart = -1;
+      }
+      lineStart = lineEnd + 1;
+    }
+    if (levelStart >= 0) {
+      this.addLevel(levelStart, levelEnd);
+    }
+  }
+
+  // determines if the line from the given start up to but not including the given end is a row
+  // of a level: either a split row, or an XSB row, whose first cell that is not floor is a wall.
+  // A row with a bad character in it is still a row, so that reading its level reports it
+  boolean isRow(int start, int end) {
+    int first = -1; // the first character that is not floor
+    // EFFECT: looks for a split, and for the first character that is not floor
+    for (int idx = start; idx < end; idx++) {
+      char character = (char) this.file.get(idx);
+      if (character == '|') {
+        return true;
+      }
+      if (first < 0 && character != ' ' && character != '-' && character != '_') {
+        first = character;
+      }
+    }
+    return first == '#';
+  }
+
+  // EFFECT: adds a level from the given start up to but not including the given end to the index
+  void addLevel(int start, int end) {
+    if (this.size == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, this.size * 2);
+      this.lengths = Arrays.copyOf(this.lengths, this.size * 2);
+    }
+    this.starts[this.size] = start;
+    this.lengths[this.size] = end - start;
+    this.size++;
+  }
+
+  // returns the number of levels in this pack
+  int size() {
+    return this.size;
+  }
+
+  // returns the rows of the level with the given index in this pack, as they are in the file
+  String rows(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IllegalArgumentException("No level " + index + " in a pack of " + this.size
+              + " levels");
+    }
+    byte[] bytes = new byte[this.lengths[index]];
+    this.file.get(this.starts[index], bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  // returns the level with the given index in this pack, counted from 0
+  Level level(int index) {
+    return LevelPack.parse(this.rows(index));
+  }
+
+  // returns the level written in the given rows, one row to a line
+  static Level parse(String rows) {
+    ArrayList<String> lines = Utils.split(rows.replace("\r", ""), "\n");
+    StringBuilder groundStr = new StringBuilder();
+    StringBuilder contentStr = new StringBuilder();
+    int width = 0;
+    // EFFECT: finds the width of the widest row
+    for (String line : lines) {
+      int split = line.indexOf('|');
+      width = Math.max(width, split < 0 ? line.length() : split);
+    }
+    // EFFECT: translates every row into grounds and contents, filled out to the widest row
+    for (int row = 0; row < lines.size(); row++) {
+      String line = lines.get(row);
+      int split = line.indexOf('|');
+      if (split >= 0) {
+        groundStr.append(line, 0, split);
+        contentStr.append(line, split + 1, line.length());
+      } else {
+        // EFFECT: translates every XSB character in the row
+        for (int col = 0; col < line.length(); col++) {
+          LevelPack.translate(line.charAt(col), row, col, groundStr, contentStr);
+        }
+      }
+      // EFFECT: fills out the row with floor
+      for (int col = split < 0 ? line.length() : split; col < width; col++) {
+        groundStr.append('_');
+        contentStr.append('_');
+      }
+      if (row < lines.size() - 1) {
+        groundStr.append('\n');
+        contentStr.append('\n');
+      }
+    }
+    return new Level(groundStr.toString(), contentStr.toString());
+  }
+
+  // EFFECT: adds the ground and content of the given XSB character, at the given row and column,
+  // to the given grounds and contents
+  static void translate(char character, int row, int col, StringBuilder groundStr,
+          StringBuilder contentStr) {
+    char target = LevelParser.GROUND_CHARS.charAt(BoardCodes.target(DEFAULT_COLOR));
+    char trophy = LevelParser.CONTENT_CHARS.charAt(BoardCodes.trophy(DEFAULT_COLOR));
+    char player = LevelParser.CONTENT_CHARS.charAt(BoardCodes.player(Direction.RIGHT.ordinal()));
+    boolean onTarget = character == '.' || character == '*' || character == '+';
+    groundStr.append(onTarget ? target : '_');
+    switch (character) {
+      case '#':
+        contentStr.append('W');
+        break;
+      case '$':
+      case '*':
+        contentStr.append(trophy);
+        break;
+      case '@':
+      case '+':
+        contentStr.append(player);
+        break;
+      case ' ':
+      case '-':
+      case '_':
+      case '.':
+        contentStr.append('_');
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid XSB cell description '" + character
+                + "' at row " + row + ", column " + col);
+    }
+  }
+
+  /* Fields
+   * this.file - MappedByteBuffer
+   * this.starts - int[]
+   * this.lengths - int[]
+   * this.size - int
+   * Methods
+   * this.index() - void
+   * this.isRow(int start, int end) - boolean
+   * this.addLevel(int start, int end) - void
+   * this.size() - int
+   * this.rows(int index) - String
+   * this.level(int index) - Level
+   * this.parse(String rows) - Level
+   * this.translate(char character, int row, int col, StringBuilder groundStr,
+   *                StringBuilder contentStr) - void
+   * Methods on Fields
+   */
+}
+
+// --------------- SAVES -----------------------
+
+// A level saved with the moves that were made to reach it, which may be empty
+class SavedGame {
+  Level level;
+  Direction[] moves;
+
+  SavedGame(Level level, Direction[] moves) {
+    this.level = level;
+    this.moves = moves;
+  }
+
+  /* Fields
+   * this.level - Level
+   * this.moves - Direction[]
+   * Methods
+   * Methods on Fields
+   */
+}
+
+// Reads and writes saved games in a compact binary format:
+//   the 4 bytes "SOKO", then a version byte and a flags byte
+//   the width and height, as varints
+//   the ground codes, then the content codes, each run-length encoded row by row
+//   the player's column and row, as zigzag varints since a fallen player is off the board
+//   the steps, as a varint
+//   if the MOVES flag is set, the number of moves as a varint, then 4 moves to a byte
+// A run is one byte with its code in the top 4 bits and its length in the bottom 4 bits, or a
+// length of 0 followed by the real length as a varint for runs longer than 15
+class SaveFormat {
+  static final byte[] MAGIC = {'S', 'O', 'K', 'O'};
+  static final byte VERSION = 1;
+  static final int MOVES = 1; // the flag for a save with its moves
+  static final String EXTENSION = ".sok";
+  static final int SHORT_RUN = 15; // the longest run that fits in the byte of its code
+
+  // returns the bytes of the given saved game
+  static byte[] write(SavedGame game) {
+    Level level = game.level;
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    out.write(MAGIC, 0, MAGIC.length);
+    out.write(VERSION);
+    out.write(game.moves.length > 0 ? MOVES : 0);
+    SaveFormat.putVarint(out, level.width);
+    SaveFormat.putVarint(out, level.height);
+    SaveFormat.putRuns(out, level.cellCodes(level.grounds));
+    SaveFormat.putRuns(out, level.cellCodes(level.contents));
+    SaveFormat.putVarint(out, SaveFormat.zigzag(level.playerPos.col));
+    SaveFormat.putVarint(out, SaveFormat.zigzag(level.playerPos.row));
+    SaveFormat.putVarint(out, level.steps);
+    if (game.moves.length > 0) {
+      SaveFormat.putVarint(out, game.moves.length);
+      // EFFECT: packs every 4 moves into a byte
+      for (int move = 0; move < game.moves.length; move += 4) {
+        int packed = 0;
+        for (int slot = 0; slot < 4 && move + slot < game.moves.length; slot++) {
+          packed |= game.moves[move + slot].ordinal() << (2 * slot);
+        }
+        out.write(packed);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  // returns the saved game in the given buffer, starting at its position. EFFECT: moves the
+  // buffer's position past the saved game
+  static SavedGame read(ByteBuffer in) {
+    try {
+      // EFFECT: checks every byte of the magic
+      for (byte expected : MAGIC) {
+        if (in.get() != expected) {
+          throw new IllegalArgumentException("Not a Sokoban save");
+        }
+      }
+      byte version = in.get();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unsupported Sokoban save version " + version);
+      }
+      int flags = in.get();
+      int width = SaveFormat.getVarint(in);
+      int height = SaveFormat.getVarint(in);
+      // the board and the ring of walls around it must fit in an array
+      if (width < 0 || height < 0 || (width + 2L) * (height + 2L) > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Sokoban save has a board of " + width + " by "
+                + height + " cells, which no level can have");
+      }
+      byte[] grounds = SaveFormat.getRuns(in, width * height);
+      SaveFormat.checkCodes(grounds, BoardCodes.GROUNDS.length, "ground");
+      byte[] contents = SaveFormat.getRuns(in, width * height);
+      SaveFormat.checkCodes(contents, BoardCodes.CONTENTS.length, "content");
+      int col = SaveFormat.unzigzag(SaveFormat.getVarint(in));
+      int row = SaveFormat.unzigzag(SaveFormat.getVarint(in));
+      if (!SaveFormat.playerAt(width, height, contents, col, row)) {
+        throw new IllegalArgumentException("Sokoban save has its player at column " + col
+                + ", row " + row + ", where the board has no player");
+      }
+      int steps = SaveFormat.getVarint(in);
+      Direction[] moves = new Direction[(flags & MOVES) != 0 ? SaveFormat.getVarint(in) : 0];
+      // EFFECT: unpacks every move, 4 to a byte
+      for (int move = 0; move < moves.length; move += 4) {
+        int packed = in.get();
+        for (int slot = 0; slot < 4 && move + slot < moves.length; slot++) {
+          moves[move + slot] = Direction.ALL[(packed >> (2 * slot)) & 3];
+        }
+      }
+      Level level = new Level(width, height, grounds, contents, Posn.of(col, row), steps);
+      return new SavedGame(level, moves);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Sokoban save ends too early", e);
+    }
+  }
+
+  // returns every saved game in the given directory, in the order of their file names. Each file
+  // is mapped into memory rather than read into it
+  static ArrayList<SavedGame> readDirectory(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (files == null) {
+      throw new IllegalArgumentException("Not a directory: " + directory);
+    }
+    Arrays.sort(files);
+    ArrayList<SavedGame> games = new ArrayList<SavedGame>(files.length);
+    // EFFECT: maps and reads every save
+    for (File file : files) {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        games.add(SaveFormat.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read the save " + file, e);
+      }
+    }
+    return games;
+  }
+
+  // EFFECT: writes the given saved game to the given file
+  static void writeFile(SavedGame game, File file) {
+    try {
+      Files.write(file.toPath(), SaveFormat.write(game));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write the save " + file, e);
+    }
+  }
+
+  // EFFECT: writes the runs of equal codes in the given vector to the given stream
+  static void putRuns(ByteArrayOutputStream out, byte[] codes) {
+    int idx = 0;
+    // EFFECT: writes one run at a time
+    while (idx < codes.length) {
+      byte code = codes[idx];
+      int run = 1;
+      while (idx + run < codes.length && codes[idx + run] == code) {
+        run++;
+      }
+      if (run <= SHORT_RUN) {
+        out.write(code << 4 | run);
+      } else {
+        out.write(code << 4);
+        SaveFormat.putVarint(out, run);
+      }
+      idx += run;
+    }
+  }
+
+  // returns the given number of codes read as runs from the given buffer. The runs are all read
+  // once before room is made for the codes, so a save that ends before its board does is turned
+  // down without making room for a board as big as the save says
+  static byte[] getRuns(ByteBuffer in, int count) {
+    ByteBuffer ahead = in.duplicate();
+    // EFFECT: skips one run at a time
+    for (int idx = 0; idx < count; ) {
+      ahead.get();
+      idx += SaveFormat.getRun(ahead, count - idx);
+    }
+    byte[] codes = new byte[count];
+    int idx = 0;
+    // EFFECT: reads one run at a time
+    while (idx < count) {
+      int code = (in.get() & 0xFF) >> 4;
+      int run = SaveFormat.getRun(in, count - idx);
+      Arrays.fill(codes, idx, idx + run, (byte) code);
+      idx += run;
+    }
+    return codes;
+  }
+
+  // returns the length of the run whose code was just read from the given buffer, which must be
+  // at most the given number of codes left on the board. EFFECT: moves the buffer's position past
+  // the length, if it is not in the byte of the code
+  static int getRun(ByteBuffer in, int left) {
+    int packed = in.get(in.position() - 1);
+    int run = (packed & SHORT_RUN) != 0 ? packed & SHORT_RUN : SaveFormat.getVarint(in);
+    if (run < 1) {
+      throw new IllegalArgumentException("Sokoban save has a run of " + run + " codes");
+    }
+    if (run > left) {
+      throw new IllegalArgumentException("Sokoban save has a run past the end of the board");
+    }
+    return run;
+  }
+
+  // EFFECT: throws if any of the given codes is not one of the given number of codes of the given
+  // kind
+  static void checkCodes(byte[] codes, int kinds, String kind) {
+    // EFFECT: checks one code at a time
+    for (byte code : codes) {
+      if (code < 0 || code >= kinds) {
+        throw new IllegalArgumentException("Sokoban save has an unknown " + kind + " code "
+                + code);
+      }
+    }
+  }
+
+  // determines if the cell at the given column and row of a board with the given size and
+  // content codes holds the player, or if the player fell, leaving that cell blank and no player
+  // anywhere on the board
+  static boolean playerAt(int width, int height, byte[] contents, int col, int row) {
+    boolean onBoard = col >= 0 && col < width && row >= 0 && row < height;
+    byte held = onBoard ? contents[row * width + col] : BoardCodes.BLANK;
+    if (BoardCodes.isPlayer(held)) {
+      return true;
+    }
+    // EFFECT: looks for a player anywhere else on the board
+    for (byte content : contents) {
+      if (BoardCodes.isPlayer(content)) {
+        return false;
+      }
+    }
+    return held == BoardCodes.BLANK;
+  }
+
+  // EFFECT: writes the given non-negative number to the given stream, 7 bits to a byte
+  static void putVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  // returns the number written 7 bits to a byte in the given buffer
+  static int getVarint(ByteBuffer in) {
+    int value = 0;
+    // EFFECT: adds 7 bits at a time until a byte without its top bit
+    for (int shift = 0; shift < 32; shift += 7) {
+      int part = in.get();
+      value |= (part & 0x7F) << shift;
+      if ((part & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Sokoban save has a number that is too long");
+  }
+
+  // returns the given number with its sign in the lowest bit, so small negative numbers are small
+  static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  // returns the number that zigzag turned into the given number
+  static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /* Fields
+   * Methods
+   * this.write(SavedGame game) - byte[]
+   * this.read(ByteBuffer in) - SavedGame
+   * this.readDirectory(File directory) - ArrayList<SavedGame>
+   * this.writeFile(SavedGame game, File file) - void
+   * this.putRuns(ByteArrayOutputStream out, byte[] codes) - void
+   * this.getRuns(ByteBuffer in, int count) - byte[]
+   * this.getRun(ByteBuffer in, int left) - int
+   * this.checkCodes(byte[] codes, int kinds, String kind) - void
+   * this.playerAt(int width, int height, byte[] contents, int col, int row) - boolean
+   * this.putVarint(ByteArrayOutputStream out, int value) - void
+   * this.getVarint(ByteBuffer in) - int
+   * this.zigzag(int value) - int
+   * this.unzigzag(int value) - int
+   * Methods on Fields
+   */
+}
+
+// --------------- RENDERING -----------------------
+
+// Draws levels one after another, keeping the images it made for the last level it drew so that
+// drawing the next one only redraws what changed. The image it makes is the same as
+// Level.draw(true) makes: each row is its cells put beside each other in a balanced tree, and the
+// board is its rows put above each other in a balanced tree. Every node of those trees is kept,
+// stored as a heap (node i has children 2i and 2i + 1, and the root is node 1), so a changed cell
+// only redraws the nodes above it in its row's tree and the nodes above its row in the board's
+// tree, which is about log(width) + log(height) images, however big the board is
+class BoardRenderer {
+  Level drawn; // the level drawn last, or null if nothing has been drawn yet
+  WorldImage[][] rowTrees; // the nodes of the tree of each row's cells
+  WorldImage[] boardTree; // the nodes of the tree of the board's rows
+  WorldImage scaled; // the last board drawn, scaled by scale for a scene
+  double scale; // how much the scaled board is scaled by
+  int cellsDrawn; // how many cells the last draw had to redraw
+  int imagesMade; // how many images the last draw had to make, counting the cells
+
+  BoardRenderer() {
+    this.drawn = null;
+    this.rowTrees = new WorldImage[0][0];
+    this.boardTree = new WorldImage[0];
+    this.scaled = null;
+    this.scale = 0;
+    this.cellsDrawn = 0;
+    this.imagesMade = 0;
+  }
+
+  // returns the image of the given level's board. EFFECT: keeps the images made for the next draw
+  WorldImage draw(Level level) {
+    this.cellsDrawn = 0;
+    this.imagesMade = 0;
+    if (this.drawn == null || this.drawn.width != level.width
+            || this.drawn.height != level.height) {
+      this.rowTrees = new WorldImage[level.height][4 * Math.max(1, level.width)];
+      this.boardTree = new WorldImage[4 * Math.max(1, level.height)];
+      // EFFECT: draws the tree of every row
+      for (int row = 0; row < level.height; row++) {
+        this.build(this.rowTrees[row], 1, 0, level.width, level, row);
+      }
+      this.build(this.boardTree, 1, 0, level.height, null, -1);
+    } else if (this.drawn != level) {
+      int[] changed = ByteVector.differences(level.grounds, this.drawn.grounds, level.contents,
+              this.drawn.contents);
+      // EFFECT: redraws every changed cell and the nodes above it in its row's tree
+      for (int idx : changed) {
+        Posn posn = level.posnOf(idx);
+        this.replace(this.rowTrees[posn.row], 1, 0, level.width, posn.col,
+                Sprites.cell(level.grounds.get(idx), level.contents.get(idx)));
+        this.cellsDrawn++;
+      }
+      // EFFECT: puts the new tree of every changed row in the board's tree
+      for (int idx : changed) {
+        int row = level.posnOf(idx).row;
+        if (this.rowTrees[row][1] != this.leaf(this.boardTree, 1, 0, level.height, row)) {
+          this.replace(this.boardTree, 1, 0, level.height, row, this.rowTrees[row][1]);
+        }
+      }
+    }
+    this.drawn = level;
+    return this.boardTree[1];
+  }
+
+  // returns the image of the given level's board scaled by the given amount, which is the same
+  // image as last time if the board and the amount have not changed. EFFECT: keeps the images made
+  // for the next draw
+  WorldImage drawScaled(Level level, double scale) {
+    WorldImage board = this.boardTree.length == 0 ? null : this.boardTree[1];
+    WorldImage drawn = this.draw(level);
+    if (this.scaled == null || drawn != board || scale != this.scale) {
+      this.scaled = new ScaleImage(drawn, scale);
+      this.scale = scale;
+    }
+    return this.scaled;
+  }
+
+  // EFFECT: makes the given node of the given tree, which holds the images from the start index
+  // up to but not including the end index, and every node below it. The images are the cells of
+  // the given row of the given level, or the trees of the rows if there is no level
+  void build(WorldImage[] tree, int node, int start, int end, Level level, int row) {
+    if (end - start == 0) {
+      tree[node] = new EmptyImage();
+    } else if (end - start == 1) {
+      if (level == null) {
+        tree[node] = this.rowTrees[start][1];
+      } else {
+        int idx = (row + 1) * level.stride() + start + 1;
+        tree[node] = Sprites.cell(level.grounds.get(idx), level.contents.get(idx));
+        this.cellsDrawn++;
+      }
+    } else {
+      int middle = (start + end) >>> 1;
+      this.build(tree, 2 * node, start, middle, level, row);
+      this.build(tree, 2 * node + 1, middle, end, level, row);
+      tree[node] = level == null ? new AboveImage(tree[2 * node], tree[2 * node + 1])
+              : new BesideImage(tree[2 * node], tree[2 * node + 1]);
+    }
+    this.imagesMade++;
+  }
+
+  // EFFECT: puts the given image at the given index of the given node of the given tree, which
+  // holds the images from the start index up to but not including the end index, and remakes
+  // every node from there up to the given one. The tree is of a board's rows if its images are
+  // above each other, and of a row's cells otherwise
+  void replace(WorldImage[] tree, int node, int start, int end, int index, WorldImage image) {
+    if (end - start == 1) {
+      tree[node] = image;
+    } else {
+      int middle = (start + end) >>> 1;
+      if (index < middle) {
+        this.replace(tree, 2 * node, start, middle, index, image);
+      } else {
+        this.replace(tree, 2 * node + 1, middle, end, index, image);
+      }
+      tree[node] = tree == this.boardTree ? new AboveImage(tree[2 * node], tree[2 * node + 1])
+              : new BesideImage(tree[2 * node], tree[2 * node + 1]);
+    }
+    this.imagesMade++;
+  }
+
+  // returns the image at the given index of the given node of the given tree, which holds the
+  // images from the start index up to but not including the end index
+  WorldImage leaf(WorldImage[] tree, int node, int start, int end, int index) {
+    if (end - start == 1) {
+      return tree[node];
+    }
+    int middle = (start + end) >>> 1;
+    return index < middle ? this.leaf(tree, 2 * node, start, middle, index)
+            : this.leaf(tree, 2 * node + 1, middle, end, index);
+  }
+
+  /* Fields
+   * this.drawn - Level
+   * this.rowTrees - WorldImage[][]
+   * this.boardTree - WorldImage[]
+   * this.scaled - WorldImage
+   * this.scale - double
+   * this.cellsDrawn - int
+   * this.imagesMade - int
+   * Methods
+   * this.draw(Level level) - WorldImage
+   * this.drawScaled(Level level, double scale) - WorldImage
+   * this.build(WorldImage[] tree, int node, int start, int end, Level level, int row) - void
+   * this.replace(WorldImage[] tree, int node, int start, int end, int index,
+   *              WorldImage image) - void
+   * this.leaf(WorldImage[] tree, int node, int start, int end, int index) - WorldImage
+   * Methods on Fields
+   */
+}
+
+// Draws levels straight into BufferedImages without javalib, for checking and saving many levels
+// without opening a World. The sprites in the assets are loaded and scaled once, and every
+// combination of ground and content is put together once into a tile of pixels, so drawing a
+// level is only copying one tile per cell into the image
+class LevelRasterizer {
+  int tileSize; // the width and height of every cell, in pixels
+  // the pixels of each cell, at index ground code * Sprites.CODES + content code, row by row
+  int[][] tiles;
+  HashMap<String, BufferedImage> sprites; // every file in the assets, scaled to tileSize
+
+  // makes a rasterizer that draws every cell as a square of the given size
+  LevelRasterizer(int tileSize) {
+    if (tileSize < 1) {
+      throw new IllegalArgumentException("A tile must be at least 1 pixel wide, given "
+              + tileSize);
+    }
+    this.tileSize = tileSize;
+    this.tiles = new int[Sprites.CODES * Sprites.CODES][];
+    this.sprites = new HashMap<String, BufferedImage>();
+    // EFFECT: loads and scales every file in the assets
+    for (String name : Sprites.FILES) {
+      this.sprites.put(name, this.load(name));
+    }
+    // EFFECT: puts together every ground with every content, for every color in the palette.
+    // Colors registered after this are put together the first time they are drawn
+    for (byte ground = 0; ground < BoardCodes.TARGET + Palette.size(); ground++) {
+      for (byte content = 0; content < BoardCodes.TROPHY + Palette.size(); content++) {
+        this.tiles[ground * Sprites.CODES + content] = this.tile(ground, content, this.sprites);
+      }
+    }
+  }
+
+  // returns the image in the assets file with the given name, scaled to this rasterizer's tiles
+  BufferedImage load(String name) {
+    BufferedImage file;
+    try {
+      file = ImageIO.read(new File(Sprites.ASSETS + name + ".png"));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not load the sprite " + name, e);
+    }
+    BufferedImage scaled = new BufferedImage(this.tileSize, this.tileSize,
+            BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.drawImage(file, 0, 0, this.tileSize, this.tileSize, null);
+    graphics.dispose();
+    return scaled;
+  }
+
+  // returns the pixels of a cell with the given ground and content codes. Like Sprites.cell, the
+  // content is drawn over the ground, and both are drawn over the white background of a scene
+  int[] tile(byte ground, byte content, HashMap<String, BufferedImage> sprites) {
+    BufferedImage tile = new BufferedImage(this.tileSize, this.tileSize,
+            BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = tile.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, this.tileSize, this.tileSize);
+    if (ground == BoardCodes.NORMAL) {
+      graphics.setColor(Color.BLACK);
+      graphics.drawRect(0, 0, this.tileSize - 1, this.tileSize - 1);
+    } else if (ground == BoardCodes.ICE) {
+      graphics.drawImage(sprites.get("ice"), 0, 0, null);
+    } else if (ground == BoardCodes.HOLE) {
+      graphics.drawImage(sprites.get("hole"), 0, 0, null);
+    } else {
+      Color color = Palette.color(ground - BoardCodes.TARGET);
+      this.fillCircle(graphics, 60, color);
+      this.fillCircle(graphics, 45, Color.WHITE);
+      this.fillCircle(graphics, 25, color);
+    }
+
+    if (content == BoardCodes.WALL) {
+      graphics.drawImage(sprites.get("wall"), 0, 0, null);
+    } else if (content == BoardCodes.BOX) {
+      graphics.drawImage(sprites.get("box"), 0, 0, null);
+    } else if (BoardCodes.isPlayer(content)) {
+      graphics.drawImage(sprites.get("player"), 0, 0, null);
+    } else if (BoardCodes.isTrophy(content)) {
+      int colorId = content - BoardCodes.TROPHY;
+      if (Palette.builtIn(colorId)) {
+        graphics.drawImage(sprites.get("trophy_" + Palette.name(colorId)), 0, 0, null);
+      } else {
+        this.fillCircle(graphics, 40, Palette.color(colorId));
+      }
+    }
+    graphics.dispose();
+    return tile.getRGB(0, 0, this.tileSize, this.tileSize, null, 0, this.tileSize);
+  }
+
+  // EFFECT: fills a circle in the middle of a tile with the given radius, given in the pixels of
+  // a javalib cell, and color
+  void fillCircle(Graphics2D graphics, int radius, Color color) {
+    double scale = (double) this.tileSize / Constants.CELL_WIDTH;
+    int diameter = (int) Math.round(2 * radius * scale);
+    int corner = (this.tileSize - diameter) / 2;
+    graphics.setColor(color);
+    graphics.fillOval(corner, corner, diameter, diameter);
+  }
+
+  // returns an image of the given level's board, with one tile for each of its cells
+  BufferedImage rasterize(Level level) {
+    BufferedImage image = new BufferedImage(Math.max(1, level.width * this.tileSize),
+            Math.max(1, level.height * this.tileSize), BufferedImage.TYPE_INT_RGB);
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int imageWidth = image.getWidth();
+    // EFFECT: copies the tile of every cell into its place in the image, one row of pixels at a
+    // time
+    for (int idx = 0; idx < level.width * level.height; idx++) {
+      int stored = (idx / level.width + 1) * level.stride() + idx % level.width + 1;
+      byte ground = level.grounds.get(stored);
+      byte content = level.contents.get(stored);
+      int[] tile = this.tiles[ground * Sprites.CODES + content];
+      if (tile == null) {
+        tile = this.tile(ground, content, this.sprites);
+        this.tiles[ground * Sprites.CODES + content] = tile;
+      }
+      int corner = (idx / level.width) * this.tileSize * imageWidth
+              + (idx % level.width) * this.tileSize;
+      for (int y = 0; y < this.tileSize; y++) {
+        System.arraycopy(tile, y * this.tileSize, pixels, corner + y * imageWidth, this.tileSize);
+      }
+    }
+    return image;
+  }
+
+  // EFFECT: writes an image of the given level's board to the given file as a PNG
+  void writePng(Level level, File file) {
+    try {
+      ImageIO.write(this.rasterize(level), "png", file);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write " + file, e);
+    }
+  }
+
+  // EFFECT: writes an image of every given level to the given directory as level-N.png, where N is
+  // its index, with the given number of threads drawing and writing them at once. Returns the
+  // number of images written
+  int writeAll(Level[] levels, File directory, int threads) {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ArrayList<Future<?>> written = new ArrayList<Future<?>>();
+    // EFFECT: hands every level to the pool
+    for (int index = 0; index < levels.length; index++) {
+      Level level = levels[index];
+      File file = new File(directory, "level-" + index + ".png");
+      written.add(pool.submit(() -> this.writePng(level, file)));
+    }
+    try {
+      // EFFECT: waits for every level to be written
+      for (Future<?> image : written) {
+        image.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while writing levels", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not write every level", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return levels.length;
+  }
+
+  /* Fields
+   * this.tileSize - int
+   * this.tiles - int[][]
+   * this.sprites - HashMap<String, BufferedImage>
+   * Methods
+   * this.load(String name) - BufferedImage
+   * this.tile(byte ground, byte content, HashMap<String, BufferedImage> sprites) - int[]
+   * this.fillCircle(Graphics2D graphics, int radius, Color color) - void
+   * this.rasterize(Level level) - BufferedImage
+   * this.writePng(Level level, File file) - void
+   * this.writeAll(Level[] levels, File directory, int threads) - int
+   * Methods on Fields
+   */
+}
+
+// --------------- UNDO AND REDO -----------------------
+
+// Represents the changes one move made to a level: the cells it changed (including any that fell
+// into a Hole), where the player went, and how many steps it took. A delta can be applied to the
+// level it was made from, or reverted from the level the move made, by changing only those cells
+class MoveDelta {
+  int[] cells; // the index of every cell the move changed
+  byte[] groundsBefore; // the ground code of each changed cell before the move
+  byte[] groundsAfter; // the ground code of each changed cell after the move
+  byte[] contentsBefore; // the content code of each changed cell before the move
+  byte[] contentsAfter; // the content code of each changed cell after the move
+  Posn playerBefore; // the player position before the move
+  Posn playerAfter; // the player position after the move
+  int steps; // the number of steps the move took
+
+  MoveDelta(int[] cells, byte[] groundsBefore, byte[] groundsAfter, byte[] contentsBefore,
+            byte[] contentsAfter, Posn playerBefore, Posn playerAfter, int steps) {
+    this.cells = cells;
+    this.groundsBefore = groundsBefore;
+    this.groundsAfter = groundsAfter;
+    this.contentsBefore = contentsBefore;
+    this.contentsAfter = contentsAfter;
+    this.playerBefore = playerBefore;
+    this.playerAfter = playerAfter;
+    this.steps = steps;
+  }
+
+  // returns the delta of the move that took the first given level to the second, which must have
+  // been made from it. Only looks at the parts of the boards that the two levels do not share
+  static MoveDelta between(Level before, Level after) {
+    int[] cells = ByteVector.differences(before.grounds, after.grounds, before.contents,
+            after.contents);
+    byte[] groundsBefore = new byte[cells.length];
+    byte[] groundsAfter = new byte[cells.length];
+    byte[] contentsBefore = new byte[cells.length];
+    byte[] contentsAfter = new byte[cells.length];
+    // EFFECT: records the codes of every changed cell before and after the move
+    for (int cell = 0; cell < cells.length; cell++) {
+      groundsBefore[cell] = before.grounds.get(cells[cell]);
+      groundsAfter[cell] = after.grounds.get(cells[cell]);
+      contentsBefore[cell] = before.contents.get(cells[cell]);
+      contentsAfter[cell] = after.contents.get(cells[cell]);
+    }
+
+    return new MoveDelta(cells, groundsBefore, groundsAfter, contentsBefore, contentsAfter,
+            before.playerPos, after.playerPos, after.steps - before.steps);
+  }
+
+  // determines if this delta's move did not change anything
+  boolean isEmpty() {
+    return this.cells.length == 0 && this.playerBefore.samePosn(this.playerAfter)
+            && this.steps == 0;
+  }
+
+  // returns the given level, which is the level this delta's move was made from, with the move
+  // made again. Making the move again takes as many steps as it did the first time
+  Level apply(Level level) {
+    Level applied = level.derive(this.playerAfter, level.steps + this.steps);
+    applied.setCells(this.cells, this.groundsAfter, this.contentsAfter);
+    return applied;
+  }
+
+  // returns the given level, which is the level this delta's move made, with the move undone.
+  // Undoing a move takes one step
+  Level revert(Level level) {
+    Level reverted = level.derive(this.playerBefore, level.steps + 1);
+    reverted.setCells(this.cells, this.groundsBefore, this.contentsBefore);
+    return reverted;
+  }
+
+  /* Fields
+   * this.cells - int[]
+   * this.groundsBefore - byte[]
+   * this.groundsAfter - byte[]
+   * this.contentsBefore - byte[]
+   * this.contentsAfter - byte[]
+   * this.playerBefore - Posn
+   * this.playerAfter - Posn
+   * this.steps - int
+   * Methods
+   * this.between(Level before, Level after) - MoveDelta
+   * this.isEmpty() - boolean
+   * this.apply(Level level) - Level
+   * this.revert(Level level) - Level
+   * Methods on Fields
+   * this.playerBefore.samePosn(Posn pos) - boolean
+   */
+}
+
+// Represents the history of moves in a game as a ring of move deltas. Every recorded move can be
+// undone, and every undone move can be redone until a new move is recorded. Once the ring is full,
+// recording a move forgets the oldest one
+class MoveJournal {
+  MoveDelta[] ring; // the recorded moves, oldest first starting from the start index
+  int start; // the index in the ring of the oldest recorded move
+  int undoable; // the number of recorded moves that can be undone
+  int redoable; // the number of undone moves, after the undoable ones, that can be redone
+
+  // configures an empty journal that remembers up to the given number of moves
+  MoveJournal(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("A move journal must be able to hold a move");
+    }
+    this.ring = new MoveDelta[capacity];
+    this.start = 0;
+    this.undoable = 0;
+    this.redoable = 0;
+  }
+
+  // returns the index in the ring of the move that is the given number of moves after the oldest
+  int slot(int movesAfterOldest) {
+    return (this.start + movesAfterOldest) % this.ring.length;
+  }
+
+  // EFFECT: records the given move as the latest move, forgetting every undone move and, if the
+  // ring is full, the oldest move
+  void record(MoveDelta delta) {
+    this.redoable = 0;
+    if (this.undoable == this.ring.length) {
+      this.start = this.slot(1);
+      this.undoable--;
+    }
+    this.ring[this.slot(this.undoable)] = delta;
+    this.undoable++;
+  }
+
+  // EFFECT: undoes the latest move that has not been undone yet, if any, in the given level.
+  // Returns the resulting level
+  Level undo(Level level) {
+    if (this.undoable == 0) {
+      return level;
+    }
+    this.undoable--;
+    this.redoable++;
+    return this.ring[this.slot(this.undoable)].revert(level);
+  }
+
+  // EFFECT: redoes the earliest move that has been undone, if any, in the given level. Returns
+  // the resulting level
+  Level redo(Level level) {
+    if (this.redoable == 0) {
+      return level;
+    }
+    MoveDelta delta = this.ring[this.slot(this.undoable)];
+    this.undoable++;
+    this.redoable--;
+    return delta.apply(level);
+  }
+
+  /* Fields
+   * this.ring - MoveDelta[]
+   * this.start - int
+   * this.undoable - int
+   * this.redoable - int
+   * Methods
+   * this.slot(int movesAfterOldest) - int
+   * this.record(MoveDelta delta) - void
+   * this.undo(Level level) - Level
+   * this.redo(Level level) - Level
+   * Methods on Fields
+   */
+}
+
+// --------------- REPLAY -----------------------
+
+// Represents the keys a game handled, in order, along with the level it started from, so that the
+// game can be replayed without a World. Only the keys a game acts on are kept, one byte each. A
+// walk to a clicked cell, or the pushes planned for a dragged box, is kept as one code for each of
+// its moves, marked so that a replay puts them all in one move that can be undone, as the game did
+class KeyLog {
+  static final byte UNDO = 4; // the code of the undo key, after the codes of the directions
+  static final byte REDO = 5; // the code of the redo key
+  static final byte WALK = 8; // the code of the first move of a walk is WALK + its direction's id
+  static final byte WALK_ON = 12; // the code of every later move of a walk is WALK_ON + its id
+
+  Level start; // the level the game started from
+  byte[] keys; // the code of every key, where a direction's code is its ordinal
+  int size; // the number of keys in this log
+
+  KeyLog(Level start) {
+    this.start = start;
+    this.keys = new byte[64];
+    this.size = 0;
+  }
+
+  // returns the code of the given key, or -1 if a game does nothing with it
+  static byte code(String key) {
+    switch (key) {
+      case "u":
+        return UNDO;
+      case "r":
+        return REDO;
+      case "up":
+      case "right":
+      case "down":
+      case "left":
+        return (byte) Direction.of(key).ordinal();
+      default:
+        return -1;
+    }
+  }
+
+  // EFFECT: adds the given key to the end of this log, if a game does something with it
+  void record(String key) {
+    byte code = KeyLog.code(key);
+    if (code >= 0) {
+      this.add(code);
+    }
+  }
+
+  // EFFECT: adds every move of the given walk or plan to the end of this log
+  void recordWalk(Direction[] walk) {
+    // EFFECT: adds the code of each move, marking every one after the first
+    for (int move = 0; move < walk.length; move++) {
+      this.add((byte) ((move == 0 ? WALK : WALK_ON) + walk[move].ordinal()));
+    }
+  }
+
+  // EFFECT: adds the given code to the end of this log
+  void add(byte code) {
+    if (this.size == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.size * 2);
+    }
+    this.keys[this.size] = code;
+    this.size++;
+  }
+
+  /* Fields
+   * this.start - Level
+   * this.keys - byte[]
+   * this.size - int
+   * Methods
+   * this.code(String key) - byte
+   * this.record(String key) - void
+   * this.recordWalk(Direction[] walk) - void
+   * this.add(byte code) - void
+   * Methods on Fields
+   */
+}
+
+// Represents a list of move deltas that is never changed, so that replay states can share the
+// moves they can undo and redo instead of copying them
+class DeltaList {
+  MoveDelta delta;
+  DeltaList next; // the rest of the list, or null if this is its last delta
+  int size; // the number of deltas in this list
+
+  DeltaList(MoveDelta delta, DeltaList next) {
+    this.delta = delta;
+    this.next = next;
+    this.size = next == null ? 1 : next.size + 1;
+  }
+
+  // returns a list of the given number of deltas from the front of this list, which has at least
+  // that many
+  DeltaList first(int count) {
+    MoveDelta[] deltas = new MoveDelta[count];
+    DeltaList rest = this;
+    // EFFECT: collects the deltas from the front of this list
+    for (int idx = 0; idx < count; idx++) {
+      deltas[idx] = rest.delta;
+      rest = rest.next;
+    }
+    DeltaList first = null;
+    // EFFECT: puts the deltas into a new list, from the last one back to the first
+    for (int idx = count - 1; idx >= 0; idx--) {
+      first = new DeltaList(deltas[idx], first);
+    }
+    return first;
+  }
+
+  /* Fields
+   * this.delta - MoveDelta
+   * this.next - DeltaList
+   * this.size - int
+   * Methods
+   * this.first(int count) - DeltaList
+   * Methods on Fields
+   */
+}
+
+// Represents everything about a game partway through a replay: its level and the moves that can be
+// undone and redone. A state is never changed, so any state can be kept as a checkpoint. Keys
+// are handled as Sokoban.onKeyEvent handles them, and walks as Sokoban.onMouseClicked does, with
+// the same limit on how many moves can be undone as its MoveJournal. The moves past that limit are
+// dropped from the list of moves to undo once there are as many of them as within it, so a long
+// replay keeps at most twice the moves a MoveJournal does, at the cost of copying the list once
+// every Constants.UNDO_LIMIT moves
+class ReplayState {
+  Level level;
+  DeltaList undo; // the moves that can be undone, latest first
+  int undoable; // the number of moves that can be undone, which is at most Constants.UNDO_LIMIT
+  DeltaList redo; // the moves that can be redone, earliest first
+
+  ReplayState(Level level, DeltaList undo, int undoable, DeltaList redo) {
+    this.level = level;
+    this.undo = undo;
+    this.undoable = undoable;
+    this.redo = redo;
+  }
+
+  // returns the state after handling the key with the given code in this state
+  ReplayState next(byte key) {
+    if (key == KeyLog.UNDO) {
+      if (this.undoable == 0) {
+        return this;
+      }
+      return new ReplayState(this.undo.delta.revert(this.level), this.undo.next,
+              this.undoable - 1, new DeltaList(this.undo.delta, this.redo));
+    } else if (key == KeyLog.REDO) {
+      if (this.redo == null) {
+        return this;
+      }
+      return new ReplayState(this.redo.delta.apply(this.level),
+              ReplayState.remember(this.redo.delta, this.undo), this.undoable + 1,
+              this.redo.next);
+    } else if (key >= KeyLog.WALK_ON) {
+      if (this.undoable == 0) {
+        throw new IllegalArgumentException("Key " + key + " goes on with a walk, but there is no "
+                + "move before it to join");
+      }
+      // a later move of a walk joins the move the walk has made so far
+      Level moved = this.level.movePlayer(Direction.ALL[key - KeyLog.WALK_ON]).updateLevel();
+      MoveDelta delta = MoveDelta.between(this.undo.delta.revert(this.level), moved);
+      delta.steps = moved.steps - this.level.steps + this.undo.delta.steps;
+      return new ReplayState(moved, new DeltaList(delta, this.undo.next), this.undoable, null);
+    } else {
+      Level moved = this.level.movePlayer(Direction.ALL[key % KeyLog.WALK]).updateLevel();
+      MoveDelta delta = MoveDelta.between(this.level, moved);
+      if (delta.isEmpty()) {
+        return new ReplayState(moved, this.undo, this.undoable, this.redo);
+      }
+      return new ReplayState(moved, ReplayState.remember(delta, this.undo),
+              Math.min(this.undoable + 1, Constants.UNDO_LIMIT), null);
+    }
+  }
+
+  // returns the given list of moves to undo with the given delta added to its front. Once the list
+  // has twice as many moves as can be undone, only those that can still be undone are kept
+  static DeltaList remember(MoveDelta delta, DeltaList undo) {
+    if (undo != null && undo.size >= 2 * Constants.UNDO_LIMIT) {
+      undo = undo.first(Constants.UNDO_LIMIT - 1);
+    }
+    return new DeltaList(delta, undo);
+  }
+
+  /* Fields
+   * this.level - Level
+   * this.undo - DeltaList
+   * this.undoable - int
+   * this.redo - DeltaList
+   * Methods
+   * this.next(byte key) - ReplayState
+   * this.remember(MoveDelta delta, DeltaList undo) - DeltaList
+   * Methods on Fields
+   * this.undo.delta.revert(Level level) - Level
+   * this.redo.delta.apply(Level level) - Level
+   */
+}
+
+// Replays a key log as fast as the moves can be made, keeping a checkpoint of the state every
+// interval keys on the way. Seeking to any key restores the checkpoint at or before it, unless the
+// replay is already between the two, and replays fewer than interval keys from there
+class Replay {
+  KeyLog log;
+  int interval; // the number of keys between checkpoints
+  // the state after every multiple of interval keys that has been replayed so far
+  ArrayList<ReplayState> checkpoints;
+  ReplayState state; // the state after the keys replayed so far
+  int position; // the number of keys replayed so far
+  long keysReplayed; // the number of keys handled, over every seek
+
+  Replay(KeyLog log, int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Checkpoints must be at least 1 key apart, given "
+              + interval);
+    }
+    this.log = log;
+    this.interval = interval;
+    this.checkpoints = new ArrayList<ReplayState>();
+    this.state = new ReplayState(log.start, null, 0, null);
+    this.checkpoints.add(this.state);
+    this.position = 0;
+    this.keysReplayed = 0;
+  }
+
+  // returns the level after the given number of keys in the log. EFFECT: moves the replay there
+  Level seek(int keys) {
+    if (keys < 0 || keys > this.log.size) {
+      throw new IllegalArgumentException("No key " + keys + " in a log of " + this.log.size
+              + " keys");
+    }
+    int checkpoint = Math.min(keys / this.interval, this.checkpoints.size() - 1);
+    if (keys < this.position || checkpoint * this.interval > this.position) {
+      this.state = this.checkpoints.get(checkpoint);
+      this.position = checkpoint * this.interval;
+    }
+    // EFFECT: handles every key up to the given one, keeping a checkpoint at every interval
+    while (this.position < keys) {
+      this.state = this.state.next(this.log.keys[this.position]);
+      this.position++;
+      this.keysReplayed++;
+      if (this.position % this.interval == 0
+              && this.position / this.interval == this.checkpoints.size()) {
+        this.checkpoints.add(this.state);
+      }
+    }
+    return this.state.level;
+  }
+
+  // returns the level after every key in the log. EFFECT: moves the replay to the end of the log
+  Level fastForward() {
+    return this.seek(this.log.size);
+  }
+
+  /* Fields
+   * this.log - KeyLog
+   * this.interval - int
+   * this.checkpoints - ArrayList<ReplayState>
+   * this.state - ReplayState
+   * this.position - int
+   * this.keysReplayed - long
+   * Methods
+   * this.seek(int keys) - Level
+   * this.fastForward() - Level
+   * Methods on Fields
+   * this.state.next(byte key) - ReplayState
+   */
+}
+
+// --------------- PATHFINDING -----------------------
+
+// Finds the walks the player can make without pushing anything, so that a click can move the
+// player to any cell it can get to in one go. A walk is a list of moves that each move only the
+// player: a move that would push a box or trophy, start one sliding across the ice, or leave the
+// player on a Hole is never part of one, and a move onto the ice takes the player as far as it
+// slides, just as Level.movePlayer would.
+//
+// The cells the player can walk to are found once for each layout of the board, which is
+// everything on it but where the player is. Walking never changes the layout, so the region stays
+// good until a push does; until then it turns down clicks on cells outside it without searching.
+// Ice can make a move one way only, so a click inside the region still needs a search from where
+// the player is now, which stops as soon as it gets to the clicked cell. Where each move from each
+// cell ends up only depends on the layout too, so it is worked out for every cell of the first
+// board, and a search only looks moves up. After a push only the cells the push changed are copied
+// again, and only the moves that look at one of them, from up to three cells away or further along
+// the ice, are worked out again. Every array is kept and reused between searches, and each search
+// marks the cells it reaches with a number of its own so that nothing has to be cleared before the
+// next.
+class Pathfinder {
+  Level copied; // the level whose board was copied last, or null if none has been
+  long layout; // the hash of the board the region was found on, without the player
+  byte[] grounds; // the ground codes of the board the region was found on
+  byte[] contents; // the content codes of that board, with the player taken off it
+  byte player; // the content code of the player on that board
+  int[][] slideStops; // the slide stops of that board (see Level.slideStops)
+  int stride; // the length of each stored row of that board (see Level.stride)
+  // where a move from each cell of that board in each direction ends up (see step), at index
+  // cell * 4 + the direction's id
+  int[] ends;
+  int[] region; // the cells the player can walk to are those whose mark is regionMark
+  int regionMark; // the mark of the cells in the region, or 0 if there is no region yet
+  int[] seen; // the cells the last search got to are those whose mark is searchMark
+  int searchMark; // the mark of the cells the last search got to
+  int searchOrigin; // the index the last search started from, or -1 if there was none
+  int[] parent; // the cell each cell the last search got to was reached from
+  byte[] moves; // the id of the direction of the move that reached each cell
+  int[] queue; // the cells of the last search, in the order it got to them
+  long regionSearches; // the number of times the region has been found
+
+  Pathfinder() {
+    this.copied = null;
+    this.layout = 0;
+    this.grounds = new byte[0];
+    this.contents = new byte[0];
+    this.player = BoardCodes.PLAYER;
+    this.slideStops = new int[0][];
+    this.stride = 0;
+    this.ends = new int[0];
+    this.region = new int[0];
+    this.regionMark = 0;
+    this.seen = new int[0];
+    this.searchMark = 0;
+    this.searchOrigin = -1;
+    this.parent = new int[0];
+    this.moves = new byte[0];
+    this.queue = new int[0];
+    this.regionSearches = 0;
+  }
+
+  // returns the hash of the given level's board as if the player were not on it
+  static long layoutOf(Level level) {
+    int playerIdx = level.indexOf(level.playerPos);
+    return level.hash ^ Zobrist.key(Zobrist.CONTENT, playerIdx, level.contents.get(playerIdx));
+  }
+
+  // returns the moves that walk the player of the given level to the given position, or null if
+  // the player cannot walk there. EFFECT: finds the region again if a push changed the layout
+  Direction[] path(Level level, Posn to) {
+    if (!this.reachable(level, to)) {
+      return null;
+    }
+    int origin = level.indexOf(level.playerPos);
+    int goal = level.indexOf(to);
+    if (goal == origin) {
+      return new Direction[0];
+    }
+    if (this.searchOrigin != origin || this.seen[goal] != this.searchMark) {
+      this.search(origin, goal);
+    }
+    if (this.seen[goal] != this.searchMark) {
+      return null; // in the region, but only from somewhere the player cannot get back to
+    }
+
+    int length = 0;
+    // EFFECT: counts the moves from the goal back to the origin
+    for (int idx = goal; idx != origin; idx = this.parent[idx]) {
+      length++;
+    }
+    Direction[] path = new Direction[length];
+    // EFFECT: fills in the moves from the last one back to the first
+    for (int idx = goal; idx != origin; idx = this.parent[idx]) {
+      length--;
+      path[length] = Direction.ALL[this.moves[idx]];
+    }
+    return path;
+  }
+
+  // determines if the player of the given level can walk to the given position, as far as the
+  // region can tell. EFFECT: finds the region again if it was found on another layout, or the
+  // player is somewhere outside it
+  boolean reachable(Level level, Posn to) {
+    if (!level.onBoard(to)) {
+      return false;
+    }
+    int origin = level.indexOf(level.playerPos);
+    long layout = Pathfinder.layoutOf(level);
+    if (this.regionMark == 0 || this.layout != layout || this.region.length != level.grounds.size
+            || this.region[origin] != this.regionMark) {
+      this.findRegion(level, layout);
+    }
+    return this.region[level.indexOf(to)] == this.regionMark;
+  }
+
+  // EFFECT: copies the board of the given level, whose board has the given layout, and finds every
+  // cell its player can walk to. A board with the same walls as the one copied last, which is one
+  // of the same level, only has the cells that differ copied, unless a player fell off either one,
+  // since every move from every cell depends on what the player is
+  void findRegion(Level level, long layout) {
+    int origin = level.indexOf(level.playerPos);
+    if (this.copied != null && this.copied.slideStops == level.slideStops
+            && BoardCodes.isPlayer(this.player)
+            && BoardCodes.isPlayer(level.contents.get(origin))) {
+      this.patch(level, origin);
+    } else {
+      this.copy(level, origin);
+    }
+    this.copied = level;
+    int reached = this.search(origin, -1);
+    if (this.region.length != this.seen.length) {
+      this.region = new int[this.seen.length];
+      this.regionMark = 0;
+    }
+    this.regionMark++;
+    // EFFECT: marks every cell the search got to
+    for (int cell = 0; cell < reached; cell++) {
+      this.region[this.queue[cell]] = this.regionMark;
+    }
+    this.layout = layout;
+    this.regionSearches++;
+  }
+
+  // EFFECT: copies the whole board of the given level, with its player, at the given origin, taken
+  // off it, and works out every move from every cell of it
+  void copy(Level level, int origin) {
+    this.grounds = level.grounds.toArray();
+    this.contents = level.contents.toArray();
+    this.player = this.contents[origin];
+    this.contents[origin] = BoardCodes.BLANK;
+    this.slideStops = level.slideStops;
+    this.stride = level.stride();
+    if (this.ends.length != this.grounds.length * 4) {
+      this.ends = new int[this.grounds.length * 4];
+    }
+    // EFFECT: works out every move from every cell the player could be on
+    for (int idx = 0; idx < this.grounds.length; idx++) {
+      for (Direction direction : Direction.ALL) {
+        this.ends[idx * 4 + direction.ordinal()] = this.end(idx, direction);
+      }
+    }
+  }
+
+  // EFFECT: copies the cells of the board of the given level, with its player at the given origin,
+  // that differ from the board copied last, which has the same walls, and works out again every
+  // move that looks at one of them
+  void patch(Level level, int origin) {
+    int[] changed = ByteVector.differences(this.copied.grounds, level.grounds,
+            this.copied.contents, level.contents);
+    this.player = level.contents.get(origin);
+    // EFFECT: copies every changed cell, leaving the player off the board
+    for (int idx : changed) {
+      this.grounds[idx] = level.grounds.get(idx);
+      this.contents[idx] = idx == origin ? BoardCodes.BLANK : level.contents.get(idx);
+    }
+    // EFFECT: works out again the moves that look at each changed cell
+    for (int idx : changed) {
+      for (Direction direction : Direction.ALL) {
+        this.stepsInto(idx, direction);
+      }
+    }
+  }
+
+  // EFFECT: works out again every move in the given direction that looks at the given index of the
+  // copied board. Those start on the index or up to three cells before it, or further back across
+  // ice that would slide the player up to it
+  void stepsInto(int idx, Direction direction) {
+    int delta = direction.delta(this.stride);
+    int from = idx;
+    // EFFECT: works out the move from each cell going back from the index, until one is more than
+    //         three cells back and no slide from further back could go over it
+    for (int back = 0; from >= 0 && from < this.grounds.length; back++) {
+      this.ends[from * 4 + direction.ordinal()] = this.end(from, direction);
+      if (back >= 3 && !BoardCodes.slides(this.grounds[from], this.player)) {
+        return;
+      }
+      from -= delta;
+    }
+  }
+
+  // returns where a move from the given index of the copied board in the given direction ends up,
+  // or -1 if the player could never be there, or the move would do anything but move the player
+  int end(int from, Direction direction) {
+    return BoardCodes.isVacant(this.contents[from]) ? this.step(from, direction) : -1;
+  }
+
+  // returns the number of cells a breadth-first search of the walks from the given origin of the
+  // copied board got to, stopping at the given goal, or going everywhere if it is -1. EFFECT:
+  // records the cells it got to and how it got to each of them
+  int search(int origin, int goal) {
+    int cells = this.grounds.length;
+    if (this.seen.length != cells) {
+      this.seen = new int[cells];
+      this.parent = new int[cells];
+      this.moves = new byte[cells];
+      this.queue = new int[cells];
+      this.searchMark = 0;
+    }
+    this.searchMark++;
+    this.searchOrigin = origin;
+    this.seen[origin] = this.searchMark;
+    this.queue[0] = origin;
+    int head = 0;
+    int tail = 1;
+    // EFFECT: takes the next cell off the queue and adds every cell one move from it that has
+    //         not been reached yet, until the queue runs out or the goal is reached
+    while (head < tail) {
+      int from = this.queue[head];
+      head++;
+      for (int direction = 0; direction < 4; direction++) {
+        int to = this.ends[from * 4 + direction];
+        if (to != -1 && this.seen[to] != this.searchMark) {
+          this.seen[to] = this.searchMark;
+          this.parent[to] = from;
+          this.moves[to] = (byte) direction;
+          this.queue[tail] = to;
+          tail++;
+          if (to == goal) {
+            return tail;
+          }
+        }
+      }
+    }
+    return tail;
+  }
+
+  // returns where the player would end up if it moved once from the given index of the copied
+  // board in the given direction, or -1 if that move would do anything but move the player.
+  // Follows Level.movePlayer, slideFrom and slidePlayerFrom, without changing anything
+  int step(int from, Direction direction) {
+    byte[] grounds = this.grounds;
+    byte[] contents = this.contents;
+    int delta = direction.delta(this.stride);
+    int[] stops = this.slideStops[direction.ordinal()];
+    int moveTo = from + delta;
+    int ahead = moveTo + delta;
+    if (!BoardCodes.isVacant(contents[moveTo])) {
+      return -1; // blocked, or a push
+    }
+    if (BoardCodes.slides(grounds[ahead], contents[ahead]) && stops[ahead] != ahead
+            && BoardCodes.isVacant(contents[ahead + delta])) {
+      return -1; // stepping up to it would start what is ahead sliding
+    }
+
+    int end = moveTo;
+    if (BoardCodes.slides(grounds[moveTo], this.player)) {
+      int stop = stops[moveTo];
+      // EFFECT: moves the player one step further until it gets to the stop or runs into
+      //         something, giving up on the move if it would push what it runs into
+      while (end != stop) {
+        byte slideTo = contents[end + delta];
+        if (!BoardCodes.isFixed(slideTo) && BoardCodes.isVacant(contents[end + 2 * delta])) {
+          return -1;
+        }
+        if (!BoardCodes.isVacant(slideTo)) {
+          break;
+        }
+        end += delta;
+      }
+    }
+    return BoardCodes.falls(grounds[end], this.player) ? -1 : end;
+  }
+
+  /* Fields
+   * this.copied - Level
+   * this.layout - long
+   * this.grounds - byte[]
+   * this.contents - byte[]
+   * this.player - byte
+   * this.slideStops - int[][]
+   * this.stride - int
+   * this.ends - int[]
+   * this.region - int[]
+   * this.regionMark - int
+   * this.seen - int[]
+   * this.searchMark - int
+   * this.searchOrigin - int
+   * this.parent - int[]
+   * this.moves - byte[]
+   * this.queue - int[]
+   * this.regionSearches - long
+   * Methods
+   * this.layoutOf(Level level) - long
+   * this.path(Level level, Posn to) - Direction[]
+   * this.reachable(Level level, Posn to) - boolean
+   * this.findRegion(Level level, long layout) - void
+   * this.copy(Level level, int origin) - void
+   * this.patch(Level level, int origin) - void
+   * this.stepsInto(int idx, Direction direction) - void
+   * this.end(int from, Direction direction) - int
+   * this.search(int origin, int goal) - int
+   * this.step(int from, Direction direction) - int
+   * Methods on Fields
+   */
+}
+
+// Plans the pushes that take one box or trophy to a cell the player dragged it to, along with the
+// walks the player takes between them. A plan only ever moves the player and the dragged box or
+// trophy, and each of its pushes is made with Level.movePlayer and updateLevel on the level the
+// pushes before it left, so ice and holes, and walls that fall into holes, work just as they do in
+// the game. The player makes each push from the cell next to the box, or from further back along
+// ice that it would slide over into the box. A plan never drops the box into a Hole or the player
+// onto one.
+//
+// The search is a best-first search over states made of where the box is and which side of it
+// the player pushes from, so no state is tried twice however the player got there. It is led by a
+// table of how many pushes each cell is from the destination, counting every push that moves the
+// box one cell or slides it any way along the ice. Only the board's walls are in the way in the
+// table, since nothing else on a board is sure to stay put, so it is worked out once for each
+// destination of the level and kept, and any cell it cannot reach is never searched from.
+class PushPlanner {
+  int stride; // the length of each stored row of the level (see Level.stride)
+  byte[] grounds; // the ground codes of the level
+  boolean[] blocked; // whether each cell is a wall that is there for good, which no box gets past
+  HashMap<Integer, int[]> distances; // the table of each destination asked for so far
+  Pathfinder paths; // finds the walks between pushes
+  int[] pushes; // the pushes made so far in each state, or -1 if it has not been reached
+  int[] parents; // the state each state's push followed, or -1 if it followed none
+  int[] pushFrom; // where the player stands to make each state's push
+  Direction[][] walks; // the walk to where the player stands for each state's push
+  Level[] levels; // the level each state's walk and push are made on, after the pushes before it
+  long tried; // the number of pushes tried, over every plan
+
+  // configures this planner for the level with the given board, working out what never changes
+  PushPlanner(Level level) {
+    this.stride = level.stride();
+    this.grounds = level.grounds.toArray();
+    this.blocked = new boolean[this.grounds.length];
+    // EFFECT: marks every wall that is not on a Hole, which would fall in on the first move
+    for (int idx = 0; idx < this.blocked.length; idx++) {
+      this.blocked[idx] = level.isStaticWall(idx);
+    }
+    this.distances = new HashMap<Integer, int[]>();
+    this.paths = new Pathfinder();
+    this.pushes = new int[0];
+    this.parents = new int[0];
+    this.pushFrom = new int[0];
+    this.walks = new Direction[0][];
+    this.levels = new Level[0];
+    this.tried = 0;
+  }
+
+  // returns how many pushes each cell of the level is from the given destination, leaving out
+  // everything but the walls, or -1 for cells that no pushes get there from.
+  // EFFECT: works the table out the first time it is asked for
+  int[] distancesTo(int goal) {
+    int[] table = this.distances.get(goal);
+    if (table != null) {
+      return table;
+    }
+    table = new int[this.grounds.length];
+    Arrays.fill(table, -1);
+    table[goal] = 0;
+    int[] queue = new int[table.length];
+    queue[0] = goal;
+    int tail = 1;
+    // EFFECT: goes back from each cell to every cell a box could be pushed to it from
+    for (int head = 0; head < tail; head++) {
+      int to = queue[head];
+      for (Direction direction : Direction.ALL) {
+        int delta = direction.delta(this.stride);
+        int from = to - delta;
+        // EFFECT: walks back from the cell, past every cell the box could slide over to get to it
+        while (!this.blocked[from]) {
+          if (!this.blocked[from - delta] && table[from] == -1) {
+            table[from] = table[to] + 1;
+            queue[tail] = from;
+            tail++;
+          }
+          if (!BoardCodes.slides(this.grounds[from], BoardCodes.BOX)) {
+            break;
+          }
+          from -= delta;
+        }
+      }
+    }
+    this.distances.put(goal, table);
+    return table;
+  }
+
+  // returns the moves that push the box or trophy at the first given position of the given level
+  // to the second given position, walking the player around it as needed, or null if there are
+  // none. EFFECT: forgets the states of the last plan
+  Direction[] plan(Level level, Posn from, Posn to) {
+    if (!level.onBoard(from) || !level.onBoard(to)) {
+      return null;
+    }
+    int box = level.indexOf(from);
+    int goal = level.indexOf(to);
+    byte code = level.contents.get(box);
+    if (BoardCodes.isFixed(code) || BoardCodes.isPlayer(code)) {
+      return null;
+    }
+    if (box == goal) {
+      return new Direction[0];
+    }
+    int[] table = this.distancesTo(goal);
+    int states = level.grounds.size * 4;
+    if (this.pushes.length != states) {
+      this.pushes = new int[states];
+      this.parents = new int[states];
+      this.pushFrom = new int[states];
+      this.walks = new Direction[states][];
+      this.levels = new Level[states];
+    }
+    Arrays.fill(this.pushes, -1);
+
+    // the states to try, as the pushes so far plus the box's distance in the high bits, and the
+    // state in the low bits, so that the one to try next comes first
+    PriorityQueue<Long> open = new PriorityQueue<Long>();
+    this.addStates(level, box, -1, 0, table, open);
+    // EFFECT: makes the most promising push, and adds every state the player can get to after it
+    while (!open.isEmpty()) {
+      int state = (int) (long) open.poll();
+      int boxAt = state / 4;
+      Direction direction = Direction.ALL[state % 4];
+      this.tried++;
+      Level before = this.levels[state];
+      Level moved = before.walk(before.posnOf(this.pushFrom[state]), this.walks[state])
+              .movePlayer(direction);
+      if (moved.contents.get(boxAt) == code) {
+        continue; // the box did not move
+      }
+      int delta = direction.delta(this.stride);
+      int boxTo = boxAt + delta;
+      // EFFECT: follows the box to where it stopped, past the cells it and the player left
+      while (BoardCodes.isVacant(moved.contents.get(boxTo))
+              || BoardCodes.isPlayer(moved.contents.get(boxTo))) {
+        boxTo += delta;
+      }
+      Level pushed = moved.updateLevel();
+      if (BoardCodes.falls(moved.grounds.get(boxTo), code) || pushed.levelLost()) {
+        continue; // the box or the player fell in a Hole
+      }
+      if (boxTo == goal) {
+        return this.moves(state);
+      }
+      this.addStates(pushed, boxTo, state, this.pushes[state], table, open);
+    }
+    return null;
+  }
+
+  // EFFECT: adds to the given states to try every push of the box at the given index of the given
+  // level that the player can walk to, which come after the given state and number of pushes
+  void addStates(Level level, int boxAt, int parent, int pushes, int[] table,
+                 PriorityQueue<Long> open) {
+    if (table[boxAt] == -1) {
+      return;
+    }
+    for (Direction direction : Direction.ALL) {
+      int state = boxAt * 4 + direction.ordinal();
+      if (this.pushes[state] != -1) {
+        continue;
+      }
+      int delta = direction.delta(this.stride);
+      int stand = boxAt - delta;
+      Direction[] walk = this.paths.path(level, level.posnOf(stand));
+      // EFFECT: backs up over the ice that the player would slide across into the box
+      while (walk == null && BoardCodes.slides(level.grounds.get(stand), BoardCodes.PLAYER)
+              && BoardCodes.isVacant(level.contents.get(stand))) {
+        stand -= delta;
+        walk = this.paths.path(level, level.posnOf(stand));
+      }
+      if (walk != null) {
+        this.pushes[state] = pushes + 1;
+        this.parents[state] = parent;
+        this.pushFrom[state] = stand;
+        this.walks[state] = walk;
+        this.levels[state] = level;
+        open.add((long) (pushes + table[boxAt]) << 32 | state);
+      }
+    }
+  }
+
+  // returns every move of the plan that ends with the push of the given state
+  Direction[] moves(int state) {
+    int length = 0;
+    // EFFECT: counts the walk and push of every state of the plan
+    for (int step = state; step != -1; step = this.parents[step]) {
+      length += this.walks[step].length + 1;
+    }
+    Direction[] moves = new Direction[length];
+    // EFFECT: fills in the moves of every state, from the last state back to the first
+    for (int step = state; step != -1; step = this.parents[step]) {
+      length--;
+      moves[length] = Direction.ALL[step % 4];
+      length -= this.walks[step].length;
+      System.arraycopy(this.walks[step], 0, moves, length, this.walks[step].length);
+    }
+    return moves;
+  }
+
+  /* Fields
+   * this.stride - int
+   * this.grounds - byte[]
+   * this.blocked - boolean[]
+   * this.distances - HashMap<Integer, int[]>
+   * this.paths - Pathfinder
+   * this.pushes - int[]
+   * this.parents - int[]
+   * this.pushFrom - int[]
+   * this.walks - Direction[][]
+   * this.levels - Level[]
+   * this.tried - long
+   * Methods
+   * this.distancesTo(int goal) - int[]
+   * this.plan(Level level, Posn from, Posn to) - Direction[]
+   * this.addStates(Level level, int boxAt, int parent, int pushes, int[] table,
+   *                PriorityQueue<Long> open) - void
+   * this.moves(int state) - Direction[]
+   * Methods on Fields
+   * this.paths.path(Level level, Posn to) - Direction[]
+   */
+}
+
+// --------------- DEADLOCKS -----------------------
+
+// Works out which positions of a level can no longer be won because of where the boxes and
+// trophies are, without searching. What never changes about the board (walls, targets, ice) is
+// analysed once when the analysis is made, so that each check afterwards only has to look at the
+// few cells around what was just pushed.
+//
+// A trophy can be pushed from one cell to the next if the player can stand on the cell behind it,
+// and it can keep going from an Ice cell without the player. Holes are treated like any other
+// cell, since they may be filled in before the trophy gets there. A cell is dead for a color if a
+// trophy of that color could never get from it to a Target of that color that way, even with the
+// rest of the board empty: corners, cells along a wall with no Target on that wall, and so on.
+class DeadlockAnalysis {
+  static final int MAX_FROZEN_CHAIN = 64; // the most boxes deep a freeze check looks
+
+  Level start; // the level the analysis was made for
+  byte[] deadColors; // for each cell, a bit set for every color whose trophies are dead there
+  int[] targetCounts; // the number of Targets of each color
+
+  // configures the analysis of the given level
+  DeadlockAnalysis(Level start) {
+    this.start = start;
+    int cells = start.grounds.size;
+    this.deadColors = new byte[cells];
+    this.targetCounts = new int[Palette.size()];
+    // EFFECT: works out the dead cells for every color, one color at a time
+    for (int color = 0; color < this.targetCounts.length; color++) {
+      boolean[] live = this.liveCells(BoardCodes.target(color));
+      // EFFECT: marks every cell that is not live for the color
+      for (int idx = 0; idx < cells; idx++) {
+        if (!live[idx]) {
+          this.deadColors[idx] |= (byte) (1 << color);
+        }
+        if (start.grounds.get(idx) == BoardCodes.target(color)) {
+          this.targetCounts[color]++;
+        }
+      }
+    }
+  }
+
+  // returns, for every cell, whether a trophy there could be moved onto a Target with the given
+  // code, by searching backwards from those Targets
+  boolean[] liveCells(byte target) {
+    boolean[] live = new boolean[this.start.grounds.size];
+    ArrayDeque<Integer> worklist = new ArrayDeque<Integer>();
+    // EFFECT: starts the search from every Target with the given code
+    for (int idx = 0; idx < live.length; idx++) {
+      if (this.start.grounds.get(idx) == target && !this.start.isStaticWall(idx)) {
+        live[idx] = true;
+        worklist.add(idx);
+      }
+    }
+    // EFFECT: marks every cell that a trophy could have been moved from to get to a live cell
+    while (!worklist.isEmpty()) {
+      int to = worklist.removeFirst();
+      for (Direction direction : Direction.ALL) {
+        int from = this.start.neighbor(to, direction.opposite());
+        if (live[from] || this.start.isStaticWall(from)) {
+          continue;
+        }
+        int behind = this.start.neighbor(from, direction.opposite());
+        boolean pushable = !this.start.isStaticWall(behind);
+        if (pushable || this.start.grounds.get(from) == BoardCodes.ICE) {
+          live[from] = true;
+          worklist.add(from);
+        }
+      }
+    }
+    return live;
+  }
+
+  // determines if the given content can never be moved onto a matching Target from the cell at
+  // the given index. Only trophies can be dead
+  boolean isDead(int idx, byte content) {
+    return BoardCodes.isTrophy(content)
+            && (this.deadColors[idx] & (1 << (content - BoardCodes.TROPHY))) != 0;
+  }
+
+  // determines if the content at the given index of the given level is a box or a trophy that can
+  // never be pushed again
+  boolean isFrozen(Level level, int idx) {
+    return this.isFrozen(level, idx, new int[MAX_FROZEN_CHAIN], 0, false);
+  }
+
+  // determines if the content at the given index of the given level is a trophy that can never be
+  // pushed anywhere it could still get to a matching Target from
+  boolean isStuck(Level level, int idx) {
+    return this.isFrozen(level, idx, new int[MAX_FROZEN_CHAIN], 0, true);
+  }
+
+  // determines if the content at the given index of the given level is a box or a trophy that can
+  // never be pushed again, treating the first given number of indices of the given chain as walls.
+  // If deadBlocks, being pushed onto a dead cell counts as not being pushed at all
+  boolean isFrozen(Level level, int idx, int[] chain, int chainLength, boolean deadBlocks) {
+    byte content = level.contents.get(idx);
+    if (BoardCodes.isFixed(content) || BoardCodes.isPlayer(content)
+            || chainLength == chain.length) {
+      return false;
+    }
+    chain[chainLength] = idx;
+    return this.isBlocked(level, idx, content, 1, 0, chain, chainLength + 1, deadBlocks)
+            && this.isBlocked(level, idx, content, 0, 1, chain, chainLength + 1, deadBlocks);
+  }
+
+  // determines if the given content at the given index of the given level can never be pushed
+  // along the axis of the given number of columns and rows, treating the first given number of
+  // indices of the given chain as walls. If deadBlocks, being pushed onto a dead cell counts as
+  // not being pushed at all. The boxes and trophies next to it are only checked for being frozen,
+  // since pushing one of them onto a dead cell still gets it out of the way
+  boolean isBlocked(Level level, int idx, byte content, int dCol, int dRow, int[] chain,
+                    int chainLength, boolean deadBlocks) {
+    int before = level.neighbor(idx, -dCol, -dRow);
+    int after = level.neighbor(idx, dCol, dRow);
+    if (this.start.isStaticWall(before) || this.start.isStaticWall(after)
+            || this.inChain(before, chain, chainLength) || this.inChain(after, chain, chainLength)) {
+      return true; // the player can never stand on one side, or it can never go to that side
+    }
+    if (deadBlocks && this.isDead(before, content) && this.isDead(after, content)) {
+      return true; // it is only ever pushed along this axis onto dead cells
+    }
+    return this.isFrozen(level, before, chain, chainLength, false)
+            || this.isFrozen(level, after, chain, chainLength, false);
+  }
+
+  // determines if the given index is one of the first given number of indices of the given chain
+  boolean inChain(int idx, int[] chain, int chainLength) {
+    // EFFECT: looks for the index in the chain
+    for (int link = 0; link < chainLength; link++) {
+      if (chain[link] == idx) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // determines if the given level can no longer be won: some Target holds a wall or something
+  // frozen that does not belong there, or there are fewer trophies of a color that could still
+  // reach a Target than there are Targets of that color
+  boolean deadlocked(Level level) {
+    int[] liveTrophies = new int[this.targetCounts.length];
+    // EFFECT: checks what is on every target, and counts the trophies that are not stuck
+    for (int idx = 0; idx < level.contents.size; idx++) {
+      byte ground = level.grounds.get(idx);
+      byte content = level.contents.get(idx);
+      boolean home = BoardCodes.won(ground, content) && BoardCodes.isTarget(ground);
+      if (BoardCodes.isTarget(ground) && !home && (content == BoardCodes.WALL
+              || this.isFrozen(level, idx))) {
+        return true;
+      }
+      if (BoardCodes.isTrophy(content) && (home
+              || (!this.isDead(idx, content) && !this.isStuck(level, idx)))) {
+        liveTrophies[content - BoardCodes.TROPHY]++;
+      }
+    }
+    // EFFECT: checks that every color has enough trophies left
+    for (int color = 0; color < liveTrophies.length; color++) {
+      if (liveTrophies[color] < this.targetCounts[color]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // determines if the given level can no longer be won because of something that moved into one
+  // of the given cells, given that the level it moved from could still be won. Only looks at
+  // those cells and their neighbors unless a trophy became stuck
+  boolean deadlockedAfter(Level level, int[] cells) {
+    // EFFECT: checks everything that moved for getting stuck
+    for (int idx : cells) {
+      byte content = level.contents.get(idx);
+      if (BoardCodes.isFixed(content) || BoardCodes.isPlayer(content)) {
+        continue;
+      }
+      byte ground = level.grounds.get(idx);
+      if (BoardCodes.isTarget(ground) && BoardCodes.won(ground, content)) {
+        continue; // on its own Target
+      }
+      if (BoardCodes.isTarget(ground) && this.isFrozen(level, idx)) {
+        return true; // stuck on a Target it does not belong on
+      }
+      if (BoardCodes.isTrophy(content)
+              && (this.isDead(idx, content) || this.isStuck(level, idx))) {
+        return this.deadlocked(level); // stuck, which is only a loss if it was needed
+      }
+    }
+    return false;
+  }
+
+  /* Fields
+   * this.start - Level
+   * this.deadColors - byte[]
+   * this.targetCounts - int[]
+   * Methods
+   * this.liveCells(byte target) - boolean[]
+   * this.isDead(int idx, byte content) - boolean
+   * this.isFrozen(Level level, int idx) - boolean
+   * this.isStuck(Level level, int idx) - boolean
+   * this.isFrozen(Level level, int idx, int[] chain, int chainLength, boolean deadBlocks)
+   *   - boolean
+   * this.isBlocked(Level level, int idx, byte content, int dCol, int dRow, int[] chain,
+   *                int chainLength, boolean deadBlocks) - boolean
+   * this.inChain(int idx, int[] chain, int chainLength) - boolean
+   * this.deadlocked(Level level) - boolean
+   * this.deadlockedAfter(Level level, int[] cells) - boolean
+   * Methods on Fields
+   * this.start.isStaticWall(int idx) - boolean
+   */
+}
+
+// --------------- SOLVER -----------------------
+
+// Represents a level's position as seen by the solver: where the player and every box and trophy
+// are, and which holes have been filled in. Two levels with the same key play out the same way
+class StateKey {
+  int[] cells; // (index << 8 | code) of every movable content, then of every hole's ground
+  int hash; // the hash of the cells, taken from the level's Zobrist hash
+
+  // configures the key of the given level, whose contents are the given codes
+  StateKey(Level level, byte[] contents) {
+    int movables = 0;
+    // EFFECT: counts the contents that can move
+    for (byte content : contents) {
+      if (!BoardCodes.isFixed(content)) {
+        movables++;
+      }
+    }
+    this.cells = new int[movables + level.holes.length];
+    int cell = 0;
+    // EFFECT: packs every content that can move into the key, in order of index
+    for (int idx = 0; idx < contents.length; idx++) {
+      if (!BoardCodes.isFixed(contents[idx])) {
+        this.cells[cell] = idx << 8 | contents[idx];
+        cell++;
+      }
+    }
+    // EFFECT: packs whether each hole is still a hole into the key
+    for (int hole : level.holes) {
+      this.cells[cell] = hole << 8 | level.grounds.get(hole);
+      cell++;
+    }
+    this.hash = Long.hashCode(level.hash);
   }
 
-  // Determines if this level is won. A level is won when all the Targets have
-  // their corresponding trophy on them.
-  boolean levelWon() {
-    // EFFECT: Determines if every row in the board is won
-    for (ArrayList<Cell> row : this.board) {
-      // EFFECT: Determines if every cell in the given row is won
-      for (Cell cell : row) {
-        if (!cell.cellWon()) {
-          return false;
+  // determines if this key is the same as the given object
+  public boolean equals(Object other) {
+    return other instanceof StateKey && ((StateKey) other).hash == this.hash
+            && Arrays.equals(((StateKey) other).cells, this.cells);
+  }
+
+  // returns the hash of this key
+  public int hashCode() {
+    return this.hash;
+  }
+
+  /* Fields
+   * this.cells - int[]
+   * this.hash - int
+   * Methods
+   * this.equals(Object other) - boolean
+   * this.hashCode() - int
+   * Methods on Fields
+   */
+}
+
+// Represents a level reached during a search, along with how it was reached
+class SearchNode {
+  Level level; // the level at this node
+  StateKey key; // the key of the level
+  int moves; // the number of moves made to get here
+  int estimate; // the solver's lower bound on the moves left from here to a win
+  SearchNode parent; // the node this one was reached from, or null for the starting level
+  Direction direction; // the direction moved from the parent to reach this node
+
+  SearchNode(Level level, StateKey key, int moves, int estimate, SearchNode parent,
+             Direction direction) {
+    this.level = level;
+    this.key = key;
+    this.moves = moves;
+    this.estimate = estimate;
+    this.parent = parent;
+    this.direction = direction;
+  }
+
+  // returns the directions moved to reach this node from the starting level, in order
+  ArrayList<String> path() {
+    ArrayList<String> path = new ArrayList<String>();
+    // EFFECT: adds the direction of every node on the way back to the start, latest first
+    for (SearchNode node = this; node.parent != null; node = node.parent) {
+      path.add(0, node.direction.label);
+    }
+    return path;
+  }
+
+  /* Fields
+   * this.level - Level
+   * this.key - StateKey
+   * this.moves - int
+   * this.estimate - int
+   * this.parent - SearchNode
+   * this.direction - Direction
+   * Methods
+   * this.path() - ArrayList<String>
+   * Methods on Fields
+   */
+}
+
+// Represents the outcome of a solver run: the moves that win the level if one was found, and how
+// much searching it took to get there
+class SolverResult {
+  String mode; // the search that was run
+  boolean solved; // whether a winning sequence of moves was found
+  ArrayList<String> moves; // the winning moves, in order, or empty if not solved
+  int pushes; // how many of the winning moves pushed something
+  long nodes; // the number of levels expanded during the search
+  long nanos; // how long the search took
+
+  SolverResult(String mode, boolean solved, ArrayList<String> moves, int pushes, long nodes,
+               long nanos) {
+    this.mode = mode;
+    this.solved = solved;
+    this.moves = moves;
+    this.pushes = pushes;
+    this.nodes = nodes;
+    this.nanos = nanos;
+  }
+
+  // returns how many nodes the search expanded per second
+  long nodesPerSecond() {
+    return this.nodes * 1000000000L / Math.max(1, this.nanos);
+  }
+
+  // returns a one line summary of this result
+  String report() {
+    String outcome = this.solved
+            ? "solved in " + this.moves.size() + " moves (" + this.pushes + " pushes)"
+            : "not solved";
+    return this.mode + ": " + outcome + ", " + this.nodes + " nodes in "
+            + (this.nanos / 1000) + " us (" + this.nodesPerSecond() + " nodes/s)";
+  }
+
+  /* Fields
+   * this.mode - String
+   * this.solved - boolean
+   * this.moves - ArrayList<String>
+   * this.pushes - int
+   * this.nodes - long
+   * this.nanos - long
+   * Methods
+   * this.nodesPerSecond() - long
+   * this.report() - String
+   * Methods on Fields
+   */
+}
+
+// Finds the fewest moves that win a level, by searching over the levels that Level.movePlayer
+// and Level.updateLevel make, so the solver plays by exactly the same rules as the game.
+//
+// The search is guided by a lower bound on the moves left: every Target without its trophy
+// needs a trophy of its color moved onto it, and one key press moves trophies off of at most one
+// non-ice cell between them (a trophy that leaves an ice cell is sliding, or is being pushed by a
+// sliding player, and that is free). So the sum over those Targets of the fewest non-ice cells
+// any trophy of the right color would have to leave to get there, going around walls, never
+// overestimates the moves left.
+class SokobanSolver {
+  Level start; // the level to solve
+  int[][] targetDistances; // for each target, the cost of reaching it from every cell
+  int[] targets; // the index of every target on the starting board
+  byte[] targetTrophies; // the code of the trophy that belongs on each target
+  DeadlockAnalysis deadlocks; // what never changes about which positions can still be won
+  static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+  // configures a solver for the given level
+  SokobanSolver(Level start) {
+    this.start = start;
+    this.deadlocks = new DeadlockAnalysis(start);
+    ArrayList<Integer> targetList = new ArrayList<Integer>();
+    // EFFECT: finds every target on the board
+    for (int idx = 0; idx < start.grounds.size; idx++) {
+      if (BoardCodes.isTarget(start.grounds.get(idx))) {
+        targetList.add(idx);
+      }
+    }
+    this.targets = new int[targetList.size()];
+    this.targetTrophies = new byte[targetList.size()];
+    this.targetDistances = new int[targetList.size()][];
+    // EFFECT: works out the cost of reaching each target from every cell
+    for (int target = 0; target < this.targets.length; target++) {
+      this.targets[target] = targetList.get(target);
+      this.targetTrophies[target] = BoardCodes.trophy(
+              start.grounds.get(this.targets[target]) - BoardCodes.TARGET);
+      this.targetDistances[target] = this.distancesTo(this.targets[target]);
+    }
+  }
+
+  // returns, for every cell, the fewest non-ice cells a trophy starting there has to leave to
+  // reach the given index without going through a wall
+  int[] distancesTo(int goal) {
+    int[] distances = new int[this.start.grounds.size];
+    Arrays.fill(distances, UNREACHABLE);
+    ArrayDeque<Integer> worklist = new ArrayDeque<Integer>();
+    distances[goal] = 0;
+    worklist.add(goal);
+
+    // EFFECT: works backwards from the goal, trying every cell a trophy could have come from.
+    //         Leaving an ice cell is free, so those cells go to the front of the worklist
+    while (!worklist.isEmpty()) {
+      int idx = worklist.removeFirst();
+      for (Direction direction : Direction.ALL) {
+        int from = this.start.neighbor(idx, direction);
+        if (this.start.isStaticWall(from)) {
+          continue;
+        }
+        boolean free = this.start.grounds.get(from) == BoardCodes.ICE;
+        int distance = distances[idx] + (free ? 0 : 1);
+        if (distance < distances[from]) {
+          distances[from] = distance;
+          if (free) {
+            worklist.addFirst(from);
+          } else {
+            worklist.addLast(from);
+          }
         }
       }
     }
-    return true;
+    return distances;
   }
 
-  // Determines if this level has been lost
-  boolean levelLost() {
-    // EFFECT: Determines if any cell in the board is lost
-    for (ArrayList<Cell> row : this.board) {
-      // EFFECT: Determines if any cell in the given row is lost
-      for (Cell cell : row) {
-        if (!cell.cellLost()) {
-          return false;
+  // returns a lower bound on the moves left to win a level whose contents are the given codes,
+  // or UNREACHABLE if it can never be won
+  int estimate(byte[] contents) {
+    int total = 0;
+    // EFFECT: adds on the cost of getting a trophy to every target that does not have its trophy
+    for (int target = 0; target < this.targets.length; target++) {
+      byte trophy = this.targetTrophies[target];
+      if (contents[this.targets[target]] == trophy) {
+        continue;
+      }
+      int best = UNREACHABLE;
+      // EFFECT: finds the closest trophy of the target's color
+      for (int idx = 0; idx < contents.length; idx++) {
+        if (contents[idx] == trophy) {
+          best = Math.min(best, this.targetDistances[target][idx]);
         }
       }
+      if (best == UNREACHABLE) {
+        return UNREACHABLE;
+      }
+      total += best;
     }
-    return true;
+    return total;
   }
 
-  // creates a new level with the player and pushable moved in a given direction if possible
-  Level movePlayer(String direction) {
-    Posn moveToPos = this.playerPos.movePosn(direction); // pos of where player is moving to
-    Posn pushToPos = moveToPos.movePosn(direction); // pos of where pushable is moving to
+  // returns a search node for the given level, reached from the given parent by moving in the
+  // given direction
+  SearchNode node(Level level, SearchNode parent, Direction direction) {
+    byte[] contents = level.contents.toArray();
+    return new SearchNode(level, new StateKey(level, contents),
+            parent == null ? 0 : parent.moves + 1, this.estimate(contents), parent, direction);
+  }
 
-    Cell playerCell = this.findCell(this.playerPos);
-    Cell pushableCell = this.findCell(moveToPos);
+  // returns the level that moving in the given direction from the given level makes, or null if
+  // that move does nothing, loses the level, or leaves it in a deadlock
+  Level successor(Level level, Direction direction) {
+    Level moved = level.movePlayer(direction);
+    if (moved == level) {
+      return null;
+    }
+    Level updated = moved.updateLevel();
+    if (updated.levelLost()
+            || this.deadlocks.deadlockedAfter(updated, MoveDelta.between(level, updated).cells)) {
+      return null;
+    }
+    return updated;
+  }
 
-    if (pushableCell.canMoveTo(pushToPos, this)){ // can push implies can move
-      return this.switchContents(pushToPos, moveToPos, this.playerPos, this, this.steps)
-              .switchContents(moveToPos, this.playerPos, moveToPos, this, this.steps + 1)
-              .slideContent(pushToPos, direction)
-              .slidePlayer(moveToPos, direction);
+  // returns the number of the given moves that push something, when made from the starting level
+  int countPushes(ArrayList<String> moves) {
+    int pushes = 0;
+    Level level = this.start;
+    // EFFECT: makes every move, counting the ones that change more than the player's two cells
+    for (String direction : moves) {
+      Level next = level.movePlayer(direction).updateLevel();
+      if (MoveDelta.between(level, next).cells.length > 2) {
+        pushes++;
+      }
+      level = next;
     }
+    return pushes;
+  }
 
-    if (playerCell.canMoveTo(moveToPos, this)) { // cannot push but can move
-      return this.switchContents(moveToPos, this.playerPos, moveToPos, this, this.steps + 1)
-              .slideContent(pushToPos, direction)
-              .slidePlayer(moveToPos, direction);
+  // returns the result of an A* search for the fewest moves that win the starting level,
+  // giving up after expanding the given number of nodes
+  SolverResult solveAStar(long nodeLimit) {
+    long startTime = System.nanoTime();
+    long nodes = 0;
+    PriorityQueue<SearchNode> frontier = new PriorityQueue<SearchNode>(new SearchNodeOrder());
+    HashMap<StateKey, Integer> bestMoves = new HashMap<StateKey, Integer>();
+    SearchNode root = this.node(this.start, null, null);
+    frontier.add(root);
+    bestMoves.put(root.key, 0);
+
+    // EFFECT: expands the most promising node until a winning level is found, the frontier runs
+    //         out, or the node limit is reached
+    while (!frontier.isEmpty() && nodes < nodeLimit) {
+      SearchNode node = frontier.poll();
+      if (bestMoves.get(node.key) < node.moves) {
+        continue; // a shorter way to this level was found after this node was added
+      }
+      if (node.level.levelWon()) {
+        ArrayList<String> moves = node.path();
+        return new SolverResult("A*", true, moves, this.countPushes(moves), nodes,
+                System.nanoTime() - startTime);
+      }
+      nodes++;
+      // EFFECT: adds every level one move away that has not been reached in as few moves
+      for (Direction direction : Direction.ALL) {
+        Level next = this.successor(node.level, direction);
+        if (next == null) {
+          continue;
+        }
+        SearchNode child = this.node(next, node, direction);
+        Integer known = bestMoves.get(child.key);
+        if ((known != null && known <= child.moves) || child.estimate == UNREACHABLE) {
+          continue;
+        }
+        bestMoves.put(child.key, child.moves);
+        frontier.add(child);
+      }
     }
+    return new SolverResult("A*", false, new ArrayList<String>(), 0, nodes,
+            System.nanoTime() - startTime);
+  }
 
-    return this; // cannot push, cannot move
+  // returns the result of an IDA* search for the fewest moves that win the starting level,
+  // giving up after expanding the given number of nodes
+  SolverResult solveIdaStar(long nodeLimit) {
+    long startTime = System.nanoTime();
+    IdaSearch search = new IdaSearch(this, nodeLimit);
+    SearchNode root = this.node(this.start, null, null);
+    int bound = root.estimate;
+
+    // EFFECT: searches deeper and deeper, raising the bound to the smallest estimate that went
+    //         over it, until a win is found or the level is shown to be unwinnable
+    while (bound < UNREACHABLE && search.nodes < nodeLimit) {
+      search.bestMoves.clear();
+      SearchNode win = search.search(root, bound);
+      if (win != null) {
+        ArrayList<String> moves = win.path();
+        return new SolverResult("IDA*", true, moves, this.countPushes(moves), search.nodes,
+                System.nanoTime() - startTime);
+      }
+      bound = search.nextBound;
+    }
+    return new SolverResult("IDA*", false, new ArrayList<String>(), 0, search.nodes,
+            System.nanoTime() - startTime);
   }
 
+  /* Fields
+   * this.start - Level
+   * this.targetDistances - int[][]
+   * this.targets - int[]
+   * this.targetTrophies - byte[]
+   * this.deadlocks - DeadlockAnalysis
+   * Methods
+   * this.distancesTo(int goal) - int[]
+   * this.estimate(byte[] contents) - int
+   * this.node(Level level, SearchNode parent, Direction direction) - SearchNode
+   * this.successor(Level level, Direction direction) - Level
+   * this.countPushes(ArrayList<String> moves) - int
+   * this.solveAStar(long nodeLimit) - SolverResult
+   * this.solveIdaStar(long nodeLimit) - SolverResult
+   * Methods on Fields
+   * this.start.isStaticWall(int idx) - boolean
+   */
+}
 
-  // creates a new Level with the contents at the two given positions switched
-  Level switchContents(Posn pos1, Posn pos2, Posn playerPos, Level prevLevel, int steps) {
-    ArrayList<ArrayList<Cell>> newBoard = new ArrayList<>();
-    Cell cell1 = findCell(pos1);
-    Cell cell2 = findCell(pos2);
-
-    // EFFECT: populates a new board with the contents at the given positions switched
-    for (int row = 0; row < this.board.size(); row++) {
-      ArrayList<Cell> newRow = new ArrayList<>();
-
-      // EFFECT: populates a new row with the contents at the given positions switched
-      for (int col = 0; col < this.board.get(0).size(); col++) {
-        Posn pos = new Posn(col, row); // the current position
-        Cell oldCell = this.board.get(row).get(col); // the cell at the current position
-
-        if (pos.samePosn(pos1)) {
-          newRow.add(new Cell(oldCell.ground, cell2.content)); // add cell2 content at cell1 pos
-        } else if (pos.samePosn(pos2)) {
-          newRow.add(new Cell(oldCell.ground, cell1.content)); // add cell1 content at cell2 pos
-        } else {
-          newRow.add(oldCell);
-        }
+// Orders search nodes by their total estimate of moves, breaking ties in favor of the node that
+// is estimated to be closer to a win
+class SearchNodeOrder implements Comparator<SearchNode> {
+  // compares the two given nodes
+  public int compare(SearchNode node1, SearchNode node2) {
+    int total1 = node1.moves + node1.estimate;
+    int total2 = node2.moves + node2.estimate;
+    if (total1 != total2) {
+      return Integer.compare(total1, total2);
+    }
+    return Integer.compare(node1.estimate, node2.estimate);
+  }
+}
+
+// Represents one depth-first pass of an IDA* search, which only follows moves whose total
+// estimate stays within a bound
+class IdaSearch {
+  SokobanSolver solver; // the solver this search is for
+  long nodeLimit; // the most nodes to expand across every pass
+  long nodes; // the nodes expanded so far across every pass
+  int nextBound; // the smallest total estimate that went over this pass's bound
+  TranspositionTable bestMoves; // the fewest moves each level was reached in this pass
+
+  IdaSearch(SokobanSolver solver, long nodeLimit) {
+    this.solver = solver;
+    this.nodeLimit = nodeLimit;
+    this.nodes = 0;
+    this.nextBound = SokobanSolver.UNREACHABLE;
+    this.bestMoves = new TranspositionTable(18);
+  }
+
+  // returns a winning node reachable from the given node within the given bound, or null if
+  // there is none. EFFECT: lowers nextBound to the smallest total estimate over the bound
+  SearchNode search(SearchNode node, int bound) {
+    if (node.moves == 0) {
+      this.nextBound = SokobanSolver.UNREACHABLE;
+    }
+    int total = node.moves + node.estimate;
+    if (total > bound) {
+      this.nextBound = Math.min(this.nextBound, total);
+      return null;
+    }
+    if (node.level.levelWon()) {
+      return node;
+    }
+    int known = this.bestMoves.probe(node.level.hash);
+    if ((known != TranspositionTable.MISSING && known <= node.moves)
+            || this.nodes >= this.nodeLimit) {
+      return null;
+    }
+    this.bestMoves.store(node.level.hash, node.moves, bound - node.moves);
+    this.nodes++;
+
+    // EFFECT: searches below every level one move away
+    for (Direction direction : Direction.ALL) {
+      Level next = this.solver.successor(node.level, direction);
+      if (next == null) {
+        continue;
+      }
+      SearchNode child = this.solver.node(next, node, direction);
+      if (child.estimate == SokobanSolver.UNREACHABLE) {
+        continue;
+      }
+      SearchNode win = this.search(child, bound);
+      if (win != null) {
+        return win;
       }
-      newBoard.add(newRow);
     }
+    return null;
+  }
+
+  /* Fields
+   * this.solver - SokobanSolver
+   * this.nodeLimit - long
+   * this.nodes - long
+   * this.nextBound - int
+   * this.bestMoves - TranspositionTable
+   * Methods
+   * this.search(SearchNode node, int bound) - SearchNode
+   * Methods on Fields
+   * this.solver.successor(Level level, Direction direction) - Level
+   * this.solver.node(Level level, SearchNode parent, Direction direction) - SearchNode
+   */
+}
 
-    return new Level(newBoard, playerPos, prevLevel, steps);
+// --------------- VALIDATION -----------------------
+
+// Represents what a LevelValidator found wrong with one level: a list of problems, each with a
+// short code a program can match on and a message for people, and the length of its solution if
+// it was solved
+class LevelReport {
+  String source; // the name of the pack the level is in
+  int index; // the index of the level in its pack
+  ArrayList<String> codes; // the code of every problem
+  ArrayList<String> messages; // the message of every problem
+  int solution; // the number of moves in the solution found, or -1 if none was looked for or found
+
+  LevelReport(String source, int index) {
+    this.source = source;
+    this.index = index;
+    this.codes = new ArrayList<String>();
+    this.messages = new ArrayList<String>();
+    this.solution = -1;
+  }
 
-    /*
-     * pos1.movePosn(String direction) - Posn
-     * pos1.withinBounds(Posn topLeft, Posn bottomRight) - boolean
-     * pos1.samePosn(Posn pos) - boolean
-     * pos2.movePosn(String direction) - Posn
-     * pos2.withinBounds(Posn topLeft, Posn bottomRight) - boolean
-     * pos2.samePosn(Posn pos) - boolean
-     */
+  // EFFECT: adds a problem with the given code and message to this report
+  void problem(String code, String message) {
+    this.codes.add(code);
+    this.messages.add(message);
   }
 
-  // creates a new level with all of its cells updated
-  Level updateLevel() {
-    ArrayList<ArrayList<Cell>> newBoard = new ArrayList<>();
-
-    // EFFECT: populates a new board to account for any object on a hole
-    for (ArrayList<Cell> row : this.board) {
-      ArrayList<Cell> newRow = new ArrayList<>();
-      // EFFECT: populates a new row in the board to account for any object on a hole
-      for (Cell cell : row) {
-        if (cell.cellFall()) {
-          newRow.add(new Cell(new Normal(), new Blank()));
-        } else {
-          newRow.add(cell);
-        }
+  // determines if the level has no problems
+  boolean valid() {
+    return this.codes.isEmpty();
+  }
+
+  // returns this report as a JSON object on one line
+  String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"source\":").append(LevelReport.quote(this.source))
+            .append(",\"index\":").append(this.index)
+            .append(",\"valid\":").append(this.valid())
+            .append(",\"solution\":").append(this.solution)
+            .append(",\"problems\":[");
+    // EFFECT: adds every problem
+    for (int problem = 0; problem < this.codes.size(); problem++) {
+      json.append(problem == 0 ? "" : ",")
+              .append("{\"code\":").append(LevelReport.quote(this.codes.get(problem)))
+              .append(",\"message\":").append(LevelReport.quote(this.messages.get(problem)))
+              .append("}");
+    }
+    return json.append("]}").toString();
+  }
+
+  // returns the given text as a JSON string
+  static String quote(String text) {
+    StringBuilder quoted = new StringBuilder("\"");
+    // EFFECT: escapes every character JSON does not allow in a string as it is
+    for (int charIdx = 0; charIdx < text.length(); charIdx++) {
+      char character = text.charAt(charIdx);
+      if (character == '"' || character == '\\') {
+        quoted.append('\\').append(character);
+      } else if (character < ' ') {
+        quoted.append(String.format("\\u%04x", (int) character));
+      } else {
+        quoted.append(character);
       }
-      newBoard.add(newRow);
     }
+    return quoted.append('"').toString();
+  }
+
+  /* Fields
+   * this.source - String
+   * this.index - int
+   * this.codes - ArrayList<String>
+   * this.messages - ArrayList<String>
+   * this.solution - int
+   * Methods
+   * this.problem(String code, String message) - void
+   * this.valid() - boolean
+   * this.toJson() - String
+   * this.quote(String text) - String
+   * Methods on Fields
+   */
+}
 
-    return new Level(newBoard, this.playerPos, this.prevLevel, this.steps);
+// Checks every level in a pack, or in every .xsb pack in a directory, for the problems that would
+// otherwise only show up in play. The checks, each with the code of its problems, are:
+//   structure - the level's rows cannot be read (bad characters, no player, ...)
+//   players - there is more than one player, and only the first one would ever move
+//   colors - there are fewer trophies of a color than Targets of that color
+//   reach - a trophy can never be pushed onto a Target of its color
+//   deadlock - the level cannot be won from the start
+//   unsolved - the solver found no solution within its budget, if it was given one
+// The levels are checked at the same time on a fork-join pool, each task splitting its levels in
+// half until it has few enough to check itself
+class LevelValidator {
+  static final int LEAF_LEVELS = 8; // the most levels a task checks without splitting
+
+  ArrayList<String> names; // the name of every pack
+  ArrayList<LevelPack> packs;
+  int[] firsts; // the index, over every pack, of the first level of each pack
+  int size; // the number of levels in every pack
+  long solveBudget; // the most nodes the solver may expand on a level, or 0 to not solve
+
+  // makes a validator for the pack in the given file, or for every .xsb pack in the given
+  // directory, that solves each level within the given number of nodes, or not at all if it is 0
+  LevelValidator(File path, long solveBudget) {
+    File[] files = path.isDirectory()
+            ? path.listFiles((dir, name) -> name.endsWith(".xsb")) : new File[]{path};
+    Arrays.sort(files);
+    this.names = new ArrayList<String>();
+    this.packs = new ArrayList<LevelPack>();
+    this.firsts = new int[files.length];
+    this.size = 0;
+    // EFFECT: opens every pack, counting the levels before it
+    for (int pack = 0; pack < files.length; pack++) {
+      this.names.add(files[pack].getName());
+      this.packs.add(new LevelPack(files[pack]));
+      this.firsts[pack] = this.size;
+      this.size += this.packs.get(pack).size();
+    }
+    this.solveBudget = solveBudget;
   }
 
-  // rewinds the game by one step (increases the player's score)
-  Level undoMove() {
-    return this.prevLevel.updateScore(this.steps + 1);
+  // returns the report of the level with the given index over every pack
+  LevelReport validate(int level) {
+    int pack = Arrays.binarySearch(this.firsts, level);
+    // EFFECT: skips back over empty packs to the last pack that starts at or before the level
+    pack = pack < 0 ? -pack - 2 : pack;
+    while (pack + 1 < this.firsts.length && this.firsts[pack + 1] <= level) {
+      pack++;
+    }
+    int index = level - this.firsts[pack];
+    LevelReport report = new LevelReport(this.names.get(pack), index);
+    try {
+      this.check(LevelPack.parse(this.packs.get(pack).rows(index)), report);
+    } catch (IllegalArgumentException e) {
+      report.problem("structure", e.getMessage());
+    }
+    return report;
   }
 
-  // updates this level's score to the given score
-  Level updateScore(int score) {
-    return new Level(this.board, this.playerPos, this.prevLevel, score);
+  // EFFECT: adds every problem with the given level to the given report
+  void check(Level level, LevelReport report) {
+    int players = 0;
+    int[] targets = new int[Palette.size()];
+    int[] trophies = new int[Palette.size()];
+    // EFFECT: counts the players, and the targets and trophies of every color
+    for (int idx = 0; idx < level.contents.size; idx++) {
+      byte ground = level.grounds.get(idx);
+      byte content = level.contents.get(idx);
+      players += BoardCodes.isPlayer(content) ? 1 : 0;
+      if (BoardCodes.isTarget(ground)) {
+        targets[ground - BoardCodes.TARGET]++;
+      }
+      if (BoardCodes.isTrophy(content)) {
+        trophies[content - BoardCodes.TROPHY]++;
+      }
+    }
+    if (players > 1) {
+      report.problem("players", players + " players, but only the first one moves");
+    }
+    // EFFECT: checks that there are enough trophies of every color
+    for (int color = 0; color < targets.length; color++) {
+      if (trophies[color] < targets[color]) {
+        report.problem("colors", trophies[color] + " " + Palette.name(color)
+                + " trophies for " + targets[color] + " " + Palette.name(color) + " targets");
+      }
+    }
+
+    DeadlockAnalysis deadlocks = new DeadlockAnalysis(level);
+    // EFFECT: checks that every trophy can still reach a target of its color
+    for (int idx = 0; idx < level.contents.size; idx++) {
+      byte content = level.contents.get(idx);
+      if (deadlocks.isDead(idx, content)) {
+        String color = Palette.name(content - BoardCodes.TROPHY);
+        report.problem("reach", "the " + color + " trophy at " + level.posnOf(idx)
+                + " can never reach a " + color + " target");
+      }
+    }
+    if (report.valid() && deadlocks.deadlocked(level)) {
+      report.problem("deadlock", "the level cannot be won from the start");
+    }
+
+    if (report.valid() && this.solveBudget > 0) {
+      SolverResult result = new SokobanSolver(level).solveAStar(this.solveBudget);
+      if (result.solved) {
+        report.solution = result.moves.size();
+      } else {
+        report.problem("unsolved", "no solution within " + this.solveBudget + " nodes");
+      }
+    }
   }
 
-  // TODO test, templates,
-  // slides a moveable content at the given pos in the given direction if possible
-  Level slideContent(Posn pos, String direction) {
-    Posn slideToPos = pos.movePosn(direction);
-    Cell slideCell = this.findCell(pos);
+  // returns the report of every level, in order, checking them on the given number of threads
+  LevelReport[] validateAll(int threads) {
+    LevelReport[] reports = new LevelReport[this.size];
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(new ValidationTask(this, reports, 0, this.size));
+    } finally {
+      pool.shutdown();
+    }
+    return reports;
+  }
 
-    if (slideCell.canMoveTo(slideToPos, this) && slideCell.cellSlide()) {
-      return this.switchContents(pos, slideToPos, this.playerPos, this.prevLevel, this.steps)
-              .slideContent(slideToPos, direction);
+  // returns the given reports as one JSON object, with a line for each report
+  static String toJson(LevelReport[] reports) {
+    int valid = 0;
+    StringBuilder lines = new StringBuilder();
+    // EFFECT: counts the valid levels and adds every report
+    for (int report = 0; report < reports.length; report++) {
+      valid += reports[report].valid() ? 1 : 0;
+      lines.append(report == 0 ? "\n  " : ",\n  ").append(reports[report].toJson());
     }
+    return "{\"levels\":" + reports.length + ",\"valid\":" + valid + ",\"invalid\":"
+            + (reports.length - valid) + ",\"reports\":[" + lines + "\n]}";
+  }
 
-    return this;
+  // EFFECT: checks the pack or directory of packs named by the first argument, solving each level
+  // within the number of nodes in the second argument if there is one, and prints the report as
+  // JSON. Exits with 1 if any level has a problem
+  public static void main(String[] args) {
+    if (args.length == 0) {
+      System.err.println("usage: LevelValidator <pack or directory> [solver node budget]");
+      System.exit(2);
+    }
+    long budget = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    LevelValidator validator = new LevelValidator(new File(args[0]), budget);
+    LevelReport[] reports = validator.validateAll(Runtime.getRuntime().availableProcessors());
+    System.out.println(LevelValidator.toJson(reports));
+    // EFFECT: exits with 1 at the first level with a problem
+    for (LevelReport report : reports) {
+      if (!report.valid()) {
+        System.exit(1);
+      }
+    }
   }
 
-  // slides a player content at the given pos in the given direction if possible
-  Level slidePlayer(Posn playerPos, String direction) {
-    Posn slideToPos = playerPos.movePosn(direction);
-    Posn pushToPos = slideToPos.movePosn(direction);
+  /* Fields
+   * this.names - ArrayList<String>
+   * this.packs - ArrayList<LevelPack>
+   * this.firsts - int[]
+   * this.size - int
+   * this.solveBudget - long
+   * Methods
+   * this.validate(int level) - LevelReport
+   * this.check(Level level, LevelReport report) - void
+   * this.validateAll(int threads) - LevelReport[]
+   * this.toJson(LevelReport[] reports) - String
+   * this.main(String[] args) - void
+   * Methods on Fields
+   */
+}
+
+// Checks the levels of a validator from a start index up to but not including an end index,
+// splitting them between two tasks when there are more than LevelValidator.LEAF_LEVELS
+class ValidationTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+
+  LevelValidator validator;
+  LevelReport[] reports; // where the report of each level goes, at its index
+  int start;
+  int end;
+
+  ValidationTask(LevelValidator validator, LevelReport[] reports, int start, int end) {
+    this.validator = validator;
+    this.reports = reports;
+    this.start = start;
+    this.end = end;
+  }
+
+  // EFFECT: checks this task's levels, or splits them in half and checks both halves at once
+  protected void compute() {
+    if (this.end - this.start <= LevelValidator.LEAF_LEVELS) {
+      // EFFECT: checks every level
+      for (int level = this.start; level < this.end; level++) {
+        this.reports[level] = this.validator.validate(level);
+      }
+    } else {
+      int middle = (this.start + this.end) >>> 1;
+      ForkJoinTask.invokeAll(new ValidationTask(this.validator, this.reports, this.start, middle),
+              new ValidationTask(this.validator, this.reports, middle, this.end));
+    }
+  }
+
+  /* Fields
+   * this.validator - LevelValidator
+   * this.reports - LevelReport[]
+   * this.start - int
+   * this.end - int
+   * Methods
+   * this.compute() - void
+   * Methods on Fields
+   * this.validator.validate(int level) - LevelReport
+   */
+}
+
+// --------------- METRICS -----------------------
+
+// The parts of the game loop that are timed
+enum Phase {
+  KEY("key"), // handling a key, including every phase below it
+  MOVE("move"), // moving the player
+  HOLES("holes"), // updating the level after a move, which fills the holes
+  WIN_LOSS("win/loss"), // checking whether the game is won, lost or deadlocked
+  CLICK("click"), // handling a click or a drag, including finding its walk or plan
+  PATH("path"), // finding the walk to a clicked cell
+  PLAN("plan"), // planning the pushes for a dragged box or trophy
+  SCENE("scene"); // making the scene of a frame
+
+  final String label;
+
+  Phase(String label) {
+    this.label = label;
+  }
+}
+
+// Receives how long each phase of the game loop took and how many bytes it allocated
+interface MetricsSink {
+  // EFFECT: records one run of the given phase
+  void record(Phase phase, long nanos, long bytes);
+}
+
+// Times the phases of the game loop when a sink is installed, and does nothing but read one field
+// when none is. A phase is timed as
+//   long started = Metrics.nanos();
+//   long allocated = Metrics.bytes();
+//   ... the phase ...
+//   Metrics.record(Phase.MOVE, started, allocated);
+class Metrics {
+  static final com.sun.management.ThreadMXBean THREADS =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  static volatile MetricsSink sink = null; // where phases are recorded, or null to not record
+
+  // EFFECT: sends every phase recorded from now on to the given sink, or stops recording if it is
+  // null
+  static void install(MetricsSink newSink) {
+    sink = newSink;
+  }
+
+  // returns the time now if phases are being recorded, or 0 if not
+  static long nanos() {
+    return sink == null ? 0 : System.nanoTime();
+  }
+
+  // returns the number of bytes this thread has allocated if phases are being recorded, or 0 if not
+  static long bytes() {
+    return sink == null ? 0 : Metrics.allocatedBytes();
+  }
 
-    Cell playerCell = this.findCell(playerPos);
-    Cell pushableCell = this.findCell(slideToPos);
+  // returns the number of bytes this thread has allocated so far
+  static long allocatedBytes() {
+    return THREADS.getCurrentThreadAllocatedBytes();
+  }
 
-    if (pushableCell.canMoveTo(pushToPos, this)  && playerCell.cellSlide()) {
-      return this.switchContents(pushToPos, slideToPos, playerPos, this.prevLevel, this.steps)
-              .switchContents(playerPos, slideToPos, slideToPos, this.prevLevel, this.steps)
-              .slidePlayer(slideToPos, direction);
+  // EFFECT: records the given phase, which started at the given time with the given number of
+  // bytes allocated, if phases are being recorded
+  static void record(Phase phase, long started, long allocated) {
+    MetricsSink current = sink;
+    if (current != null) {
+      current.record(phase, System.nanoTime() - started, Metrics.allocatedBytes() - allocated);
     }
+  }
+}
+
+// Counts values in buckets that are exact below 32 and cover a range 1/16 as wide as their values
+// above it, the way HDR histograms do, so any value from a nanosecond to centuries is kept to
+// within about 6%. Values can be recorded from any number of threads at once without locking
+class LatencyHistogram {
+  static final int EXACT = 32; // the values below this each have their own bucket
+  static final int SUB_BUCKETS = 16; // the buckets between each power of two above EXACT
+  static final int BUCKETS = EXACT + 58 * SUB_BUCKETS; // enough for every positive long
+
+  AtomicLongArray counts;
+  LongAdder total; // the sum of every value recorded
+  LongAccumulator max; // the biggest value recorded
+
+  LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.total = new LongAdder();
+    this.max = new LongAccumulator(Math::max, 0);
+  }
 
-    if (playerCell.canMoveTo(slideToPos, this) && playerCell.cellSlide()) {
-      return this.switchContents(playerPos, slideToPos, slideToPos, this.prevLevel, this.steps)
-              .slidePlayer(slideToPos, direction);
+  // returns the bucket of the given value, which is treated as 0 if it is negative
+  static int bucket(long value) {
+    if (value < EXACT) {
+      return (int) Math.max(0, value);
     }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - 4; // keeps the 5 highest bits
+    return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
 
-    return this;
+  // returns the biggest value in the given bucket
+  static long highest(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+    long sub = (bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
   }
 
-  // todo fix out of bounds?
+  // EFFECT: counts the given value
+  void record(long value) {
+    this.counts.incrementAndGet(LatencyHistogram.bucket(value));
+    this.total.add(value);
+    this.max.accumulate(value);
+  }
 
+  // returns the number of values recorded
+  long count() {
+    long count = 0;
+    // EFFECT: adds up every bucket
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      count += this.counts.get(bucket);
+    }
+    return count;
+  }
 
+  // returns the highest value in the bucket that the given percentile of values are at or below,
+  // or 0 if nothing has been recorded
+  long percentile(double percentile) {
+    long wanted = (long) Math.ceil(this.count() * percentile / 100);
+    long seen = 0;
+    // EFFECT: goes through the buckets until enough values have been seen
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += this.counts.get(bucket);
+      if (seen >= wanted && seen > 0) {
+        return Math.min(LatencyHistogram.highest(bucket), this.max.get());
+      }
+    }
+    return 0;
+  }
 
   /* Fields
-   * this.board - ArrayList<ArrayList<Cell>>
-   * this.playerPos - Posn
-   * this.groundStr - String
-   * this.contentStr - String
-   *
+   * this.counts - AtomicLongArray
+   * this.total - LongAdder
+   * this.max - LongAccumulator
    * Methods
-   * this.findCell(Posn posn) - Cell
-   * this.draw() - WorldImage
-   * this.levelWon() - boolean
-   * this.levelLost() - boolean
-   * this.movePlayer(String direction) - Level
-   * this.switchContents(Posn pos1, Posn pos2, Posn playerPos) - Level
-   * this.updateLevel() - Level
-   * this.undoMove() - Level
-   * this.updateScore() - Level
-   *
+   * this.bucket(long value) - int
+   * this.highest(int bucket) - long
+   * this.record(long value) - void
+   * this.count() - long
+   * this.percentile(double percentile) - long
+   * Methods on Fields
+   */
+}
+
+// Keeps a latency histogram and an allocation count for every phase
+class HistogramSink implements MetricsSink {
+  LatencyHistogram[] latencies; // the latencies of each phase, at its ordinal
+  LongAdder[] allocated; // the bytes allocated by each phase, at its ordinal
+
+  HistogramSink() {
+    this.latencies = new LatencyHistogram[Phase.values().length];
+    this.allocated = new LongAdder[Phase.values().length];
+    // EFFECT: makes an empty histogram and count for every phase
+    for (Phase phase : Phase.values()) {
+      this.latencies[phase.ordinal()] = new LatencyHistogram();
+      this.allocated[phase.ordinal()] = new LongAdder();
+    }
+  }
+
+  // EFFECT: records one run of the given phase
+  public void record(Phase phase, long nanos, long bytes) {
+    this.latencies[phase.ordinal()].record(nanos);
+    this.allocated[phase.ordinal()].add(bytes);
+  }
+
+  // returns a line for every phase that has run, with its count, latencies and allocations
+  String summary() {
+    StringBuilder summary = new StringBuilder();
+    // EFFECT: adds a line for every phase that has run
+    for (Phase phase : Phase.values()) {
+      LatencyHistogram latency = this.latencies[phase.ordinal()];
+      long count = latency.count();
+      if (count > 0) {
+        summary.append(phase.label).append(": ").append(count).append(" runs, p50 ")
+                .append(latency.percentile(50)).append(" ns, p99 ")
+                .append(latency.percentile(99)).append(" ns, max ").append(latency.max.get())
+                .append(" ns, ").append(this.allocated[phase.ordinal()].sum() / count)
+                .append(" bytes/run\n");
+      }
+    }
+    return summary.toString();
+  }
+
+  /* Fields
+   * this.latencies - LatencyHistogram[]
+   * this.allocated - LongAdder[]
+   * Methods
+   * this.record(Phase phase, long nanos, long bytes) - void
+   * this.summary() - String
+   * Methods on Fields
+   * this.latencies[i].record(long value) - void
+   * this.latencies[i].percentile(double percentile) - long
+   */
+}
+
+// A Java Flight Recorder event for one frame of the game: how long each phase took between the
+// last scene and this one
+@Name("sokoban.Frame")
+@Label("Sokoban Frame")
+@Category("Sokoban")
+class FrameEvent extends Event {
+  @Label("Keys")
+  int keys;
+  @Label("Key Handling (ns)")
+  long keyNanos;
+  @Label("Moves (ns)")
+  long moveNanos;
+  @Label("Hole Updates (ns)")
+  long holeNanos;
+  @Label("Win/Loss Checks (ns)")
+  long winLossNanos;
+  @Label("Clicks")
+  int clicks;
+  @Label("Click Handling (ns)")
+  long clickNanos;
+  @Label("Walk Finding (ns)")
+  long pathNanos;
+  @Label("Push Planning (ns)")
+  long planNanos;
+  @Label("Scene Building (ns)")
+  long sceneNanos;
+  @Label("Allocated (bytes)")
+  long bytes;
+}
+
+// Adds up the phases of each frame and commits them as a FrameEvent when the frame's scene has
+// been made. Frames are only recorded while a flight recording with sokoban.Frame enabled is on
+class FlightRecorderSink implements MetricsSink {
+  FrameEvent frame; // the frame being added up
+
+  FlightRecorderSink() {
+    this.frame = new FrameEvent();
+  }
+
+  // EFFECT: adds one run of the given phase to this frame, and commits the frame after its scene
+  public synchronized void record(Phase phase, long nanos, long bytes) {
+    switch (phase) {
+      case KEY:
+        this.frame.keys++;
+        this.frame.keyNanos += nanos;
+        this.frame.bytes += bytes; // the moves, holes and checks of a key happen inside it
+        break;
+      case CLICK:
+        this.frame.clicks++;
+        this.frame.clickNanos += nanos;
+        this.frame.bytes += bytes; // finding a walk or a plan happens inside a click
+        break;
+      case PATH:
+        this.frame.pathNanos += nanos;
+        break;
+      case PLAN:
+        this.frame.planNanos += nanos;
+        break;
+      case MOVE:
+        this.frame.moveNanos += nanos;
+        break;
+      case HOLES:
+        this.frame.holeNanos += nanos;
+        break;
+      case WIN_LOSS:
+        this.frame.winLossNanos += nanos;
+        break;
+      case SCENE:
+        this.frame.sceneNanos += nanos;
+        this.frame.bytes += bytes;
+        this.frame.commit();
+        this.frame = new FrameEvent();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /* Fields
+   * this.frame - FrameEvent
+   * Methods
+   * this.record(Phase phase, long nanos, long bytes) - void
    * Methods on Fields
-   * this.playerPos.movePosn(String direction) - Posn
-   * this.playerPos.withinBounds(Posn topLeft, Posn bottomRight) - boolean
-   * this.playerPos.samePosn(Posn pos) - boolean
-   *
+   * this.frame.commit() - void
    */
 }
 
+// --------------- BENCHMARKS -----------------------
+
+// Makes the levels that the benchmarks in hw8/jmh and the tests run on. The benchmarks are JMH
+// benchmarks, which the build compiles against a copy of this file in the sokoban package, since
+// JMH does not allow benchmarks in the default package
+class BenchLevels {
+  // returns the ground and content descriptions of a level of the given size and layout, with the
+  // player in the middle of it and room to walk around the player. An "ice" level is all ice, so
+  // every move slides to the edge of the board. A "holes" level has a hole in every ninth cell
+  // with a box beside it. Any other layout is open
+  static String[] layout(int width, int height, String layout) {
+    StringBuilder ground = new StringBuilder();
+    StringBuilder content = new StringBuilder();
+    // EFFECT: adds every row of the level to the ground and content descriptions
+    for (int row = 0; row < height; row++) {
+      // EFFECT: adds every cell of the row to the ground and content descriptions
+      for (int col = 0; col < width; col++) {
+        boolean player = row == height / 2 && col == width / 2;
+        boolean near = Math.abs(row - height / 2) <= 1 && Math.abs(col - width / 2) <= 1;
+        boolean hole = layout.equals("holes") && !near && row % 3 == 0 && col % 3 == 0;
+        boolean box = layout.equals("holes") && !near && row % 3 == 0 && col % 3 == 1;
+        ground.append(layout.equals("ice") ? "I" : hole ? "H" : "_");
+        content.append(player ? ">" : box ? "B" : "_");
+      }
+      if (row < height - 1) {
+        ground.append("\n");
+        content.append("\n");
+      }
+    }
+    return new String[]{ground.toString(), content.toString()};
+  }
+
+  // returns a level of the given size with nothing but the player in the middle of it
+  static Level openLevel(int width, int height) {
+    String[] description = BenchLevels.layout(width, height, "open");
+    return new Level(description[0], description[1]);
+  }
+}
+
 // Represents the current level state in Sokoban
 class Sokoban extends World {
   Level level;
+  MoveJournal journal; // the moves made in this game, which can be undone and redone
+  DeadlockAnalysis deadlocks; // what never changes about which positions can still be won
+  boolean deadlocked; // whether the last move left the level impossible to win
+  BoardRenderer renderer; // draws the board, only redrawing what changed since the last frame
+  KeyLog keys; // every key this game has handled, for replaying it
+  Pathfinder paths; // finds the walks to clicked cells
+  PushPlanner planner; // plans the pushes for dragged boxes and trophies
+  Posn dragStart; // the cell the mouse was last pressed on, or null if it has been released
 
   // Constructor
   Sokoban(Level level) {
+    Sprites.preload();
     this.level = level;
+    this.journal = new MoveJournal(Constants.UNDO_LIMIT);
+    this.deadlocks = new DeadlockAnalysis(level);
+    this.deadlocked = false;
+    this.renderer = new BoardRenderer();
+    this.keys = new KeyLog(level);
+    this.paths = new Pathfinder();
+    this.planner = new PushPlanner(level);
+    this.dragStart = null;
   }
 
   // creates the scene for this Sokoban world
   public WorldScene makeScene() {
-    WorldImage levelImage = new ScaleImage(this.level.draw(), Constants.SCALE_FACTOR);
+    long started = Metrics.nanos();
+    long allocated = Metrics.bytes();
+    WorldImage levelImage = this.renderer.drawScaled(this.level, Constants.SCALE_FACTOR);
     WorldImage statsImage = this.level.drawStats();
 
     WorldScene levelScene = new WorldScene(Constants.SCENE_WIDTH, Constants.SCENE_HEIGHT);
@@ -1134,6 +5551,7 @@ class Sokoban extends World {
     levelScene.placeImageXY(levelImage, Constants.SCENE_WIDTH / 2, Constants.SCENE_HEIGHT / 2);
     levelScene.placeImageXY(statsImage, 0, 0);
 
+    Metrics.record(Phase.SCENE, started, allocated);
     return levelScene;
   }
 
@@ -1147,32 +5565,155 @@ class Sokoban extends World {
 
   // handles key events
   public void onKeyEvent(String key) {
+    long started = Metrics.nanos();
+    long allocated = Metrics.bytes();
+    this.keys.record(key);
     if (key.equals("up") || key.equals("down") || key.equals("right") || key.equals("left")) {
-      this.level = this.level.movePlayer(key).updateLevel();
+      long moveStarted = Metrics.nanos();
+      long moveAllocated = Metrics.bytes();
+      Level moved = this.level.movePlayer(Direction.of(key));
+      Metrics.record(Phase.MOVE, moveStarted, moveAllocated);
+      long holesStarted = Metrics.nanos();
+      long holesAllocated = Metrics.bytes();
+      moved = moved.updateLevel();
+      Metrics.record(Phase.HOLES, holesStarted, holesAllocated);
+      this.moveTo(moved);
     }
     if (key.equals("u")) {
-      this.level = this.level.undoMove();
+      this.level = this.journal.undo(this.level);
+      this.deadlocked = false; // every move before the last one still left the level winnable
+    }
+    if (key.equals("r")) {
+      this.level = this.journal.redo(this.level);
+      this.deadlocked = this.deadlocks.deadlocked(this.level);
+    }
+    this.checkOver();
+    Metrics.record(Phase.KEY, started, allocated);
+  }
+
+  // handles clicks, walking the player to the clicked cell if it can get there without pushing
+  // anything. The whole walk is one move, which is undone in one go
+  public void onMouseClicked(javalib.worldimages.Posn pos) {
+    long started = Metrics.nanos();
+    long allocated = Metrics.bytes();
+    Posn to = this.cellAt(pos);
+    long pathStarted = Metrics.nanos();
+    long pathAllocated = Metrics.bytes();
+    Direction[] walk = this.paths.path(this.level, to);
+    Metrics.record(Phase.PATH, pathStarted, pathAllocated);
+    if (walk != null && walk.length > 0) {
+      this.keys.recordWalk(walk);
+      this.moveTo(this.level.walk(to, walk));
+      this.checkOver();
+    }
+    Metrics.record(Phase.CLICK, started, allocated);
+  }
+
+  // handles the mouse being pressed, which may start a drag
+  public void onMousePressed(javalib.worldimages.Posn pos) {
+    this.dragStart = this.cellAt(pos);
+  }
+
+  // handles the mouse being released, which ends a drag. Dragging a box or trophy to another
+  // cell pushes it there if it can be, walking the player around it as needed. Every push and
+  // walk of the plan is one move, which is undone in one go
+  public void onMouseReleased(javalib.worldimages.Posn pos) {
+    Posn from = this.dragStart;
+    Posn to = this.cellAt(pos);
+    this.dragStart = null;
+    if (from == null || from.samePosn(to)) {
+      return; // a click, not a drag
+    }
+    long started = Metrics.nanos();
+    long allocated = Metrics.bytes();
+    long planStarted = Metrics.nanos();
+    long planAllocated = Metrics.bytes();
+    Direction[] plan = this.planner.plan(this.level, from, to);
+    Metrics.record(Phase.PLAN, planStarted, planAllocated);
+    if (plan != null && plan.length > 0) {
+      this.keys.recordWalk(plan);
+      Level moved = this.level;
+      // EFFECT: makes every move of the plan
+      for (Direction direction : plan) {
+        moved = moved.movePlayer(direction).updateLevel();
+      }
+      this.moveTo(moved);
+      this.checkOver();
+    }
+    Metrics.record(Phase.CLICK, started, allocated);
+  }
+
+  // returns the position of the cell of the board at the given point of the scene, which may be
+  // off the board. The board is drawn scaled down, in the middle of the scene
+  Posn cellAt(javalib.worldimages.Posn pos) {
+    double cellWidth = Constants.CELL_WIDTH * Constants.SCALE_FACTOR;
+    double cellHeight = Constants.CELL_HEIGHT * Constants.SCALE_FACTOR;
+    double left = Constants.SCENE_WIDTH / 2.0 - this.level.width * cellWidth / 2;
+    double top = Constants.SCENE_HEIGHT / 2.0 - this.level.height * cellHeight / 2;
+    return Posn.of((int) Math.floor((pos.x - left) / cellWidth),
+            (int) Math.floor((pos.y - top) / cellHeight));
+  }
+
+  // EFFECT: makes the given level, which a move made from this game's level, the level of this
+  // game, recording the move if it changed anything
+  void moveTo(Level moved) {
+    MoveDelta delta = MoveDelta.between(this.level, moved);
+    if (!delta.isEmpty()) {
+      this.journal.record(delta);
+      this.deadlocked = this.deadlocks.deadlockedAfter(moved, delta.cells);
     }
-    if (this.level.levelWon() || this.level.levelLost()) {
+    this.level = moved;
+  }
+
+  // EFFECT: ends the game if its level is won, lost or deadlocked
+  void checkOver() {
+    long started = Metrics.nanos();
+    long allocated = Metrics.bytes();
+    boolean over = this.level.levelWon() || this.level.levelLost() || this.deadlocked;
+    Metrics.record(Phase.WIN_LOSS, started, allocated);
+    if (over) {
       endOfWorld("game over");
     }
   }
 
   /* Fields
    * this.level - Level
-   * this.gameOver - boolean
+   * this.journal - MoveJournal
+   * this.deadlocks - DeadlockAnalysis
+   * this.deadlocked - boolean
+   * this.renderer - BoardRenderer
+   * this.keys - KeyLog
+   * this.paths - Pathfinder
+   * this.planner - PushPlanner
+   * this.dragStart - Posn
    * Methods
    * this.makeScene() - WorldScene
    * this.onKeyEvent(String key) - void
+   * this.onMouseClicked(javalib.worldimages.Posn pos) - void
+   * this.onMousePressed(javalib.worldimages.Posn pos) - void
+   * this.onMouseReleased(javalib.worldimages.Posn pos) - void
+   * this.cellAt(javalib.worldimages.Posn pos) - Posn
+   * this.moveTo(Level moved) - void
+   * this.checkOver() - void
    * Methods on Fields
-   * level.getCell(Posn posn) - Cell
-   * level.draw() - WorldImage
-   * level.levelWon() - boolean
-   * level.levelLost() - boolean
-   * level.movePlayer(String direction, Level level) - Level
-   * level.updateLevel() - Level
-   * level.undoMove() - Level
-   * level.updateScore() - Level
+   * this.level.findCell(Posn posn) - Cell
+   * this.level.drawStats() - WorldImage
+   * this.level.levelWon() - boolean
+   * this.level.levelLost() - boolean
+   * this.level.movePlayer(Direction direction) - Level
+   * this.level.walk(Posn to, Direction[] moves) - Level
+   * this.level.updateLevel() - Level
+   * this.level.updateScore(int score) - Level
+   * this.journal.record(MoveDelta delta) - void
+   * this.journal.undo(Level level) - Level
+   * this.journal.redo(Level level) - Level
+   * this.deadlocks.deadlocked(Level level) - boolean
+   * this.deadlocks.deadlockedAfter(Level level, int[] cells) - boolean
+   * this.renderer.drawScaled(Level level, double scale) - WorldImage
+   * this.keys.record(String key) - void
+   * this.keys.recordWalk(Direction[] walk) - void
+   * this.paths.path(Level level, Posn to) - Direction[]
+   * this.planner.plan(Level level, Posn from, Posn to) - Direction[]
    */
 }
 
@@ -1376,9 +5917,7 @@ class ExamplesSokoban {
     grid.add(row0);
     grid.add(row1);
 
-    Level testMakeGridLevel = new Level(grid, new Posn(0, 1), null, 0);
-    testMakeGridLevel.prevLevel = testMakeGridLevel;
-    testMakeGridLevel.playerPos = new Posn(0, 1);
+    Level testMakeGridLevel = new Level(grid, new Posn(0, 1), 0);
 
     t.checkExpect(Utils.makeGrid("_R\n" + "G_", "Wr\n" + ">B"), grid);
     t.checkExpect(testMakeGridLevel, new Level("_R\n" + "G_", "Wr\n" + ">B"));
@@ -1389,8 +5928,8 @@ class ExamplesSokoban {
 
     this.init();
 
-    t.checkExpect(this.gameLevel.board.size(), 9);
-    t.checkExpect(this.gameLevel.board.get(0).size(), 8);
+    t.checkExpect(this.gameLevel.height, 9);
+    t.checkExpect(this.gameLevel.width, 8);
 
   }
 
@@ -1480,6 +6019,110 @@ class ExamplesSokoban {
 
     t.checkExpect(Utils.split("W_b>yB_W\n" + "WW_gWWWW\n" + "_WW_W___", "\n"), row);
   }
+  void testColorId(Tester t) {
+    Utils utils = new Utils();
+
+    t.checkExpect(Utils.colorId("red"), 0);
+    t.checkExpect(Utils.colorId("yellow"), 3);
+    t.checkExpect(Utils.colorId("Blue"), 2);
+    t.checkExceptionType(IllegalArgumentException.class, utils, "colorId", "black");
+  }
+
+  void testPalette(Tester t) {
+    Palette palette = new Palette();
+
+    t.checkExpect(Palette.size(), 4);
+    t.checkExpect(Palette.register("Red", Color.PINK), 0);
+    t.checkExpect(Palette.color(0), Color.RED);
+    t.checkExpect(Palette.find("purple"), -1);
+
+    Color purple = new Color(128, 0, 128);
+    t.checkExpect(Palette.register("Purple", purple), 4);
+    t.checkExpect(Palette.id("purple"), 4);
+    t.checkExpect(Palette.name(4), "purple");
+    t.checkExpect(Palette.color(4), purple);
+    t.checkExpect(Palette.builtIn(3), true);
+    t.checkExpect(Palette.builtIn(4), false);
+    t.checkExpect(Utils.colorToTrophySprite("purple"),
+            new CircleImage(40, OutlineMode.SOLID, purple));
+    t.checkExpect(Utils.colorToTargetSprite("purple"),
+            new OverlayImage(new CircleImage(25, OutlineMode.SOLID, purple),
+                    new OverlayImage(new CircleImage(45, OutlineMode.SOLID, Color.WHITE),
+                            new CircleImage(60, OutlineMode.SOLID, purple))));
+
+    // a registered color packs into board codes like the built in ones
+    t.checkExpect(new Trophy("purple").contentCode(), (byte) 11);
+    t.checkExpect(new Target("purple").groundCode(), (byte) 7);
+    t.checkExpect(new Trophy("purple").contentWon(new Target(4)), true);
+    t.checkExpect(new Trophy("purple").contentWon(new Target("red")), false);
+    t.checkExpect(BoardCodes.toContent((byte) 11), new Trophy(4));
+    t.checkExpect(Sprites.cell(BoardCodes.NORMAL, (byte) 11),
+            new OverlayImage(new CircleImage(40, OutlineMode.SOLID, purple),
+                    Constants.NORMAL_SPRITE));
+
+    t.checkExpect(Palette.register("orange", Color.ORANGE), 5);
+    t.checkExpect(Palette.register("pink", Color.PINK), 6);
+    t.checkExpect(Palette.register("cyan", Color.CYAN), 7);
+    t.checkExceptionType(IllegalArgumentException.class, palette, "register", "white",
+            Color.WHITE);
+    t.checkExpect(Palette.register("CYAN", Color.CYAN), 7);
+
+    // putting the palette back to the four built in colors forgets the cells drawn with the others
+    Sprites.cell(BoardCodes.target(4), BoardCodes.BLANK);
+    Sprites.cell(BoardCodes.target(0), BoardCodes.trophy(0));
+    Palette.reset();
+    t.checkExpect(Palette.size(), 4);
+    t.checkExpect(Palette.find("purple"), -1);
+    t.checkExpect(Sprites.CELLS[BoardCodes.NORMAL * Sprites.CODES + 11], null);
+    t.checkExpect(Sprites.CELLS[BoardCodes.target(4) * Sprites.CODES + BoardCodes.BLANK], null);
+    t.checkExpect(Sprites.CELLS[BoardCodes.target(0) * Sprites.CODES + BoardCodes.trophy(0)]
+            == null, false);
+    t.checkExpect(Utils.colorToTrophySprite("Red"), Sprites.file("trophy_red"));
+  }
+
+  void testSharedTiles(Tester t) {
+    Utils utils = new Utils();
+
+    // every ground and content code is made into one object, which every cell shares
+    t.checkExpect(Utils.makeGround("_") == Utils.makeGround("_"), true);
+    t.checkExpect(Utils.makeGround("R") == BoardCodes.toGround(BoardCodes.target(0)), true);
+    t.checkExpect(Utils.makeGround("R") == Utils.makeGround("G"), false);
+    t.checkExpect(Utils.makeContent("W") == BoardCodes.toContent(BoardCodes.WALL), true);
+    t.checkExpect(Utils.makeContent("v") == Utils.makeContent("v"), true);
+    t.checkExpect(Utils.makeContent("v"), new Player("down"));
+    t.checkExpect(Utils.makeContent("y"), new Trophy("yellow"));
+    t.checkExpect(Utils.makeGround("I"), new Ice());
+    t.checkExpect(BoardCodes.makeGround(BoardCodes.HOLE) == BoardCodes.makeGround(BoardCodes.HOLE),
+            false);
+    t.checkExpect(Utils.makeRow("R_", "r^").get(0).ground == Utils.makeGround("R"), true);
+    t.checkExceptionType(IllegalArgumentException.class, utils, "makeGround", "RR");
+    t.checkExceptionType(IllegalArgumentException.class, utils, "makeGround", "");
+    t.checkExceptionType(IllegalArgumentException.class, utils, "makeContent", "x");
+  }
+
+  void testDirectionId(Tester t) {
+    Utils utils = new Utils();
+
+    t.checkExpect(Utils.directionId("up"), 0);
+    t.checkExpect(Utils.directionId("left"), 3);
+    t.checkExceptionType(IllegalArgumentException.class, utils, "directionId", "north");
+  }
+
+  void testPackGrid(Tester t) {
+    this.init();
+    ArrayList<ArrayList<Cell>> grid = Utils.makeGrid("_R\n" + "GI", "Wr\n" + ">B");
+
+    t.checkExpect(Utils.gridWidth(grid), 2);
+    t.checkExpect(Utils.packGrounds(grid), new byte[]{BoardCodes.NORMAL, BoardCodes.target(0),
+        BoardCodes.target(1), BoardCodes.ICE});
+    t.checkExpect(Utils.packContents(grid), new byte[]{BoardCodes.WALL, BoardCodes.trophy(0),
+        BoardCodes.player(1), BoardCodes.BOX});
+
+    grid.get(1).remove(1);
+    t.checkException(new IllegalArgumentException("Invalid Ground/Content descriptions: "
+            + "every row of the board must have the same length"), new Utils(), "gridWidth", grid);
+  }
+
   // Posn tests -----------------------------
 
   void testMovePosn(Tester t) {
@@ -1511,7 +6154,10 @@ class ExamplesSokoban {
     t.checkExpect(gameLevel.findCell(new Posn(0, 0)), new Cell(new Normal(), new Blank()));
     t.checkExpect(blernerLevel3.findCell(new Posn(4, 2)),
             new Cell(new Normal(), new Trophy("red")));
-    t.checkExceptionType(RuntimeException.class, gameLevel, "findCell", new Posn(100, 100));
+    // one step off of the board are the walls of the ring around it
+    t.checkExpect(gameLevel.findCell(new Posn(-1, 0)), new Cell(new Normal(), new Wall()));
+    t.checkExpect(gameLevel.findCell(new Posn(8, 8)), new Cell(new Normal(), new Wall()));
+    t.checkExpect(gameLevel.findCell(new Posn(3, 9)), new Cell(new Normal(), new Wall()));
   }
 
   void testDrawLevel(Tester t) {
@@ -1542,7 +6188,12 @@ class ExamplesSokoban {
   void testDrawStats(Tester t) {
     this.init();
 
-
+    // the cells around a player in a corner are looked up in the ring instead of going off the
+    // board
+    WorldImage corner = new Level("__\n__", ">_\n_B").drawStats();
+    t.checkExpect(corner.getWidth() > 0, true);
+    WorldImage edge = new Level("___", "_<B").drawStats();
+    t.checkExpect(edge.getHeight() > 0, true);
   }
 
   void testMovePlayer(Tester t) {
@@ -1566,18 +6217,22 @@ class ExamplesSokoban {
     this.gameLevel = this.gameLevel.movePlayer("right");
     // push trophy into wall - no change, move into trophy - no change
     t.checkExpect(this.gameLevel.playerPos, new Posn(4, 2));
+
+    // moving off the edge of the board does nothing
+    Level edge = new Level("__", ">_");
+    t.checkExpect(edge.movePlayer("left"), edge);
   }
 
   void testswitchContents(Tester t) {
     this.init();
 
     t.checkExpect(this.gameLevel.switchContents(new Posn(0, 0), new Posn(1, 0),
-            this.gameLevel.playerPos, this.gameLevel, 0), this.gameLevel);
+            this.gameLevel.playerPos, 0), this.gameLevel);
 
     init();
 
     this.gameLevel = this.gameLevel.switchContents(new Posn(2, 2), new Posn(3, 2),
-            this.gameLevel.playerPos, this.gameLevel, 0);
+            this.gameLevel.playerPos, 0);
 
     t.checkExpect(this.gameLevel.findCell(new Posn(3, 2)),
             new Cell(new Normal(), new Player("right")));
@@ -1585,7 +6240,7 @@ class ExamplesSokoban {
     this.init();
 
     this.gameLevel = this.gameLevel.switchContents(new Posn(2, 2), new Posn(1, 2),
-            this.gameLevel.playerPos, this.gameLevel, 0);
+            this.gameLevel.playerPos, 0);
 
     t.checkExpect(this.gameLevel.findCell(new Posn(1, 2)),
             new Cell(new Target("blue"), new Player("right")));
@@ -1639,6 +6294,1291 @@ class ExamplesSokoban {
             false); // move blank to blank - true
   }
 
+  void testCellAt(Tester t) {
+    this.init();
+
+    t.checkExpect(gameLevel.cellAt(0), new Cell(new Normal(), new Wall())); // the ring
+    t.checkExpect(gameLevel.cellAt(11), new Cell(new Normal(), new Blank()));
+    t.checkExpect(gameLevel.cellAt(33), new Cell(new Normal(), new Player("right")));
+    t.checkExpect(gameLevel.cellAt(32), new Cell(new Target("blue"), new Blank()));
+  }
+
+  void testIndexOfAndPosnOf(Tester t) {
+    this.init();
+
+    // each row is stored with a wall of the ring on either side, below a row of the ring
+    t.checkExpect(gameLevel.stride(), 10);
+    t.checkExpect(gameLevel.indexOf(new Posn(2, 2)), 33);
+    t.checkExpect(gameLevel.posnOf(33), new Posn(2, 2));
+    t.checkExpect(gameLevel.indexOf(new Posn(-1, -1)), 0);
+    t.checkExpect(gameLevel.posnOf(0), new Posn(-1, -1));
+    t.checkExpect(gameLevel.grounds.size, 110);
+    t.checkExpect(gameLevel.onBoard(new Posn(7, 8)), true);
+    t.checkExpect(gameLevel.onBoard(new Posn(8, 0)), false);
+    t.checkExpect(gameLevel.onBoard(new Posn(0, -1)), false);
+  }
+
+  void testNeighbor(Tester t) {
+    this.init();
+
+    t.checkExpect(gameLevel.neighbor(33, 1, 0), 34);
+    t.checkExpect(gameLevel.neighbor(33, 0, -1), 23);
+    t.checkExpect(gameLevel.neighbor(18, 1, 0), 19); // off the right edge, into the ring
+    t.checkExpect(gameLevel.neighbor(14, 0, -1), 4);
+    t.checkExpect(gameLevel.isStaticWall(19), true);
+    t.checkExpect(gameLevel.isStaticWall(gameLevel.indexOf(new Posn(2, 0))), true);
+    t.checkExpect(gameLevel.isStaticWall(33), false);
+    t.checkExpect(new Level("H_", "W>").isStaticWall(5), false); // it falls in
+  }
+
+  void testSlideContent(Tester t) {
+    this.init();
+
+    // trophy on ice slides up until it leaves the ice
+    Level slid = iceTest.slideContent(new Posn(3, 4), "up");
+    t.checkExpect(slid.findCell(new Posn(3, 1)), new Cell(new Normal(), new Trophy("yellow")));
+    t.checkExpect(slid.findCell(new Posn(3, 4)), new Cell(new Ice(), new Blank()));
+    // trophy on normal ground does not slide
+    t.checkExpect(iceTest.slideContent(new Posn(2, 3), "right"), iceTest);
+
+    // pushed trophy slides across the ice
+    Level pushed = ice1.movePlayer("right");
+    t.checkExpect(pushed.findCell(new Posn(5, 1)), new Cell(new Normal(), new Trophy("blue")));
+    t.checkExpect(pushed.playerPos, new Posn(2, 1));
+  }
+
+  void testSlidePlayer(Tester t) {
+    this.init();
+
+    Level iceRow = new Level("II_", ">__");
+    t.checkExpect(iceRow.slidePlayer(new Posn(0, 0), "right").playerPos, new Posn(2, 0));
+    // sliding into the edge of the board stops the player
+    Level iceEdge = new Level("_I", "_>");
+    t.checkExpect(iceEdge.slidePlayer(new Posn(1, 0), "right").playerPos, new Posn(1, 0));
+
+    // player slides after pushing and pushes the trophy again at the end of the ice
+    Level pushed = ice2.movePlayer("right");
+    t.checkExpect(pushed.playerPos, new Posn(4, 2));
+    t.checkExpect(pushed.findCell(new Posn(5, 2)), new Cell(new Normal(), new Trophy("yellow")));
+  }
+
+  void testByteVector(Tester t) {
+    byte[] bytes = new byte[100];
+    // EFFECT: fills the bytes with their own indices
+    for (int idx = 0; idx < bytes.length; idx++) {
+      bytes[idx] = (byte) idx;
+    }
+    ByteVector vector = new ByteVector(bytes);
+
+    t.checkExpect(vector.size, 100);
+    t.checkExpect(vector.shift, ByteVector.BITS); // 100 bytes need a root above the chunks
+    t.checkExpect(vector.get(0), (byte) 0);
+    t.checkExpect(vector.get(99), (byte) 99);
+    t.checkExpect(vector.toArray(), bytes);
+
+    ByteVector changed = vector.set(50, (byte) 7);
+    t.checkExpect(changed.get(50), (byte) 7);
+    t.checkExpect(vector.get(50), (byte) 50); // the old vector is unchanged
+    t.checkExpect(vector.set(3, (byte) 3) == vector, true); // nothing to change
+    // only the root and the chunk holding index 50 were copied
+    t.checkExpect(changed.bytesNotSharedWith(vector), 16L + 4 * ByteVector.WIDTH + 16
+            + ByteVector.WIDTH);
+    t.checkExpect(new ByteVector(new byte[3]).shift, 0);
+  }
+
+  void testHoleIndices(Tester t) {
+    t.checkExpect(Utils.holeIndices(new byte[]{BoardCodes.HOLE, BoardCodes.NORMAL,
+        BoardCodes.ICE, BoardCodes.HOLE}), new int[]{0, 3});
+    t.checkExpect(Utils.holeIndices(new byte[]{BoardCodes.NORMAL}), new int[]{});
+  }
+
+  void testDerive(Tester t) {
+    this.init();
+    Level derived = gameLevel.derive(new Posn(1, 2), 4);
+
+    t.checkExpect(derived.steps, 4);
+    t.checkExpect(derived.contents == gameLevel.contents, true); // shares the board
+    t.checkExpect(derived.holes, new int[]{64});
+    derived.swap(32, 33);
+    t.checkExpect(gameLevel.findCell(new Posn(2, 2)), new Cell(new Normal(), new Player("right")));
+    t.checkExpect(derived.findCell(new Posn(1, 2)),
+            new Cell(new Target("blue"), new Player("right")));
+  }
+
+  // returns an open level of the given size with the player in its middle
+  Level openLevel(int width, int height) {
+    return BenchLevels.openLevel(width, height);
+  }
+
+  void testMoveRetention(Tester t) {
+    String[] directions = {"right", "down", "left", "up"};
+    Level small = this.openLevel(100, 100);
+    Level big = this.openLevel(300, 300);
+    long mostNewBytesSmall = 0;
+    long mostNewBytesBig = 0;
+
+    // EFFECT: walks the player in circles for 10k moves on both boards, finding the most memory
+    //         that any one move held on to beyond what it shares with the level before it
+    for (int move = 0; move < 10000; move++) {
+      Level nextSmall = small.movePlayer(directions[move % 4]).updateLevel();
+      Level nextBig = big.movePlayer(directions[move % 4]).updateLevel();
+      mostNewBytesSmall = Math.max(mostNewBytesSmall,
+              nextSmall.contents.bytesNotSharedWith(small.contents)
+                      + nextSmall.grounds.bytesNotSharedWith(small.grounds));
+      mostNewBytesBig = Math.max(mostNewBytesBig,
+              nextBig.contents.bytesNotSharedWith(big.contents)
+                      + nextBig.grounds.bytesNotSharedWith(big.grounds));
+      small = nextSmall;
+      big = nextBig;
+    }
+
+    t.checkExpect(small.steps, 10000);
+    t.checkExpect(big.steps, 10000);
+    // each move only keeps the paths to the two cells it changed, no matter the board size
+    t.checkExpect(mostNewBytesSmall < 1024, true);
+    t.checkExpect(mostNewBytesBig < 1024, true);
+    t.checkExpect(small.grounds.bytesNotSharedWith(this.openLevel(100, 100).grounds) > 10000,
+            true); // a board built from scratch shares nothing
+  }
+
+  void testSolver(Tester t) {
+    this.init();
+
+    SokobanSolver gameSolver = new SokobanSolver(this.gameLevel);
+    SolverResult game = gameSolver.solveAStar(1000000);
+    t.checkExpect(game.solved, true);
+    t.checkExpect(game.moves.size(), 34);
+    t.checkExpect(game.nodes, 3410L);
+    t.checkExpect(this.play(this.gameLevel, game.moves).levelWon(), true);
+
+    SolverResult gameIda = gameSolver.solveIdaStar(10000000);
+    t.checkExpect(gameIda.solved, true);
+    t.checkExpect(gameIda.moves.size(), game.moves.size());
+    t.checkExpect(gameIda.nodes, 34705L);
+    t.checkExpect(this.play(this.gameLevel, gameIda.moves).levelWon(), true);
+
+    SokobanSolver iceSolver = new SokobanSolver(this.iceTest);
+    SolverResult ice = iceSolver.solveAStar(1000000);
+    t.checkExpect(ice.solved, true);
+    t.checkExpect(ice.moves.size(), 18);
+    t.checkExpect(ice.nodes, 8178L);
+    t.checkExpect(this.play(this.iceTest, ice.moves).levelWon(), true);
+
+    SolverResult iceIda = iceSolver.solveIdaStar(10000000);
+    t.checkExpect(iceIda.moves.size(), ice.moves.size());
+    t.checkExpect(iceIda.nodes, 21710L);
+    t.checkExpect(this.play(this.iceTest, iceIda.moves).levelWon(), true);
+
+    // already won, and never winnable
+    Level won = new Level("B_", "b>");
+    t.checkExpect(new SokobanSolver(won).solveAStar(10).moves, new ArrayList<String>());
+    t.checkExpect(new SokobanSolver(won).solveAStar(10).solved, true);
+    Level stuck = new Level("R___", "Wr_>");
+    t.checkExpect(new SokobanSolver(stuck).solveAStar(1000).solved, false);
+    t.checkExpect(new SokobanSolver(stuck).solveIdaStar(1000).solved, false);
+  }
+
+  void testZobrist(Tester t) {
+    this.init();
+
+    t.checkExpect(Zobrist.key(Zobrist.CONTENT, 5, BoardCodes.BLANK), 0L);
+    t.checkExpect(Zobrist.key(Zobrist.GROUND, 5, BoardCodes.NORMAL), 0L);
+    t.checkExpect(Zobrist.key(Zobrist.CONTENT, 5, BoardCodes.ICE)
+            == Zobrist.key(Zobrist.GROUND, 5, BoardCodes.ICE), false);
+    t.checkExpect(Zobrist.key(Zobrist.CONTENT, 5, BoardCodes.WALL)
+            == Zobrist.key(Zobrist.CONTENT, 6, BoardCodes.WALL), false);
+    t.checkExpect(this.gameLevel.hash,
+            Zobrist.hashOf(this.gameLevel.grounds, this.gameLevel.contents));
+
+    // moving only touches the cells that change, and keeps the hash the same as starting over
+    Level moved = this.gameLevel.movePlayer("down").movePlayer("left");
+    t.checkExpect(moved.hash, Zobrist.hashOf(moved.grounds, moved.contents));
+    t.checkExpect(moved.hash == this.gameLevel.hash, false);
+
+    // swapping back gets the same hash back
+    Level switched = this.gameLevel.switchContents(new Posn(1, 1), new Posn(3, 2),
+            this.gameLevel.playerPos, 0);
+    t.checkExpect(switched.hash == this.gameLevel.hash, false);
+    t.checkExpect(switched.switchContents(new Posn(1, 1), new Posn(3, 2),
+            this.gameLevel.playerPos, 0).hash, this.gameLevel.hash);
+
+    // filling in a hole changes both its ground and its content
+    Level pushed = new Level("__H", ">B_").movePlayer("right");
+    t.checkExpect(pushed.updateLevel().hash, new Level("___", "_>_").hash);
+    t.checkExpect(pushed.updateLevel().hash,
+            Zobrist.hashOf(pushed.updateLevel().grounds, pushed.updateLevel().contents));
+  }
+
+  void testTranspositionTable(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("A transposition table must have "
+            + "between 2^1 and 2^28 buckets, given 2^0"), "TranspositionTable", 0);
+    t.checkConstructorException(new IllegalArgumentException("A transposition table must have "
+            + "between 2^1 and 2^28 buckets, given 2^29"), "TranspositionTable", 29);
+
+    // 2, 4, 6 and 8 all go in the first of the two buckets
+    TranspositionTable table = new TranspositionTable(1);
+    t.checkExpect(table.probe(2), TranspositionTable.MISSING);
+    table.store(2, 20, 5);
+    table.store(4, 40, 1); // shallower, so it goes in the second slot
+    t.checkExpect(table.probe(2), 20);
+    t.checkExpect(table.probe(4), 40);
+    table.store(6, 60, 3); // also shallower, so it replaces 4
+    t.checkExpect(table.probe(4), TranspositionTable.MISSING);
+    t.checkExpect(table.probe(6), 60);
+    table.store(8, 80, 9); // deeper, so 2 moves down to the second slot and 6 is dropped
+    t.checkExpect(table.probe(8), 80);
+    t.checkExpect(table.probe(2), 20);
+    t.checkExpect(table.probe(6), TranspositionTable.MISSING);
+    table.store(2, 21, 0); // the same hash is overwritten in place
+    t.checkExpect(table.probe(2), 21);
+    t.checkExpect(table.probe(8), 80);
+    table.store(0, 7, 0); // a hash of 0 is stored like any other
+    t.checkExpect(table.probe(0), 7);
+    t.checkExpect(table.probes, 11L);
+    t.checkExpect(table.hits, 8L);
+
+    table.clear();
+    t.checkExpect(table.probe(8), TranspositionTable.MISSING);
+    t.checkExpect(table.probe(0), TranspositionTable.MISSING);
+  }
+
+  void testDeadSquares(Tester t) {
+    Level board = new Level("R____\n_____\n_____", "_____\n_>___\n_____");
+    DeadlockAnalysis open = new DeadlockAnalysis(board);
+    byte red = BoardCodes.trophy(0);
+    // a red trophy can never get back off of the right hand column or the bottom row
+    boolean[] dead = new boolean[15];
+    // EFFECT: finds the cells that are dead for red trophies
+    for (int idx = 0; idx < 15; idx++) {
+      dead[idx] = open.isDead(board.indexOf(new Posn(idx % 5, idx / 5)), red);
+    }
+    t.checkExpect(dead, new boolean[]{false, false, false, false, true, false, false, false, false,
+        true, true, true, true, true, true});
+    t.checkExpect(open.isDead(board.indexOf(new Posn(1, 1)), BoardCodes.trophy(1)),
+            true); // there is no green target
+    t.checkExpect(open.isDead(board.indexOf(new Posn(4, 0)), BoardCodes.BOX),
+            false); // boxes do not need a target
+    t.checkExpect(open.isDead(0, red), true); // nothing gets into the ring
+    t.checkExpect(open.targetCounts, new int[]{1, 0, 0, 0});
+
+    // a trophy on ice keeps sliding without the player behind it
+    // (the cell at index 12 is the last cell of a 5 cell row, and index 9 is the third cell of
+    // the first row of a 4 cell wide board)
+    t.checkExpect(new DeadlockAnalysis(new Level("R____", "_>___")).isDead(12, red), true);
+    t.checkExpect(new DeadlockAnalysis(new Level("R___I", "_>___")).isDead(12, red), false);
+    // walls block trophies and the player, unless they are on a hole
+    t.checkExpect(new DeadlockAnalysis(new Level("R___\n____", "_W__\n_>__")).isDead(9, red),
+            true);
+    t.checkExpect(new DeadlockAnalysis(new Level("RH__\n____", "_W__\n_>__")).isDead(9, red),
+            false);
+  }
+
+  void testFrozen(Tester t) {
+    Level corner = new Level("____\n____\n____", "WW__\nWBB_\n>___");
+    DeadlockAnalysis deadlocks = new DeadlockAnalysis(corner);
+    t.checkExpect(deadlocks.isFrozen(corner, corner.indexOf(new Posn(1, 1))), true);
+    t.checkExpect(deadlocks.isFrozen(corner, corner.indexOf(new Posn(2, 1))), false);
+    t.checkExpect(deadlocks.isFrozen(corner, corner.indexOf(new Posn(0, 2))),
+            false); // the player is never frozen
+    t.checkExpect(deadlocks.isFrozen(corner, corner.indexOf(new Posn(0, 0))),
+            false); // neither is a wall
+
+    Level walled = new Level("____\n____\n____", "WWW_\nWBB_\n>___");
+    t.checkExpect(new DeadlockAnalysis(walled).isFrozen(walled, walled.indexOf(new Posn(2, 1))),
+            true);
+
+    // four boxes in a square hold each other in place
+    Level square = new Level("____\n____\n____\n____", "____\n_BB_\n_Br_\n>___");
+    DeadlockAnalysis squareDeadlocks = new DeadlockAnalysis(square);
+    t.checkExpect(squareDeadlocks.isFrozen(square, square.indexOf(new Posn(1, 1))), true);
+    t.checkExpect(squareDeadlocks.isFrozen(square, square.indexOf(new Posn(2, 2))), true);
+    Level line = new Level("____\n____\n____\n____", "____\n_BB_\n____\n>___");
+    t.checkExpect(new DeadlockAnalysis(line).isFrozen(line, line.indexOf(new Posn(1, 1))), false);
+
+    // a trophy that can only be pushed onto dead cells is stuck, but not frozen
+    Level edge = new Level("R____\n_____\n_____", "_____\n_____\n_>r__");
+    DeadlockAnalysis edgeDeadlocks = new DeadlockAnalysis(edge);
+    t.checkExpect(edgeDeadlocks.isFrozen(edge, edge.indexOf(new Posn(2, 2))), false);
+    t.checkExpect(edgeDeadlocks.isStuck(edge, edge.indexOf(new Posn(2, 2))), true);
+    Level middle = new Level("R____\n_____\n_____", "_____\n_>r__\n_____");
+    t.checkExpect(new DeadlockAnalysis(middle).isStuck(middle, middle.indexOf(new Posn(2, 1))),
+            false);
+  }
+
+  void testDeadlocked(Tester t) {
+    this.init();
+
+    t.checkExpect(new DeadlockAnalysis(this.gameLevel).deadlocked(this.gameLevel), false);
+    t.checkExpect(new DeadlockAnalysis(this.iceTest).deadlocked(this.iceTest), false);
+
+    Level start = new Level("R____\n_____\n_____", "_____\n_>r__\n_____");
+    DeadlockAnalysis deadlocks = new DeadlockAnalysis(start);
+    Level along = start.movePlayer("right");
+    Level cornered = along.movePlayer("right");
+    t.checkExpect(deadlocks.deadlocked(start), false);
+    t.checkExpect(deadlocks.deadlocked(along), false);
+    t.checkExpect(deadlocks.deadlocked(cornered), true);
+    int[] alongCells = {start.indexOf(new Posn(2, 1)), start.indexOf(new Posn(3, 1))};
+    int[] corneredCells = {start.indexOf(new Posn(3, 1)), start.indexOf(new Posn(4, 1))};
+    t.checkExpect(deadlocks.deadlockedAfter(along, alongCells), false);
+    t.checkExpect(deadlocks.deadlockedAfter(cornered, corneredCells), true);
+
+    // a second red trophy means the first one is not needed
+    Level spare = new Level("R____\n_____\n_____", "_____\nr>r__\n_____");
+    Level spareCornered = spare.movePlayer("right").movePlayer("right");
+    t.checkExpect(new DeadlockAnalysis(spare).deadlockedAfter(spareCornered, corneredCells),
+            false);
+
+    // a target that something else is stuck on, or that is under a wall, is never won
+    Level boxed = new Level("R___", "B_<_");
+    t.checkExpect(new DeadlockAnalysis(boxed).deadlocked(boxed), true);
+    int[] first = {boxed.indexOf(new Posn(0, 0))};
+    t.checkExpect(new DeadlockAnalysis(boxed).deadlockedAfter(boxed, first), true);
+    Level walled = new Level("R___", "W_r>");
+    t.checkExpect(new DeadlockAnalysis(walled).deadlocked(walled), true);
+    Level home = new Level("R___", "r_<_");
+    t.checkExpect(new DeadlockAnalysis(home).deadlockedAfter(home, first), false);
+  }
+
+  void testDeadlockedWorld(Tester t) {
+    Sokoban world = new Sokoban(new Level("R____\n_____\n_____", "_____\n_>r__\n_____"));
+    world.onKeyEvent("right");
+    t.checkExpect(world.deadlocked, false);
+    world.onKeyEvent("right");
+    t.checkExpect(world.deadlocked, true);
+    t.checkExpect(world.level.levelLost(), false);
+    world.onKeyEvent("u");
+    t.checkExpect(world.deadlocked, false);
+    world.onKeyEvent("r");
+    t.checkExpect(world.deadlocked, true);
+  }
+
+  void testDirection(Tester t) {
+    t.checkExpect(Direction.of("up"), Direction.UP);
+    t.checkExpect(Direction.of("left"), Direction.LEFT);
+    t.checkException(new IllegalArgumentException("Invalid direction: north"), Direction.UP, "of",
+            "north");
+    t.checkExpect(Direction.ALL, new Direction[]{Direction.UP, Direction.RIGHT, Direction.DOWN,
+        Direction.LEFT});
+    t.checkExpect(Direction.UP.delta(8), -8);
+    t.checkExpect(Direction.LEFT.delta(8), -1);
+    t.checkExpect(Direction.DOWN.delta(3), 3);
+    t.checkExpect(Direction.UP.opposite(), Direction.DOWN);
+    t.checkExpect(Direction.LEFT.opposite(), Direction.RIGHT);
+    t.checkExpect(new Posn(2, 3).movePosn(Direction.LEFT), new Posn(1, 3));
+    t.checkExpect(new Player("down"), new Player(Direction.DOWN));
+  }
+
+  void testByteVectorSwap(Tester t) {
+    byte[] bytes = new byte[100];
+    bytes[3] = 7;
+    bytes[70] = 9;
+    ByteVector vector = new ByteVector(bytes);
+    ByteVector sameChunk = vector.swap(3, 4);
+    t.checkExpect(sameChunk.get(3), (byte) 0);
+    t.checkExpect(sameChunk.get(4), (byte) 7);
+    t.checkExpect(vector.get(3), (byte) 7); // the original is unchanged
+    t.checkExpect(((Object[]) sameChunk.root)[2] == ((Object[]) vector.root)[2], true);
+    ByteVector otherChunk = vector.swap(3, 70);
+    t.checkExpect(otherChunk.get(3), (byte) 9);
+    t.checkExpect(otherChunk.get(70), (byte) 7);
+    t.checkExpect(vector.swap(5, 6) == vector, true); // nothing to swap
+  }
+
+  void testSlideStops(Tester t) {
+    // I I I W _      ice up to a wall
+    // I I H I I      ice up to a hole, and to the edge
+    int[][] stops = Utils.slideStops(5, new byte[]{1, 1, 1, 0, 0, 1, 1, 2, 1, 1},
+            new byte[]{0, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+    t.checkExpect(stops[Direction.RIGHT.ordinal()], new int[]{2, 2, 2, 3, 4, 7, 7, 7, 9, 9});
+    t.checkExpect(stops[Direction.LEFT.ordinal()], new int[]{0, 0, 0, 3, 4, 5, 5, 7, 7, 7});
+    t.checkExpect(stops[Direction.DOWN.ordinal()], new int[]{5, 6, 7, 3, 4, 5, 6, 7, 8, 9});
+    t.checkExpect(stops[Direction.UP.ordinal()], new int[]{0, 1, 2, 3, 4, 0, 1, 7, 8, 4});
+    // a wall on a hole falls in, so it does not stop anything for good
+    t.checkExpect(Utils.slideStops(3, new byte[]{1, 1, 2}, new byte[]{0, 0, 1})[1],
+            new int[]{2, 2, 2});
+    t.checkExpect(this.openLevel(3, 3).slideStops[0], new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9,
+        10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24});
+    // the ring stops every slide at the edge of the board
+    t.checkExpect(new Level("III", ">__").slideStops[Direction.RIGHT.ordinal()][6], 8);
+  }
+
+  void testLongSlides(Tester t) {
+    StringBuilder ice = new StringBuilder();
+    StringBuilder blank = new StringBuilder();
+    // EFFECT: makes a corridor of 1000 ice cells
+    for (int cell = 0; cell < 1000; cell++) {
+      ice.append("I");
+      blank.append("_");
+    }
+    Level corridor = new Level("_" + ice + "_", ">B" + blank.substring(1) + "W");
+    Level pushed = corridor.movePlayer("right");
+    // the box is pushed onto the ice, slides across it, and stops at the end before the wall. The
+    // player follows it across the ice until it runs into it
+    t.checkExpect(pushed.findCell(new Posn(1000, 0)).content, new Box());
+    t.checkExpect(pushed.playerPos, new Posn(999, 0));
+    t.checkExpect(pushed.hash, Zobrist.hashOf(pushed.grounds, pushed.contents));
+
+    // the player slides the whole way and pushes the box ahead of it once it gets there
+    Level sliding = new Level("_" + ice + "_", ">" + blank.substring(2) + "B__");
+    Level slid = sliding.movePlayer("right");
+    t.checkExpect(slid.playerPos, new Posn(1000, 0));
+    t.checkExpect(slid.findCell(new Posn(1001, 0)).content, new Box());
+    t.checkExpect(slid.findCell(new Posn(999, 0)).content, new Blank());
+    t.checkExpect(slid.hash, Zobrist.hashOf(slid.grounds, slid.contents));
+
+    // pushing a box into a wall part way along stops the player behind it
+    Level blocked = new Level("_IIII_", ">_BW__");
+    t.checkExpect(blocked.movePlayer("right").playerPos, new Posn(1, 0));
+    // pushing picks up the box from the middle of the ice and carries it to where the ice ends
+    Level carried = new Level("_IIII__", ">_B____");
+    Level carriedMoved = carried.movePlayer("right");
+    t.checkExpect(carriedMoved.playerPos, new Posn(5, 0));
+    t.checkExpect(carriedMoved.findCell(new Posn(6, 0)).content, new Box());
+    t.checkExpect(carriedMoved.findCell(new Posn(2, 0)).content, new Blank());
+    // only one thing is pushed at a time
+    Level train = new Level("_IIII__", ">_BB___");
+    t.checkExpect(train.movePlayer("right").playerPos, new Posn(1, 0));
+  }
+
+  void testUnsatisfied(Tester t) {
+    this.init();
+
+    t.checkExpect(this.gameLevel.unsatisfied, 6); // only the blue trophy at (3, 6) is home
+    t.checkExpect(new Level("R_", "r>").unsatisfied, 0);
+    t.checkExpect(new Level("RG_", "gr>").unsatisfied, 2);
+    t.checkExpect(Utils.countUnsatisfied(new byte[]{3, 4, 0}, new byte[]{7, 7, 3}), 1);
+    t.checkExpect(BoardCodes.unsatisfied(BoardCodes.NORMAL, BoardCodes.BOX), 0);
+    t.checkExpect(BoardCodes.unsatisfied(BoardCodes.target(2), BoardCodes.trophy(2)), 0);
+    t.checkExpect(BoardCodes.unsatisfied(BoardCodes.target(2), BoardCodes.trophy(1)), 1);
+
+    // pushing a trophy on and off of its target
+    Level level = new Level("__R_", ">r__");
+    t.checkExpect(level.movePlayer("right").unsatisfied, 0);
+    t.checkExpect(level.movePlayer("right").levelWon(), true);
+    t.checkExpect(level.movePlayer("right").movePlayer("right").unsatisfied, 1);
+    t.checkExpect(level.movePlayer("right").movePlayer("right").levelWon(), false);
+  }
+
+  void testTileRules(Tester t) {
+    byte red = BoardCodes.target(0);
+    byte redTrophy = BoardCodes.trophy(0);
+
+    t.checkExpect(BoardCodes.GROUND_RULES[BoardCodes.ICE], BoardCodes.SLIPPERY);
+    t.checkExpect(BoardCodes.GROUND_RULES[BoardCodes.HOLE], BoardCodes.SWALLOWS);
+    t.checkExpect(BoardCodes.GROUND_RULES[BoardCodes.target(7)], BoardCodes.GOAL);
+    t.checkExpect(BoardCodes.CONTENT_RULES[BoardCodes.BLANK], BoardCodes.VACANT | BoardCodes.FIXED);
+    t.checkExpect(BoardCodes.CONTENT_RULES[BoardCodes.player(3)], BoardCodes.CONTROLLED);
+    t.checkExpect(BoardCodes.rules(new int[]{1, 2}, 3, 2, 4), new int[]{1, 2, 0, 4, 4, 0, 0, 0,
+        0, 0, 0, 0, 0, 0, 0, 0});
+
+    t.checkExpect(BoardCodes.PAIRS[BoardCodes.ICE * BoardCodes.CODES + BoardCodes.BOX],
+            (byte) BoardCodes.SLIDES);
+    t.checkExpect(BoardCodes.PAIRS[BoardCodes.HOLE * BoardCodes.CODES + BoardCodes.BOX],
+            (byte) BoardCodes.FALLS);
+    t.checkExpect(BoardCodes.PAIRS[red * BoardCodes.CODES + BoardCodes.BOX],
+            (byte) BoardCodes.UNSATISFIED);
+    t.checkExpect(BoardCodes.PAIRS[red * BoardCodes.CODES + redTrophy], (byte) 0);
+    t.checkExpect(BoardCodes.slides(BoardCodes.ICE, BoardCodes.WALL), false);
+    t.checkExpect(BoardCodes.slides(BoardCodes.ICE, BoardCodes.player(0)), true);
+    t.checkExpect(BoardCodes.falls(BoardCodes.HOLE, BoardCodes.BLANK), false);
+    t.checkExpect(BoardCodes.falls(BoardCodes.NORMAL, BoardCodes.BOX), false);
+    t.checkExpect(BoardCodes.won(BoardCodes.target(1), redTrophy), false);
+    t.checkExpect(BoardCodes.won(BoardCodes.HOLE, BoardCodes.BOX), true);
+    t.checkExpect(BoardCodes.isTrophy(BoardCodes.trophy(7)), true);
+    t.checkExpect(BoardCodes.isPlayer(BoardCodes.trophy(0)), false);
+
+    // the tile objects answer from the same tables as the codes of a level
+    t.checkExpect(new Ice().groundSlide(new Trophy("red")), true);
+    t.checkExpect(new Normal().groundSlide(new Box()), false);
+    t.checkExpect(new Target("red").groundFall(new Box()), false);
+    t.checkExpect(new Box().contentFall(new Normal()), false);
+  }
+
+  void testIncrementalWinLoss(Tester t) {
+    Random rand = new Random(2510);
+    String[] keys = {"up", "right", "down", "left", "up", "right", "down", "left", "u", "r"};
+    int moves = 0;
+    int mismatches = 0;
+
+    // EFFECT: plays random keys on random boards until a million moves have been checked,
+    //         comparing the counts kept as the game goes to counting the whole board
+    while (moves < 1000000) {
+      Sokoban world = new Sokoban(this.randomLevel(rand, 2 + rand.nextInt(8), 1 + rand.nextInt(8)));
+      // EFFECT: plays one game until it is lost or has gone on for 200 keys
+      for (int key = 0; key < 200 && !world.level.levelLost(); key++) {
+        world.onKeyEvent(keys[rand.nextInt(keys.length)]);
+        Level level = world.level;
+        byte[] grounds = level.grounds.toArray();
+        byte[] contents = level.contents.toArray();
+        boolean hasPlayer = false;
+        // EFFECT: looks at every cell for the player
+        for (byte content : contents) {
+          hasPlayer = hasPlayer || BoardCodes.isPlayer(content);
+        }
+        if (level.unsatisfied != Utils.countUnsatisfied(grounds, contents)
+                || level.levelLost() == hasPlayer) {
+          mismatches++;
+        }
+        moves++;
+      }
+    }
+    t.checkExpect(mismatches, 0);
+  }
+
+  // returns a random level of the given size, with half of its grounds ice and one player
+  Level randomLevel(Random rand, int width, int height) {
+    String grounds = "_HRGBY";
+    String contents = "____WBrgby";
+    int player = rand.nextInt(width * height);
+    StringBuilder ground = new StringBuilder();
+    StringBuilder content = new StringBuilder();
+    // EFFECT: adds a random ground and content for every cell, row by row
+    for (int idx = 0; idx < width * height; idx++) {
+      if (idx > 0 && idx % width == 0) {
+        ground.append("\n");
+        content.append("\n");
+      }
+      ground.append(rand.nextBoolean() ? 'I' : grounds.charAt(rand.nextInt(grounds.length())));
+      content.append(idx == player ? '>' : contents.charAt(rand.nextInt(contents.length())));
+    }
+    return new Level(ground.toString(), content.toString());
+  }
+
+  void testBoardRenderer(Tester t) {
+    this.init();
+
+    BoardRenderer renderer = new BoardRenderer();
+    Level level = this.gameLevel;
+    t.checkExpect(renderer.draw(level), level.draw(true));
+    t.checkExpect(renderer.cellsDrawn, 72);
+    WorldImage first = renderer.draw(level);
+    t.checkExpect(renderer.cellsDrawn, 0); // nothing changed
+    t.checkExpect(renderer.imagesMade, 0);
+    t.checkExpect(renderer.draw(level) == first, true);
+
+    level = level.movePlayer("left").updateLevel();
+    t.checkExpect(renderer.draw(level), level.draw(true));
+    t.checkExpect(renderer.cellsDrawn, 2); // where the player was and where it is now
+    t.checkExpect(renderer.imagesMade, 12); // each cell and 3 nodes above it, then 4 up the board
+    level = level.movePlayer("up").updateLevel().movePlayer("right").updateLevel();
+    t.checkExpect(renderer.draw(level), level.draw(true));
+    t.checkExpect(renderer.draw(this.gameLevel), this.gameLevel.draw(true)); // as in undo
+    t.checkExpect(renderer.draw(this.iceTest), this.iceTest.draw(true)); // a different size
+    t.checkExpect(renderer.cellsDrawn, this.iceTest.width * this.iceTest.height);
+
+    Level big = BenchLevels.openLevel(200, 200);
+    renderer.draw(big);
+    Level moved = big.movePlayer(Direction.RIGHT);
+    t.checkExpect(renderer.draw(moved), moved.draw(true));
+    t.checkExpect(renderer.cellsDrawn, 2);
+    t.checkExpect(renderer.imagesMade <= 2 * 9 + 9, true); // a path in a row and in the board
+
+    WorldImage scaled = renderer.drawScaled(moved, 0.5);
+    t.checkExpect(scaled, new ScaleImage(moved.draw(true), 0.5));
+    t.checkExpect(renderer.drawScaled(moved, 0.5) == scaled, true); // nothing changed
+    t.checkExpect(renderer.drawScaled(big, 0.5) == scaled, false);
+
+    Sokoban world = new Sokoban(this.gameLevel);
+    world.onKeyEvent("right");
+    t.checkExpect(world.makeScene(), new Sokoban(world.level).makeScene());
+  }
+
+  void testBalancedDraw(Tester t) {
+    this.init();
+
+    Level row = new Level("_IH", ">B_");
+    t.checkExpect(row.draw(true), new BesideImage(row.findCell(new Posn(0, 0)).cellToImage(),
+            new BesideImage(row.findCell(new Posn(1, 0)).cellToImage(),
+                    row.findCell(new Posn(2, 0)).cellToImage())));
+    t.checkExpect(row.draw(false), row.draw());
+
+    Level square = new Level("__\n__", ">_\n_B");
+    t.checkExpect(square.draw(true), new AboveImage(
+            new BesideImage(square.findCell(new Posn(0, 0)).cellToImage(),
+                    square.findCell(new Posn(1, 0)).cellToImage()),
+            new BesideImage(square.findCell(new Posn(0, 1)).cellToImage(),
+                    square.findCell(new Posn(1, 1)).cellToImage())));
+
+    WorldImage balanced = this.gameLevel.draw(true);
+    t.checkExpect(balanced.getWidth(), this.gameLevel.draw().getWidth());
+    t.checkExpect(balanced.getHeight(), this.gameLevel.draw().getHeight());
+    t.checkExpect(Utils.aboveAll(new WorldImage[0], 0, 0), new EmptyImage());
+
+    Level wide = BenchLevels.openLevel(5000, 1);
+    t.checkExpect(wide.draw(true).getWidth(), wide.draw().getWidth());
+  }
+
+  void testLevelRasterizer(Tester t) {
+    this.init();
+
+    t.checkConstructorException(
+            new IllegalArgumentException("A tile must be at least 1 pixel wide, given 0"),
+            "LevelRasterizer", 0);
+
+    LevelRasterizer rasterizer = new LevelRasterizer(12);
+    int[] normal = rasterizer.tiles[BoardCodes.NORMAL * Sprites.CODES + BoardCodes.BLANK];
+    t.checkExpect(normal[0], Color.BLACK.getRGB()); // the outline
+    t.checkExpect(normal[6 * 12 + 6], Color.WHITE.getRGB());
+    int[] target = rasterizer.tiles[BoardCodes.target(0) * Sprites.CODES + BoardCodes.BLANK];
+    t.checkExpect(target[6 * 12 + 6], Color.RED.getRGB());
+    t.checkExpect(target[0], Color.WHITE.getRGB());
+
+    BufferedImage image = rasterizer.rasterize(this.gameLevel);
+    t.checkExpect(image.getWidth(), this.gameLevel.width * 12);
+    t.checkExpect(image.getHeight(), this.gameLevel.height * 12);
+    int wrong = 0;
+    // EFFECT: counts the pixels of the image that are not the pixel of their cell's tile
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        int idx = this.gameLevel.indexOf(new Posn(x / 12, y / 12));
+        int[] tile = rasterizer.tiles[this.gameLevel.grounds.get(idx) * Sprites.CODES
+                + this.gameLevel.contents.get(idx)];
+        wrong += image.getRGB(x, y) == tile[(y % 12) * 12 + x % 12] ? 0 : 1;
+      }
+    }
+    t.checkExpect(wrong, 0);
+
+    File directory = new File(System.getProperty("java.io.tmpdir"), "sokoban-rasterizer-test");
+    directory.mkdirs();
+    Level[] levels = {this.gameLevel, this.iceTest, this.gameLevel.movePlayer("left")};
+    t.checkExpect(rasterizer.writeAll(levels, directory, 2), 3);
+    // EFFECT: checks that every level was written, and cleans up after it
+    for (int index = 0; index < levels.length; index++) {
+      File file = new File(directory, "level-" + index + ".png");
+      t.checkExpect(file.length() > 0, true);
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  void testLevelParser(Tester t) {
+    this.init();
+
+    String[][] descriptions = {{exampleLevelGround, exampleLevelContents},
+        {exampleLevelGround, exampleLevelContents3}, {exampleSmallGround, exampleSmallContents},
+        {exampleIceTestGround, exampleIceTestContent}, {"IHRGBY", "^>v<rg"}};
+    // EFFECT: checks that the parser reads every description as the grid of cells does
+    for (String[] description : descriptions) {
+      LevelParser parsed = new LevelParser(description[0], description[1]);
+      ArrayList<ArrayList<Cell>> grid = Utils.makeGrid(description[0], description[1]);
+      t.checkExpect(parsed.width, Utils.gridWidth(grid));
+      t.checkExpect(parsed.height, grid.size());
+      t.checkExpect(parsed.grounds, Utils.packGrounds(grid));
+      t.checkExpect(parsed.contents, Utils.packContents(grid));
+      t.checkExpect(Posn.of(parsed.player % parsed.width, parsed.player / parsed.width),
+              Utils.findPlayer(description[1]));
+      t.checkExpect(parsed.unsatisfied,
+              Utils.countUnsatisfied(parsed.grounds, parsed.contents));
+    }
+    t.checkExpect(new LevelParser("__\n__", "^_\n_>").player, 0); // the first player
+
+    t.checkConstructorException(new IllegalArgumentException("Invalid Ground/Content "
+            + "descriptions: invalid ground cell description 'X' at row 1, column 2"),
+            "LevelParser", "___\n__X", ">__\n___");
+    t.checkConstructorException(new IllegalArgumentException("Invalid Ground/Content "
+            + "descriptions: invalid content cell description 'x' at row 0, column 1"),
+            "LevelParser", "___\n___", ">x_\n___");
+    t.checkConstructorException(new IllegalArgumentException("Invalid Ground/Content "
+            + "descriptions: every row of the board must have the same length, but it has 2 "
+            + "cells instead of 3 at row 1, column 2"),
+            "LevelParser", "___\n__", ">__\n__");
+    t.checkConstructorException(new IllegalArgumentException("Invalid Ground/Content "
+            + "descriptions: the ground and content rows end at different places at row 0, "
+            + "column 2"),
+            "LevelParser", "___\n__", ">_\n___");
+    t.checkConstructorException(new IllegalArgumentException("Invalid Ground/Content "
+            + "descriptions: Given ground and content strings cannot be of different sizes"),
+            "LevelParser", "___", ">_");
+    t.checkConstructorException(new IllegalArgumentException("No player found in: ___"),
+            "LevelParser", "___", "___");
+    t.checkConstructorException(new IllegalArgumentException("Invalid Ground/Content "
+            + "descriptions: invalid ground cell description 'é' at row 0, column 0"),
+            "LevelParser", "é", ">");
+  }
+
+  // returns a file in the temporary directory with the given name and text
+  File tempFile(String name, String text) {
+    File file = new File(System.getProperty("java.io.tmpdir"), name);
+    try {
+      Files.write(file.toPath(), text.getBytes(StandardCharsets.ISO_8859_1));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return file;
+  }
+
+  void testLevelPack(Tester t) {
+    File file = this.tempFile("sokoban-pack-test.xsb", "; 1\r\nTitle: Simple\r\n\r\n"
+            + "#####\r\n#@$.#\r\n#####\r\n\r\n"
+            + "; 2\n  ####\n###  #\n#+*$#\n######\nComment: ragged\n"
+            + "; 3\n_IH|>B_\nRRR|WWW");
+    LevelPack pack = new LevelPack(file);
+    t.checkExpect(pack.size(), 3);
+    t.checkExpect(pack.rows(2), "_IH|>B_\nRRR|WWW");
+    t.checkExpect(pack.level(0), new Level("_____\n___R_\n_____", "WWWWW\nW>r_W\nWWWWW"));
+    t.checkExpect(pack.level(1), new Level("______\n______\n_RR___\n______",
+            "__WWWW\nWWW__W\nW>rrW_\nWWWWWW"));
+    t.checkExpect(pack.level(2), new Level("_IH\nRRR", ">B_\nWWW"));
+    t.checkExpect(pack.level(1).levelWon(), false);
+    t.checkExpect(pack.level(0).movePlayer("right").updateLevel().levelWon(), true);
+
+    t.checkException(new IllegalArgumentException("No level 3 in a pack of 3 levels"), pack,
+            "level", 3);
+    t.checkException(new IllegalArgumentException("Invalid XSB cell description 'x' at row 1, "
+            + "column 2"), pack, "parse", "####\n#@x#\n####");
+    t.checkExpect(new LevelPack(this.tempFile("sokoban-empty-pack.xsb", "; nothing\n")).size(),
+            0);
+    file.delete();
+  }
+
+  // returns the given level saved with the given moves, written and read back
+  SavedGame roundTrip(Level level, Direction... moves) {
+    return SaveFormat.read(ByteBuffer.wrap(SaveFormat.write(new SavedGame(level, moves))));
+  }
+
+  void testSaveFormat(Tester t) {
+    this.init();
+
+    t.checkExpect(this.roundTrip(this.gameLevel).level, this.gameLevel);
+    t.checkExpect(this.roundTrip(this.iceTest).level, this.iceTest);
+    Level moved = this.gameLevel.movePlayer("left").updateLevel().movePlayer("up").updateLevel();
+    Direction[] moves = {Direction.LEFT, Direction.UP, Direction.RIGHT, Direction.DOWN,
+        Direction.DOWN};
+    SavedGame game = this.roundTrip(moved, moves);
+    t.checkExpect(game.level, moved);
+    t.checkExpect(game.level.steps, moved.steps);
+    t.checkExpect(game.moves, moves);
+    t.checkExpect(this.roundTrip(moved).moves, new Direction[0]);
+
+    Level fallen = new Level("_H", ">_").movePlayer("right").updateLevel(); // the player fell
+    Level loaded = this.roundTrip(fallen).level;
+    t.checkExpect(loaded.grounds.toArray(), fallen.grounds.toArray());
+    t.checkExpect(loaded.contents.toArray(), fallen.contents.toArray());
+    t.checkExpect(loaded.playerPos, fallen.playerPos);
+    t.checkExpect(loaded.levelLost(), true);
+
+    // 6 header bytes, 2 for the size, 58 runs, 2 for the player and 1 for the steps, against the
+    // 144 codes of its 72 cells
+    t.checkExpect(SaveFormat.write(new SavedGame(this.gameLevel, new Direction[0])).length, 69);
+    Level big = BenchLevels.openLevel(200, 200);
+    t.checkExpect(SaveFormat.write(new SavedGame(big, new Direction[0])).length < 40, true);
+    t.checkExpect(this.roundTrip(big).level, big);
+
+    t.checkExpect(SaveFormat.zigzag(-1), 1);
+    t.checkExpect(SaveFormat.unzigzag(SaveFormat.zigzag(-12345)), -12345);
+    SaveFormat format = new SaveFormat();
+    t.checkException(new IllegalArgumentException("Not a Sokoban save"), format, "read",
+            ByteBuffer.wrap(new byte[]{'S', 'O', 'K', 'E', 1, 0}));
+    t.checkException(new IllegalArgumentException("Unsupported Sokoban save version 9"), format,
+            "read", ByteBuffer.wrap(new byte[]{'S', 'O', 'K', 'O', 9, 0}));
+    byte[] bytes = SaveFormat.write(new SavedGame(this.gameLevel, new Direction[0]));
+    t.checkException(new IllegalArgumentException("Sokoban save ends too early"), format,
+            "read", ByteBuffer.wrap(Arrays.copyOf(bytes, 20)));
+    // a 40000 by 40000 board that ends after its first run is turned down before room is made
+    // for it
+    t.checkException(new IllegalArgumentException("Sokoban save ends too early"), format,
+            "read", ByteBuffer.wrap(new byte[]{'S', 'O', 'K', 'O', 1, 0, (byte) 0xC0, (byte) 0xB8,
+                2, (byte) 0xC0, (byte) 0xB8, 2, 0x01}));
+    t.checkException(new IllegalArgumentException("Sokoban save has a board of 65536 by 65536 "
+            + "cells, which no level can have"), format, "read", ByteBuffer.wrap(new byte[]{'S',
+                'O', 'K', 'O', 1, 0, (byte) 0x80, (byte) 0x80, 4, (byte) 0x80, (byte) 0x80, 4}));
+    t.checkException(new IllegalArgumentException("Sokoban save has a board of -1 by 1 cells, "
+            + "which no level can have"), format, "read", ByteBuffer.wrap(new byte[]{'S', 'O',
+                'K', 'O', 1, 0, -1, -1, -1, -1, 15, 1}));
+    t.checkException(new IllegalArgumentException("Sokoban save has a run of 0 codes"), format,
+            "read", ByteBuffer.wrap(new byte[]{'S', 'O', 'K', 'O', 1, 0, 1, 1, 0, 0}));
+    t.checkException(new IllegalArgumentException("Sokoban save has an unknown ground code 15"),
+            format, "read", ByteBuffer.wrap(new byte[]{'S', 'O', 'K', 'O', 1, 0, 1, 1,
+                (byte) 0xF1}));
+    t.checkException(new IllegalArgumentException("Sokoban save has an unknown content code 15"),
+            format, "read", ByteBuffer.wrap(new byte[]{'S', 'O', 'K', 'O', 1, 0, 1, 1, 0x01,
+                (byte) 0xF1}));
+    // a box where the player should be, with the player beside it
+    t.checkException(new IllegalArgumentException("Sokoban save has its player at column 0, "
+            + "row 0, where the board has no player"), format, "read", ByteBuffer.wrap(
+                new byte[]{'S', 'O', 'K', 'O', 1, 0, 2, 1, 0x02, 0x21, 0x31, 0, 0, 0}));
+    t.checkExpect(SaveFormat.playerAt(2, 1, new byte[]{BoardCodes.BOX, BoardCodes.PLAYER}, 1, 0),
+            true);
+    t.checkExpect(SaveFormat.playerAt(2, 1, new byte[]{BoardCodes.BOX, BoardCodes.BLANK}, 1, 0),
+            true);
+    t.checkExpect(SaveFormat.playerAt(2, 1, new byte[]{BoardCodes.BOX, BoardCodes.BLANK}, 0, 0),
+            false);
+
+    File directory = new File(System.getProperty("java.io.tmpdir"), "sokoban-save-test");
+    directory.mkdirs();
+    SaveFormat.writeFile(new SavedGame(this.iceTest, moves), new File(directory, "b.sok"));
+    SaveFormat.writeFile(new SavedGame(this.gameLevel, new Direction[0]),
+            new File(directory, "a.sok"));
+    ArrayList<SavedGame> games = SaveFormat.readDirectory(directory);
+    t.checkExpect(games.size(), 2);
+    t.checkExpect(games.get(0).level, this.gameLevel);
+    t.checkExpect(games.get(1).moves, moves);
+    new File(directory, "a.sok").delete();
+    new File(directory, "b.sok").delete();
+    directory.delete();
+  }
+
+  void testReplay(Tester t) {
+    this.init();
+
+    t.checkExpect(KeyLog.code("left"), (byte) Direction.LEFT.ordinal());
+    t.checkExpect(KeyLog.code("u"), KeyLog.UNDO);
+    t.checkExpect(KeyLog.code("x"), (byte) -1);
+
+    String[] keys = {"up", "down", "left", "right", "u", "r", "x"};
+    Random rand = new Random(17);
+    Level[] starts = {this.gameLevel, this.iceTest};
+    // EFFECT: plays a random game on every level and replays it
+    for (Level start : starts) {
+      Sokoban world = new Sokoban(start);
+      ArrayList<Level> played = new ArrayList<Level>();
+      played.add(start);
+      // EFFECT: presses random keys, keeping the level after every key the game handled
+      for (int press = 0; press < 2000; press++) {
+        String key = keys[rand.nextInt(keys.length)];
+        world.onKeyEvent(key);
+        if (KeyLog.code(key) >= 0) {
+          played.add(world.level);
+        }
+      }
+      t.checkExpect(world.keys.size, played.size() - 1);
+
+      Replay replay = new Replay(world.keys, 64);
+      t.checkExpect(replay.fastForward(), world.level);
+      t.checkExpect(replay.checkpoints.size(), world.keys.size / 64 + 1);
+      t.checkExpect(replay.keysReplayed, (long) world.keys.size);
+      // EFFECT: seeks to random keys, checking each costs less than a checkpoint interval
+      for (int seek = 0; seek < 50; seek++) {
+        int target = rand.nextInt(world.keys.size + 1);
+        long before = replay.keysReplayed;
+        t.checkExpect(replay.seek(target), played.get(target));
+        t.checkExpect(replay.keysReplayed - before < 64, true);
+      }
+      t.checkExpect(replay.seek(0), start);
+    }
+
+    Sokoban world = new Sokoban(this.gameLevel);
+    world.onKeyEvent("left");
+    world.onKeyEvent("u");
+    world.onKeyEvent("r");
+    Replay replay = new Replay(world.keys, 1);
+    t.checkExpect(replay.seek(2).contents.toArray(), this.gameLevel.contents.toArray());
+    t.checkExpect(replay.seek(2).steps, 2); // undoing takes a step
+    t.checkExpect(replay.seek(3), world.level);
+    t.checkException(new IllegalArgumentException("No key 4 in a log of 3 keys"), replay,
+            "seek", 4);
+    t.checkConstructorException(new IllegalArgumentException("Checkpoints must be at least 1 "
+            + "key apart, given 0"), "Replay", world.keys, 0);
+
+    // a log that goes on with a walk that never started, as a cut off log can
+    KeyLog cut = new KeyLog(this.gameLevel);
+    cut.add((byte) (KeyLog.WALK_ON + Direction.LEFT.ordinal()));
+    t.checkException(new IllegalArgumentException("Key " + (KeyLog.WALK_ON
+            + Direction.LEFT.ordinal()) + " goes on with a walk, but there is no move before it "
+            + "to join"), new Replay(cut, 1), "fastForward");
+
+    // once there are twice as many moves to undo as can be undone, only those that can be are kept
+    MoveDelta left = MoveDelta.between(this.gameLevel, this.gameLevel.movePlayer("left"));
+    DeltaList undo = null;
+    // EFFECT: makes a list of twice as many moves as can be undone
+    for (int move = 0; move < 2 * Constants.UNDO_LIMIT; move++) {
+      undo = new DeltaList(left, undo);
+    }
+    t.checkExpect(undo.size, 2 * Constants.UNDO_LIMIT);
+    t.checkExpect(undo.first(3).size, 3);
+    t.checkExpect(undo.first(3).next.next.next, null);
+    t.checkExpect(undo.first(3).delta == left, true);
+    DeltaList kept = ReplayState.remember(left, undo);
+    t.checkExpect(kept.size, Constants.UNDO_LIMIT);
+    t.checkExpect(ReplayState.remember(left, kept).size, Constants.UNDO_LIMIT + 1);
+    ReplayState full = new ReplayState(this.gameLevel, undo, Constants.UNDO_LIMIT, null)
+            .next((byte) Direction.LEFT.ordinal());
+    t.checkExpect(full.undo.size, Constants.UNDO_LIMIT);
+    t.checkExpect(full.undoable, Constants.UNDO_LIMIT);
+  }
+
+  void testPathfinder(Tester t) {
+    this.init();
+
+    Pathfinder paths = new Pathfinder();
+    t.checkExpect(paths.path(this.gameLevel, new Posn(1, 2)), new Direction[]{Direction.LEFT});
+    t.checkExpect(paths.path(this.gameLevel, new Posn(2, 2)), new Direction[0]);
+    t.checkExpect(paths.path(this.gameLevel, new Posn(4, 1)), null); // only by pushing the box
+    t.checkExpect(paths.path(this.gameLevel, new Posn(8, 2)), null);
+    t.checkExpect(paths.regionSearches, 1L);
+
+    Level pushed = this.gameLevel.movePlayer(Direction.RIGHT);
+    Direction[] walk = paths.path(pushed, new Posn(5, 3));
+    t.checkExpect(walk, new Direction[]{Direction.UP, Direction.RIGHT, Direction.RIGHT,
+        Direction.DOWN, Direction.DOWN});
+    t.checkExpect(paths.regionSearches, 2L);
+    t.checkExpect(paths.path(pushed, new Posn(3, 5)), null); // a hole
+    t.checkExpect(paths.path(pushed, new Posn(4, 5)).length, 8);
+
+    Level walked = pushed.walk(new Posn(5, 3), walk);
+    Level stepped = pushed;
+    // EFFECT: makes each move of the walk one at a time
+    for (Direction direction : walk) {
+      stepped = stepped.movePlayer(direction).updateLevel();
+    }
+    t.checkExpect(walked.contents.toArray(), stepped.contents.toArray());
+    t.checkExpect(walked.playerPos, stepped.playerPos);
+    t.checkExpect(walked.hash, stepped.hash);
+    t.checkExpect(walked.steps, stepped.steps);
+    t.checkExpect(paths.path(walked, new Posn(3, 2)), new Direction[]{Direction.UP, Direction.UP,
+        Direction.LEFT, Direction.LEFT, Direction.DOWN});
+    t.checkExpect(paths.regionSearches, 2L); // walking does not change the layout
+
+    Level slide = new Level("_II__", ">___W");
+    t.checkExpect(paths.path(slide, new Posn(3, 0)), new Direction[]{Direction.RIGHT});
+    t.checkExpect(paths.path(slide, new Posn(1, 0)), null);
+    t.checkExpect(paths.path(slide, new Posn(2, 0)), null);
+    t.checkExpect(paths.path(slide, new Posn(4, 0)), null);
+    Level slidePush = new Level("_II__", ">__B_");
+    t.checkExpect(paths.path(slidePush, new Posn(2, 0)), null); // it slides on into the box
+    Level startSlide = new Level("__I_", ">_B_");
+    t.checkExpect(paths.path(startSlide, new Posn(1, 0)), null); // the box would slide away
+    t.checkExpect(paths.path(this.iceTest, new Posn(1, 2)), new Direction[]{Direction.UP});
+    t.checkExpect(paths.regionSearches, 6L);
+
+    // after a push only the moves around what it changed are worked out again, and they come out
+    // the same as working out every move of the board again
+    Random rand = new Random(5);
+    Pathfinder patched = new Pathfinder();
+    int pushes = 0;
+    int differing = 0;
+    // EFFECT: makes random moves on random boards of ice, holes and boxes, finding the region after
+    //         each move both by patching the last board and by copying the whole board
+    for (int board = 0; board < 20; board++) {
+      Level level = this.randomLevel(rand, 12, 12);
+      for (int move = 0; move < 30; move++) {
+        Level moved = level.movePlayer(Direction.ALL[rand.nextInt(4)]).updateLevel();
+        long layout = Pathfinder.layoutOf(moved);
+        pushes += layout == Pathfinder.layoutOf(level) ? 0 : 1;
+        patched.findRegion(moved, layout);
+        Pathfinder copied = new Pathfinder();
+        copied.findRegion(moved, layout);
+        differing += Arrays.equals(patched.ends, copied.ends)
+                && Arrays.equals(patched.contents, copied.contents)
+                && Arrays.equals(patched.grounds, copied.grounds) ? 0 : 1;
+        level = moved;
+      }
+    }
+    t.checkExpect(pushes > 50, true);
+    t.checkExpect(differing, 0);
+
+    Sokoban world = new Sokoban(this.gameLevel);
+    t.checkExpect(world.cellAt(new javalib.worldimages.Posn(160, 130)), new Posn(0, 0));
+    t.checkExpect(world.cellAt(new javalib.worldimages.Posn(159, 130)), new Posn(-1, 0));
+    world.onMouseClicked(new javalib.worldimages.Posn(250, 280));
+    t.checkExpect(world.level.playerPos, new Posn(1, 2));
+    t.checkExpect(world.level.steps, 1);
+    world.onMouseClicked(new javalib.worldimages.Posn(430, 190)); // (4, 1) needs a push
+    t.checkExpect(world.level.playerPos, new Posn(1, 2));
+    world.onKeyEvent("right");
+    world.onKeyEvent("right");
+    world.onMouseClicked(new javalib.worldimages.Posn(490, 340));
+    Level clicked = world.level;
+    t.checkExpect(clicked.playerPos, new Posn(5, 3));
+    t.checkExpect(clicked.steps, 8);
+    world.onKeyEvent("u"); // undoes the whole walk
+    t.checkExpect(world.level.playerPos, new Posn(3, 2));
+    t.checkExpect(world.keys.size, 9);
+
+    Replay replay = new Replay(world.keys, 1);
+    t.checkExpect(replay.seek(8).contents.toArray(), clicked.contents.toArray());
+    t.checkExpect(replay.seek(8).steps, clicked.steps);
+    t.checkExpect(replay.fastForward(), world.level);
+
+    // a click walk updates the level as keys do, so the wall falls into the hole, and replaying
+    // the log gets the same level as the game
+    Sokoban fallen = new Sokoban(new Level("H___", "W>__"));
+    fallen.onMouseClicked(new javalib.worldimages.Posn(480, 390)); // (3, 0)
+    t.checkExpect(fallen.level.playerPos, new Posn(3, 0));
+    t.checkExpect(fallen.level.grounds.get(fallen.level.indexOf(new Posn(0, 0))),
+            BoardCodes.NORMAL);
+    t.checkExpect(new Replay(fallen.keys, 1).fastForward(), fallen.level);
+    // once the wall has fallen, the player slides past where it stood, just as a replay does
+    Sokoban slid = new Sokoban(new Level("__IIH", ">___W"));
+    slid.onMouseClicked(new javalib.worldimages.Posn(450, 390)); // (3, 0)
+    t.checkExpect(slid.level.playerPos, new Posn(4, 0));
+    t.checkExpect(new Replay(slid.keys, 1).fastForward(), slid.level);
+    t.checkExpect(new Level("__IIH", ">___W").settled(), false);
+    t.checkExpect(slid.level.settled(), true);
+  }
+
+  void testPushPlanner(Tester t) {
+    this.init();
+
+    PushPlanner planner = new PushPlanner(this.gameLevel);
+    int trophy = this.gameLevel.indexOf(new Posn(3, 2));
+    t.checkExpect(planner.distancesTo(this.gameLevel.indexOf(new Posn(5, 4)))[trophy], 4);
+    t.checkExpect(planner.distancesTo(this.gameLevel.indexOf(new Posn(5, 4)))[0], -1);
+    t.checkExpect(planner.distances.size(), 1);
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(3, 2), new Posn(5, 2)),
+            new Direction[]{Direction.RIGHT, Direction.RIGHT});
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(3, 2), new Posn(5, 4)),
+            new Direction[]{Direction.RIGHT, Direction.RIGHT, Direction.UP, Direction.RIGHT,
+                Direction.DOWN, Direction.DOWN});
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(3, 2), new Posn(3, 2)),
+            new Direction[0]);
+    // pushed out of the way first, so the player can walk around it and push it back
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(3, 2), new Posn(1, 2)),
+            new Direction[]{Direction.RIGHT, Direction.UP, Direction.RIGHT, Direction.RIGHT,
+                Direction.DOWN, Direction.LEFT, Direction.LEFT, Direction.LEFT});
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(3, 2), new Posn(4, 1)), null);
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(2, 2), new Posn(1, 2)), null);
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(0, 2), new Posn(1, 2)), null);
+    t.checkExpect(planner.plan(this.gameLevel, new Posn(3, 2), new Posn(8, 2)), null);
+
+    Level icy = new Level("___II__", ">B_____");
+    PushPlanner icyPlanner = new PushPlanner(icy);
+    t.checkExpect(icyPlanner.plan(icy, new Posn(1, 0), new Posn(5, 0)),
+            new Direction[]{Direction.RIGHT, Direction.RIGHT});
+    t.checkExpect(icyPlanner.plan(icy, new Posn(1, 0), new Posn(4, 0)), null); // slides past
+    // the player slides across the ice into the box for the last push
+    t.checkExpect(icyPlanner.plan(icy, new Posn(1, 0), new Posn(6, 0)),
+            new Direction[]{Direction.RIGHT, Direction.RIGHT, Direction.RIGHT});
+    Level holed = new Level("__H_", ">B__");
+    t.checkExpect(new PushPlanner(holed).plan(holed, new Posn(1, 0), new Posn(3, 0)), null);
+    // the wall falls into the hole after the first push, which opens the way for the second
+    Level fallen = new Level("H___", "W_B<");
+    Direction[] fill = new PushPlanner(fallen).plan(fallen, new Posn(2, 0), new Posn(0, 0));
+    t.checkExpect(fill, new Direction[]{Direction.LEFT, Direction.LEFT});
+    t.checkExpect(fallen.movePlayer(Direction.LEFT).updateLevel().movePlayer(Direction.LEFT)
+            .updateLevel().contents.get(fallen.indexOf(new Posn(0, 0))), BoardCodes.BOX);
+
+    Sokoban world = new Sokoban(this.gameLevel);
+    world.onMousePressed(new javalib.worldimages.Posn(370, 280));
+    world.onMouseReleased(new javalib.worldimages.Posn(375, 285)); // the same cell
+    t.checkExpect(world.level, this.gameLevel);
+    t.checkExpect(world.dragStart, null);
+    world.onMousePressed(new javalib.worldimages.Posn(370, 280));
+    world.onMouseReleased(new javalib.worldimages.Posn(490, 400));
+    t.checkExpect(world.level.contents.get(world.level.indexOf(new Posn(5, 4))),
+            this.gameLevel.contents.get(trophy));
+    t.checkExpect(world.level.playerPos, new Posn(5, 3));
+    t.checkExpect(world.level.steps, 6);
+    t.checkExpect(world.keys.size, 6);
+    Replay replay = new Replay(world.keys, 4);
+    t.checkExpect(replay.fastForward(), world.level);
+    world.onKeyEvent("u"); // undoes every push and walk
+    t.checkExpect(world.level.contents.toArray(), this.gameLevel.contents.toArray());
+    t.checkExpect(world.level.playerPos, new Posn(2, 2));
+  }
+
+  void testLevelValidator(Tester t) {
+    File directory = new File(System.getProperty("java.io.tmpdir"), "sokoban-validator-test");
+    directory.mkdirs();
+    File first = new File(directory, "a.xsb");
+    File second = new File(directory, "b.xsb");
+    File empty = new File(directory, "aa.xsb");
+    this.tempFile("sokoban-validator-test/a.xsb", "#####\n#@$.#\n#####\n\n"
+            + "#####\n#@x.#\n#####\n\n"
+            + "######\n#@$.@#\n######\n");
+    this.tempFile("sokoban-validator-test/aa.xsb", "; nothing here\n");
+    this.tempFile("sokoban-validator-test/b.xsb", "_RR|>r_\n\n"
+            + "#####\n#@.$#\n#####\n\n"
+            + "#######\n#@ $ .#\n#######\n");
+
+    LevelValidator validator = new LevelValidator(directory, 0);
+    t.checkExpect(validator.size, 6);
+    LevelReport[] reports = validator.validateAll(2);
+    t.checkExpect(reports[0].valid(), true);
+    t.checkExpect(reports[0].solution, -1);
+    t.checkExpect(reports[1].codes, new ArrayList<String>(Arrays.asList("structure")));
+    t.checkExpect(reports[1].messages.get(0), "Invalid XSB cell description 'x' at row 1, "
+            + "column 2");
+    t.checkExpect(reports[2].codes, new ArrayList<String>(Arrays.asList("players")));
+    t.checkExpect(reports[3].source, "b.xsb");
+    t.checkExpect(reports[3].index, 0);
+    t.checkExpect(reports[3].codes, new ArrayList<String>(Arrays.asList("colors")));
+    t.checkExpect(reports[3].messages.get(0), "1 red trophies for 2 red targets");
+    t.checkExpect(reports[4].codes, new ArrayList<String>(Arrays.asList("reach")));
+    t.checkExpect(reports[4].messages.get(0), "the red trophy at (3, 1) can never reach a red "
+            + "target");
+    t.checkExpect(reports[5].valid(), true);
+
+    LevelValidator solving = new LevelValidator(second, 100000);
+    t.checkExpect(solving.validate(2).solution, 3);
+    t.checkExpect(new LevelValidator(second, 1).validate(2).codes,
+            new ArrayList<String>(Arrays.asList("unsolved")));
+
+    LevelReport report = new LevelReport("a \"b\".xsb", 3);
+    t.checkExpect(report.toJson(), "{\"source\":\"a \\\"b\\\".xsb\",\"index\":3,"
+            + "\"valid\":true,\"solution\":-1,\"problems\":[]}");
+    report.problem("players", "2 players");
+    t.checkExpect(LevelValidator.toJson(new LevelReport[]{report}), "{\"levels\":1,\"valid\":0,"
+            + "\"invalid\":1,\"reports\":[\n  {\"source\":\"a \\\"b\\\".xsb\",\"index\":3,"
+            + "\"valid\":false,\"solution\":-1,\"problems\":[{\"code\":\"players\","
+            + "\"message\":\"2 players\"}]}\n]}");
+    t.checkExpect(LevelReport.quote("a\nb"), "\"a\\u000ab\"");
+
+    first.delete();
+    second.delete();
+    empty.delete();
+    directory.delete();
+  }
+
+  void testBenchLayouts(Tester t) {
+    t.checkExpect(BenchLevels.layout(3, 2, "open"), new String[]{"___\n___", "___\n_>_"});
+    t.checkExpect(BenchLevels.layout(3, 2, "ice"), new String[]{"III\nIII", "___\n_>_"});
+    t.checkExpect(BenchLevels.layout(7, 3, "holes"), // none right around the player
+            new String[]{"H_____H\n_______\n_______", "_B_____\n___>___\n_______"});
+    t.checkExpect(BenchLevels.openLevel(8, 8).playerPos, new Posn(4, 4));
+  }
+
+  void testLatencyHistogram(Tester t) {
+    t.checkExpect(LatencyHistogram.bucket(-5), 0);
+    t.checkExpect(LatencyHistogram.bucket(31), 31);
+    t.checkExpect(LatencyHistogram.bucket(32), 32);
+    t.checkExpect(LatencyHistogram.highest(32), 33L);
+    t.checkExpect(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.BUCKETS - 1);
+    t.checkExpect(LatencyHistogram.highest(LatencyHistogram.BUCKETS - 1), Long.MAX_VALUE);
+    Random rand = new Random(23);
+    int wrong = 0;
+    // EFFECT: counts the values whose bucket does not hold them to within 1/16
+    for (int value = 0; value < 10000; value++) {
+      long nanos = rand.nextLong() >>> (1 + rand.nextInt(63));
+      long highest = LatencyHistogram.highest(LatencyHistogram.bucket(nanos));
+      boolean holds = highest >= nanos && highest - nanos <= nanos / 16
+              && LatencyHistogram.bucket(highest) == LatencyHistogram.bucket(nanos);
+      wrong += holds ? 0 : 1;
+    }
+    t.checkExpect(wrong, 0);
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    t.checkExpect(histogram.percentile(50), 0L);
+    // EFFECT: records 1 to 1000
+    for (long nanos = 1; nanos <= 1000; nanos++) {
+      histogram.record(nanos);
+    }
+    t.checkExpect(histogram.count(), 1000L);
+    t.checkExpect(histogram.total.sum(), 500500L);
+    t.checkExpect(histogram.percentile(50), 511L); // 500 is in the bucket of 480 to 511
+    t.checkExpect(histogram.percentile(100), 1000L);
+  }
+
+  void testMetrics(Tester t) {
+    this.init();
+
+    Sokoban world = new Sokoban(this.gameLevel);
+    HistogramSink sink = new HistogramSink();
+    Metrics.install(sink);
+    world.onKeyEvent("left");
+    world.onKeyEvent("u");
+    world.onKeyEvent("x");
+    world.makeScene();
+    Metrics.install(null);
+    world.onKeyEvent("right"); // not recorded
+
+    t.checkExpect(sink.latencies[Phase.KEY.ordinal()].count(), 3L);
+    t.checkExpect(sink.latencies[Phase.MOVE.ordinal()].count(), 1L);
+    t.checkExpect(sink.latencies[Phase.HOLES.ordinal()].count(), 1L);
+    t.checkExpect(sink.latencies[Phase.WIN_LOSS.ordinal()].count(), 3L);
+    t.checkExpect(sink.latencies[Phase.SCENE.ordinal()].count(), 1L);
+    t.checkExpect(sink.summary().startsWith("key: 3 runs, p50 "), true);
+    t.checkExpect(Metrics.nanos(), 0L);
+
+    FlightRecorderSink recorder = new FlightRecorderSink();
+    recorder.record(Phase.KEY, 100, 10);
+    recorder.record(Phase.MOVE, 40, 0);
+    recorder.record(Phase.HOLES, 30, 0);
+    t.checkExpect(recorder.frame.keys, 1);
+    t.checkExpect(recorder.frame.keyNanos + recorder.frame.moveNanos
+            + recorder.frame.holeNanos, 170L);
+    FrameEvent frame = recorder.frame;
+    recorder.record(Phase.SCENE, 500, 20);
+    t.checkExpect(frame.sceneNanos, 500L);
+    t.checkExpect(frame.bytes, 30L);
+    t.checkExpect(recorder.frame.keys, 0); // a new frame
+    FrameEvent clickFrame = recorder.frame;
+    recorder.record(Phase.PATH, 60, 0);
+    recorder.record(Phase.PLAN, 70, 0);
+    recorder.record(Phase.CLICK, 200, 40);
+    t.checkExpect(recorder.frame == clickFrame, true); // not committed until the scene
+    t.checkExpect(clickFrame.clicks, 1);
+    t.checkExpect(clickFrame.clickNanos + clickFrame.pathNanos + clickFrame.planNanos, 330L);
+    t.checkExpect(clickFrame.sceneNanos, 0L);
+    t.checkExpect(clickFrame.bytes, 40L);
+    recorder.record(Phase.SCENE, 500, 20);
+    t.checkExpect(clickFrame.sceneNanos, 500L);
+    t.checkExpect(recorder.frame == clickFrame, false);
+  }
+
+  void testSprites(Tester t) {
+    t.checkExpect(Sprites.file("box"), new FromFileImage("./src/assets/box.png"));
+    t.checkExpect(Sprites.file("box") == Sprites.file("box"), true);
+    t.checkExpect(Sprites.file("player") == Constants.PLAYER_SPRITE, true);
+    t.checkExpect(new Trophy("red").contentToImage() == new Trophy("red").contentToImage(), true);
+
+    Cell cell = new Cell(new Target("blue"), new Trophy("green"));
+    t.checkExpect(cell.cellToImage(), new OverlayImage(
+            new FromFileImage("./src/assets/trophy_green.png"), Constants.TARGET_BLUE_SPRITE));
+    t.checkExpect(cell.cellToImage() == Sprites.cell(BoardCodes.target(2), BoardCodes.trophy(1)),
+            true);
+    t.checkExpect(new Cell(new Ice(), new Blank()).cellToImage(),
+            new OverlayImage(new EmptyImage(), Constants.ICE_SPRITE));
+
+    Sprites.preload();
+    t.checkExpect(Sprites.LOADED.size(), Sprites.FILES.length);
+    t.checkExpect(Sprites.CELLS[BoardCodes.HOLE * Sprites.CODES + BoardCodes.player(3)] != null,
+            true);
+  }
+
+  void testPosnCache(Tester t) {
+    t.checkExpect(Posn.of(3, 4), new Posn(3, 4));
+    t.checkExpect(Posn.of(3, 4) == Posn.of(3, 4), true);
+    t.checkExpect(Posn.of(-1, 4) == Posn.of(-1, 4), false); // only positions on a board are kept
+    t.checkExpect(Posn.of(Posn.CACHED_SIZE, 0), new Posn(Posn.CACHED_SIZE, 0));
+    t.checkExpect(new Posn(0, 0).movePosn(Direction.DOWN) == Posn.of(0, 1), true);
+  }
+
+  void testNeighborDirection(Tester t) {
+    this.init();
+
+    t.checkExpect(this.gameLevel.neighbor(33, Direction.RIGHT), 34);
+    t.checkExpect(this.gameLevel.neighbor(33, Direction.UP), 23);
+    // off every edge is a wall of the ring, not a cell on another row
+    t.checkExpect(this.gameLevel.neighbor(18, Direction.RIGHT), 19);
+    t.checkExpect(this.gameLevel.cellAt(19), new Cell(new Normal(), new Wall()));
+    t.checkExpect(this.gameLevel.neighbor(21, Direction.LEFT), 20);
+    t.checkExpect(this.gameLevel.cellAt(20), new Cell(new Normal(), new Wall()));
+    t.checkExpect(this.gameLevel.neighbor(14, Direction.UP), 4);
+    t.checkExpect(this.gameLevel.cellAt(4), new Cell(new Normal(), new Wall()));
+    t.checkExpect(this.gameLevel.neighbor(94, Direction.DOWN), 104);
+    t.checkExpect(this.gameLevel.cellAt(104), new Cell(new Normal(), new Wall()));
+    t.checkExpect(this.gameLevel.movePlayer(Direction.RIGHT), this.gameLevel.movePlayer("right"));
+  }
+
+  void testSolverEstimate(Tester t) {
+    this.init();
+
+    SokobanSolver solver = new SokobanSolver(new Level("B____\nIIII_", "____>\n_____"));
+    // the trophy is 4 cells along the top row from its target, but taking it down onto the ice
+    // only costs moving it off of 2 cells
+    t.checkExpect(solver.estimate(Level.pad(5, 2,
+            new byte[]{0, 0, 0, 0, BoardCodes.trophy(2), 0, 0, 0, 0, 0}, BoardCodes.WALL)), 2);
+    // from the bottom row it only has to leave the cell it starts on, and then slides the rest
+    t.checkExpect(solver.estimate(Level.pad(5, 2,
+            new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, BoardCodes.trophy(2)}, BoardCodes.WALL)), 1);
+    // no blue trophy left on the board
+    t.checkExpect(solver.estimate(Level.pad(5, 2, new byte[10], BoardCodes.WALL)),
+            SokobanSolver.UNREACHABLE);
+    t.checkExpect(solver.estimate(Level.pad(5, 2,
+            new byte[]{BoardCodes.trophy(2), 0, 0, 0, 0, 0, 0, 0, 0, 0}, BoardCodes.WALL)), 0);
+  }
+
+  // returns the level reached by making each of the given moves in the given level
+  Level play(Level level, ArrayList<String> moves) {
+    // EFFECT: makes every move in order
+    for (String direction : moves) {
+      level = level.movePlayer(direction).updateLevel();
+    }
+    return level;
+  }
+
   // Ground methods
 
   void testGroundToImage(Tester t) {
@@ -1774,41 +7714,152 @@ class ExamplesSokoban {
 
   void testUndoMove(Tester t) {
     this.init();
+    Sokoban world = new Sokoban(this.gameLevel);
 
-    // FIXME gamelevel.playerpos field of field in tests allowed? (also in testMovePlayer)
-    t.checkExpect(this.gameLevel.playerPos, new Posn(2, 2)); // init player pos
-    this.gameLevel = this.gameLevel.movePlayer("left");
-    t.checkExpect(this.gameLevel.playerPos, new Posn(1, 2)); // check player moved left
-    this.gameLevel = this.gameLevel.undoMove();
-    t.checkExpect(this.gameLevel.playerPos, new Posn(2, 2)); // player back at init pos
-    this.gameLevel = this.gameLevel.movePlayer("right");
-    t.checkExpect(this.gameLevel.playerPos, new Posn(3, 2)); // check player pushed and moved right
-    this.gameLevel = this.gameLevel.movePlayer("right");
-    t.checkExpect(this.gameLevel.playerPos, new Posn(4, 2)); // check player pushed and moved right
-    this.gameLevel = this.gameLevel.undoMove();
-    t.checkExpect(this.gameLevel.playerPos, new Posn(3, 2)); // check player pos undo
-    t.checkExpect(this.gameLevel.findCell(new Posn(4, 2)).content,
+    t.checkExpect(world.level.playerPos, new Posn(2, 2)); // init player pos
+    world.onKeyEvent("left");
+    t.checkExpect(world.level.playerPos, new Posn(1, 2)); // check player moved left
+    world.onKeyEvent("u");
+    t.checkExpect(world.level.playerPos, new Posn(2, 2)); // player back at init pos
+    world.onKeyEvent("right");
+    t.checkExpect(world.level.playerPos, new Posn(3, 2)); // check player pushed and moved right
+    world.onKeyEvent("right");
+    t.checkExpect(world.level.playerPos, new Posn(4, 2)); // check player pushed and moved right
+    world.onKeyEvent("u");
+    t.checkExpect(world.level.playerPos, new Posn(3, 2)); // check player pos undo
+    t.checkExpect(world.level.findCell(new Posn(4, 2)).content,
             new Trophy("blue")); // check trophy undo
-    this.gameLevel = this.gameLevel.undoMove();
-    t.checkExpect(this.gameLevel.playerPos, new Posn(2, 2)); // check player pos undo
-    t.checkExpect(this.gameLevel.findCell(new Posn(3, 2)).content,
+    world.onKeyEvent("u");
+    t.checkExpect(world.level.playerPos, new Posn(2, 2)); // check player pos undo
+    t.checkExpect(world.level.findCell(new Posn(3, 2)).content,
             new Trophy("blue")); // check trophy undo
-    this.gameLevel = this.gameLevel.undoMove();
-    t.checkExpect(this.gameLevel.playerPos, new Posn(2, 2)); // no change, no more prev level
+    world.onKeyEvent("u");
+    t.checkExpect(world.level.playerPos, new Posn(2, 2)); // no change, nothing left to undo
+    t.checkExpect(world.level.contents.toArray(), this.gameLevel.contents.toArray());
   }
 
-  void testUpdateScore(Tester t) {
+  void testRedoMove(Tester t) {
     this.init();
+    Sokoban world = new Sokoban(this.gameLevel);
 
-    // FIXME fof
-    t.checkExpect(this.gameLevel.steps, 0); // init score
-    this.gameLevel = this.gameLevel.movePlayer("left");
-    t.checkExpect(this.gameLevel.steps, 1); // score inc on move
-    this.gameLevel = this.gameLevel.movePlayer("up");
-    t.checkExpect(this.gameLevel.steps, 1); // no move, no change
-    this.gameLevel = this.gameLevel.undoMove();
-    t.checkExpect(this.gameLevel.steps, 2); // score inc on undo
+    world.onKeyEvent("right");
+    world.onKeyEvent("right");
+    Level pushedTwice = world.level;
+    world.onKeyEvent("u");
+    world.onKeyEvent("u");
+    world.onKeyEvent("r");
+    t.checkExpect(world.level.playerPos, new Posn(3, 2)); // first push redone
+    world.onKeyEvent("r");
+    t.checkExpect(world.level.playerPos, new Posn(4, 2)); // second push redone
+    t.checkExpect(world.level.contents.toArray(), pushedTwice.contents.toArray());
+    world.onKeyEvent("r");
+    t.checkExpect(world.level.playerPos, new Posn(4, 2)); // nothing left to redo
+
+    world.onKeyEvent("u");
+    world.onKeyEvent("left"); // a new move forgets the undone move
+    world.onKeyEvent("r");
+    t.checkExpect(world.level.playerPos, new Posn(2, 2));
+  }
+
+  void testUndoHole(Tester t) {
+    this.init();
+    Sokoban world = new Sokoban(new Level("__H", ">B_"));
+
+    world.onKeyEvent("right"); // the box is pushed into the hole and fills it in
+    t.checkExpect(world.level.findCell(new Posn(2, 0)), new Cell(new Normal(), new Blank()));
+    world.onKeyEvent("u");
+    t.checkExpect(world.level.findCell(new Posn(2, 0)), new Cell(new Hole(), new Blank()));
+    t.checkExpect(world.level.findCell(new Posn(1, 0)), new Cell(new Normal(), new Box()));
+    world.onKeyEvent("r");
+    t.checkExpect(world.level.findCell(new Posn(2, 0)), new Cell(new Normal(), new Blank()));
+  }
+
+  void testMoveDelta(Tester t) {
+    this.init();
+    Level pushed = this.gameLevel.movePlayer("right").updateLevel();
+    MoveDelta delta = MoveDelta.between(this.gameLevel, pushed);
+
+    t.checkExpect(delta.cells, new int[]{33, 34, 35});
+    t.checkExpect(delta.contentsBefore, new byte[]{BoardCodes.player(1), BoardCodes.trophy(2),
+        BoardCodes.BLANK});
+    t.checkExpect(delta.contentsAfter, new byte[]{BoardCodes.BLANK, BoardCodes.player(1),
+        BoardCodes.trophy(2)});
+    t.checkExpect(delta.playerBefore, new Posn(2, 2));
+    t.checkExpect(delta.playerAfter, new Posn(3, 2));
+    t.checkExpect(delta.steps, 1);
+    t.checkExpect(delta.isEmpty(), false);
+    t.checkExpect(MoveDelta.between(this.gameLevel, this.gameLevel.movePlayer("up")).isEmpty(),
+            true);
+
+    Level reverted = delta.revert(pushed);
+    t.checkExpect(reverted.contents.toArray(), this.gameLevel.contents.toArray());
+    t.checkExpect(reverted.playerPos, new Posn(2, 2));
+    t.checkExpect(reverted.steps, 2);
+    Level applied = delta.apply(reverted);
+    t.checkExpect(applied.contents.toArray(), pushed.contents.toArray());
+    t.checkExpect(applied.steps, 3);
+  }
+
+  void testMoveJournal(Tester t) {
+    this.init();
+    MoveJournal journal = new MoveJournal(2);
+    Level one = this.gameLevel.movePlayer("left");
+    Level two = one.movePlayer("right");
+    Level three = two.movePlayer("right");
+
+    journal.record(MoveDelta.between(this.gameLevel, one));
+    journal.record(MoveDelta.between(one, two));
+    journal.record(MoveDelta.between(two, three)); // the ring is full, the first move is forgotten
+    t.checkExpect(journal.undoable, 2);
+
+    Level undone = journal.undo(journal.undo(three));
+    t.checkExpect(undone.playerPos, new Posn(1, 2));
+    t.checkExpect(journal.undo(undone) == undone, true); // the first move can't be undone
+    t.checkExpect(journal.redoable, 2);
+    t.checkExpect(journal.redo(undone).playerPos, new Posn(2, 2));
+    t.checkConstructorExceptionType(IllegalArgumentException.class, "MoveJournal", 0);
+  }
+
+  void testDifferences(Tester t) {
+    ByteVector vector = new ByteVector(new byte[100]);
+    ByteVector changed = vector.set(70, (byte) 1).set(3, (byte) 2);
+    ByteVector second = new ByteVector(new byte[100]).set(50, (byte) 4);
+    ByteVector secondChanged = second.set(3, (byte) 1).set(90, (byte) 3);
+
+    t.checkExpect(ByteVector.differences(vector, changed, second, second), new int[]{3, 70});
+    // an index where both pairs differ is only there once
+    t.checkExpect(ByteVector.differences(changed, vector, second, secondChanged),
+            new int[]{3, 70, 90});
+    t.checkExpect(ByteVector.differences(vector, vector, second, second), new int[0]);
+  }
+
+  void testSetCells(Tester t) {
+    this.init();
+    Level changed = this.gameLevel.derive(this.gameLevel.playerPos, 0);
+    changed.setCells(new int[]{11, 12}, new byte[]{BoardCodes.ICE, BoardCodes.HOLE},
+            new byte[]{BoardCodes.BOX, BoardCodes.WALL});
+
+    t.checkExpect(changed.findCell(new Posn(0, 0)), new Cell(new Ice(), new Box()));
+    t.checkExpect(changed.findCell(new Posn(1, 0)), new Cell(new Hole(), new Wall()));
+    t.checkExpect(this.gameLevel.findCell(new Posn(0, 0)), new Cell(new Normal(), new Blank()));
+  }
+
+  void testUpdateScore(Tester t) {
+    this.init();
+    Sokoban world = new Sokoban(this.gameLevel);
+
+    t.checkExpect(world.level.steps, 0); // init score
+    world.onKeyEvent("left");
+    t.checkExpect(world.level.steps, 1); // score inc on move
+    world.onKeyEvent("up");
+    t.checkExpect(world.level.steps, 1); // no move, no change
+    world.onKeyEvent("u");
+    t.checkExpect(world.level.steps, 2); // score inc on undo
+    world.onKeyEvent("r");
+    t.checkExpect(world.level.steps, 3); // score inc on redo
+    t.checkExpect(this.gameLevel.updateScore(5).steps, 5);
   }
 
 
+
 }